@@ -1,5 +1,11 @@
 package tablut;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tablut.Events.SearchEvent;
+
 import static java.lang.Math.*;
 
 /** A Player that automatically generates moves.
@@ -22,9 +28,13 @@ class AI extends Player {
         this(null, null);
     }
 
-    /** A new AI playing PIECE under control of CONTROLLER. */
+    /** A new AI playing PIECE under control of CONTROLLER.  It shares
+     *  its transposition table with the other AIs of CONTROLLER, if
+     *  any. */
     AI(Piece piece, Controller controller) {
         super(piece, controller);
+        _table = controller == null ? new TranspositionTable(TABLE_SIZE)
+            : controller.table();
     }
 
     @Override
@@ -34,9 +44,9 @@ class AI extends Player {
 
     @Override
     String myMove() {
-        Move m = findMove();
+        int m = findMove();
         _controller.reportMove(m);
-        return m.toString();
+        return board().geometry().moveName(m);
     }
 
     @Override
@@ -44,90 +54,496 @@ class AI extends Player {
         return false;
     }
 
-    /** Return a move for me from the current position, assuming there
-     *  is a move. */
-    private Move findMove() {
-        Board b = new Board(board());
-        _lastFoundMove = null;
-        findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-        return _lastFoundMove;
+    /** Return the code of a move for me from the current position,
+     *  assuming there is a move.  A short forced win found by the solver
+     *  takes precedence over the heuristic search.  The solver and the
+     *  search share one token from my controller, so the time the solver
+     *  takes counts against the time limit per move, and both stop early
+     *  if my controller cancels the search. */
+    private int findMove() {
+        CancellationToken token = _controller.newSearch();
+        if (_solver.solve(board(), SOLVER_PLIES, SOLVER_NODES, token)
+            == Solver.PROVEN) {
+            return _solver.bestMove();
+        }
+        return findMove(board(), token);
     }
 
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
+    /** Return the code of a move for the side to move on BOARD, assuming
+     *  there is a move, searching with increasing depth up to maxDepth
+     *  until TOKEN is cancelled.  On cancellation, returns the move found
+     *  by the deepest search that finished (or the best found so far, if
+     *  none did).  BOARD is not modified.  The search is recorded as a
+     *  SearchEvent. */
+    int findMove(Board board, CancellationToken token) {
+        return findMove(board, 0, 0, token, null);
+    }
+
+    /** Return the result of findMove(BOARD, TOKEN), but searching up to
+     *  DEPTH plies instead of maxDepth if DEPTH > 0, and stopping after
+     *  about NODES nodes if NODES > 0.  If PROGRESS is not null, it is
+     *  told of each iteration that finishes. */
+    int findMove(Board board, int depth, long nodes, CancellationToken token,
+                 Progress progress) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        Board b = new Board(board);
+        int limit = depth > 0 ? depth : maxDepth(b);
+        if (limit >= _moves.length) {
+            _moves = new int[limit + 1][Board.MAX_MOVES];
+        }
+        startSearch(token);
+        _nodeLimit = nodes > 0 ? nodes : Long.MAX_VALUE;
+        int sense = b.turn() == Piece.WHITE ? 1 : -1;
+        int best = -1, completed = 0;
+        for (int d = 1; d <= limit && !_stopped; d += 1) {
+            _lastFoundMove = -1;
+            int score = findMove(b, d, true, sense, -INFTY, INFTY);
+            if (!_stopped) {
+                completed = d;
+                if (progress != null && _lastFoundMove >= 0) {
+                    progress.completed(
+                        d, _nodes,
+                        new Line(score,
+                                 principalVariation(b, _lastFoundMove, d)));
+                }
+            }
+            if (!_stopped || best < 0) {
+                best = _lastFoundMove;
+            }
+        }
+        if (best < 0 && b.legalMoves(b.turn(), _moves[0]) > 0) {
+            best = _moves[0][0];
+        }
+        _token = NEVER;
+        _nodeLimit = Long.MAX_VALUE;
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = best < 0 ? null : b.geometry().moveName(best);
+            event.depth = completed;
+            event.nodes = _nodes;
+            event.cancelled = _stopped;
+            event.commit();
+        }
+        return best;
+    }
+
+    /** Receives the result of each iteration of a search by findMove. */
+    interface Progress {
+        /** Report that the iteration to DEPTH plies has finished, NODES
+         *  nodes into the search, having found LINE. */
+        void completed(int depth, long nodes, Line line);
+    }
+
+    /** A line of play found by analyze: a principal variation and its
+     *  score. */
+    static class Line {
+        /** A line consisting of the move codes MOVES, with value SCORE
+         *  (positive favoring white, as for findMove). */
+        Line(int score, int[] moves) {
+            _score = score;
+            _moves = moves;
+        }
+
+        /** Return my score. */
+        int score() {
+            return _score;
+        }
+
+        /** Return the codes of my moves, starting with the root move. */
+        int[] moves() {
+            return _moves;
+        }
+
+        /** Return the text of my moves on a board of GEOMETRY, separated
+         *  by blanks. */
+        String moveText(Geometry geometry) {
+            StringBuilder text = new StringBuilder();
+            for (int move : _moves) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(geometry.moveName(move));
+            }
+            return text.toString();
+        }
+
+        /** Return my score as text: "+win" or "-win" for a forced win for
+         *  white or black, and the number otherwise. */
+        String scoreText() {
+            if (_score >= WILL_WIN_VALUE) {
+                return "+win";
+            } else if (_score <= -WILL_WIN_VALUE) {
+                return "-win";
+            }
+            return Integer.toString(_score);
+        }
+
+        /** Return the score denoted by TEXT, as produced by scoreText. */
+        static int parseScore(String text) {
+            switch (text) {
+            case "+win":
+                return WILL_WIN_VALUE;
+            case "-win":
+                return -WILL_WIN_VALUE;
+            default:
+                return Integer.parseInt(text);
+            }
+        }
+
+        /** My score. */
+        private final int _score;
+        /** My move codes. */
+        private final int[] _moves;
+    }
+
+    /** Return up to COUNT of the best moves for the side to move on BOARD,
+     *  best first, each with its score and principal variation.  After
+     *  the first, each is found by searching again with the moves already
+     *  found excluded at the root; the transposition table carries over
+     *  between the searches, so that the later ones are much cheaper than
+     *  independent searches would be.  BOARD is not modified. */
+    List<Line> analyze(Board board, int count) {
+        return analyze(board, count, NEVER);
+    }
+
+    /** Return the result of analyze(BOARD, COUNT), but stop early with
+     *  the lines found so far when TOKEN is cancelled. */
+    List<Line> analyze(Board board, int count, CancellationToken token) {
+        startSearch(token);
+        Board b = new Board(board);
+        int depth = maxDepth(b);
+        int sense = b.turn() == Piece.WHITE ? 1 : -1;
+        List<Line> lines = new ArrayList<>();
+        _numExcluded = 0;
+        while (lines.size() < count && b.winner() == null) {
+            _lastFoundMove = -1;
+            int score = findMove(b, depth, true, sense, -INFTY, INFTY);
+            if (_lastFoundMove < 0 || _stopped) {
+                break;
+            }
+            lines.add(new Line(score,
+                               principalVariation(b, _lastFoundMove, depth)));
+            _excluded[_numExcluded] = _lastFoundMove;
+            _numExcluded += 1;
+        }
+        _numExcluded = 0;
+        _token = NEVER;
+        return lines;
+    }
+
+    /** Return the value of the position on BOARD (positive favoring
+     *  white), as found by a search of DEPTH plies that stops early if
+     *  TOKEN is cancelled, in which case the value is meaningless.  BOARD
+     *  is not modified. */
+    int score(Board board, int depth, CancellationToken token) {
+        if (depth >= _moves.length) {
+            _moves = new int[depth + 1][Board.MAX_MOVES];
+        }
+        Board b = new Board(board);
+        startSearch(token);
+        int value = findMove(b, depth, false,
+                             b.turn() == Piece.WHITE ? 1 : -1,
+                             -INFTY, INFTY);
+        _token = NEVER;
+        return value;
+    }
+
+    /** Return the principal variation of length at most DEPTH on BOARD
+     *  that starts with the move with code FIRST, following the best moves
+     *  recorded in the transposition table.  BOARD is restored before
+     *  returning. */
+    private int[] principalVariation(Board board, int first, int depth) {
+        int[] line = new int[depth];
+        int n = 0;
+        for (int move = first; move >= 0 && n < depth;) {
+            line[n] = move;
+            n += 1;
+            board.makeMove(move);
+            move = -1;
+            int slot = _table.probe(board.canonicalHash());
+            if (board.winner() == null && slot >= 0
+                && _table.move(slot) >= 0) {
+                int hint = board.geometry().transformMove(
+                    _table.move(slot),
+                    Geometry.inverse(board.canonicalSymmetry()));
+                if (board.isLegal(Move.from(hint), Move.to(hint))) {
+                    move = hint;
+                }
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            board.undo();
+        }
+        return Arrays.copyOf(line, n);
+    }
+
+    /** Prepare for a new search, controlled by TOKEN.  Search results
+     *  kept from earlier searches are aged, so that they give way to new
+     *  ones, and the history scores are cleared. */
+    private void startSearch(CancellationToken token) {
+        _token = token;
+        _stopped = false;
+        _nodes = 0;
+        _table.nextAge();
+        Arrays.fill(_history, 0);
+    }
+
+    /** Return the number of nodes visited by the last search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return my transposition table. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Return true iff MOVE is one of the root moves excluded by
+     *  analyze. */
+    private boolean excluded(int move) {
+        for (int i = 0; i < _numExcluded; i += 1) {
+            if (_excluded[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The code of the move found by the last call to one of the
+     *  ...FindMove methods below. */
+    private int _lastFoundMove;
+
+    /** A token that is never cancelled. */
+    private static final CancellationToken NEVER = new CancellationToken();
+
+    /** The token is polled once every CHECK_INTERVAL nodes (a power of
+     *  2), which keeps the cost of polling negligible. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** The token of the current search. */
+    private CancellationToken _token = NEVER;
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** The current search stops after about this many nodes. */
+    private long _nodeLimit = Long.MAX_VALUE;
+    /** True iff the current search has been cancelled, and is unwinding.
+     *  Values computed while unwinding are meaningless. */
+    private boolean _stopped;
+
+    /** _excluded[0 .. _numExcluded-1] are the codes of root moves that the
+     *  search skips (see analyze). */
+    private final int[] _excluded = new int[Board.MAX_MOVES];
+    /** Number of excluded root moves. */
+    private int _numExcluded;
+
+    /** _moves[d] holds the moves generated at remaining depth d, so that
+     *  the search does not create new objects.  Extended by score for
+     *  deeper searches. */
+    private int[][] _moves = new int[MAX_DEPTH + 1][Board.MAX_MOVES];
 
     /** Find a move from position BOARD and return its value, recording
      *  the move found in _lastFoundMove iff SAVEMOVE. The move
      *  should have maximal value or have value > BETA if SENSE==1,
      *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
      *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
+     *  of the board value and does not set _lastMoveFound.  Results are
+     *  cached in _table under the canonical hash of the position, so that
+     *  positions that are rotations or reflections of each other share an
+     *  entry. */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
+        _nodes += 1;
+        if ((_nodes & (CHECK_INTERVAL - 1)) == 0
+            && (_token.isCancelled() || _nodes >= _nodeLimit)) {
+            _stopped = true;
+        }
+        if (_stopped) {
+            return 0;
+        }
+        if (board.winner() != null) {
             return staticScore(board);
         }
-        int bestSoFar = staticScore(board);
-        if (sense == 1) {
-            sense *= -1;
-            bestSoFar = -INFTY;
-            for (Move m: board.legalMoves(board.turn())) {
-                board.makeMove(m);
-                int resp = findMove(board, depth - 1, false, sense,
-                        alpha, beta);
-                board.undo();
-                if (resp >= bestSoFar) {
-                    if (saveMove) {
-                        _lastFoundMove = m;
+        if (!saveMove) {
+            int threat = threatScore(board);
+            if (threat != 0) {
+                return threat;
+            }
+        }
+        if (depth == 0) {
+            return staticScore(board);
+        }
+        long key = board.canonicalHash();
+        int sym = board.canonicalSymmetry();
+        int slot = _table.probe(key);
+        int hint = -1;
+        if (slot >= 0) {
+            if (!saveMove && _table.depth(slot) >= depth) {
+                int value = _table.value(slot);
+                switch (_table.bound(slot)) {
+                case TranspositionTable.EXACT:
+                    return value;
+                case TranspositionTable.LOWER:
+                    if (value >= beta) {
+                        return value;
                     }
-                    bestSoFar = resp;
-                    alpha = max(alpha, resp);
-                    if (beta <= alpha) {
-                        break;
+                    break;
+                default:
+                    if (value <= alpha) {
+                        return value;
                     }
+                    break;
                 }
             }
-        } else if (sense == -1) {
-            sense *= -1;
-            bestSoFar = INFTY;
-            for (Move m: board.legalMoves(board.turn())) {
-                board.makeMove(m);
-                int resp = findMove(board, depth - 1, false, sense,
-                        alpha, beta);
-                board.undo();
-                if (resp <= bestSoFar) {
-                    if (saveMove) {
-                        _lastFoundMove = m;
-                    }
-                    bestSoFar = resp;
+            if (_table.move(slot) >= 0) {
+                hint = board.geometry().transformMove(_table.move(slot),
+                                                      Geometry.inverse(sym));
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        int[] moves = _moves[depth];
+        int n = board.legalMoves(board.turn(), moves);
+        if (depth > 1) {
+            orderByHistory(moves, n);
+        }
+        promote(moves, n, hint);
+        int bestSoFar = sense == 1 ? -INFTY : INFTY;
+        int best = -1;
+        for (int i = 0; i < n; i += 1) {
+            int m = moves[i];
+            if (saveMove && _numExcluded > 0 && excluded(m)) {
+                continue;
+            }
+            board.makeMove(m);
+            int resp = findMove(board, depth - 1, false, -sense,
+                                alpha, beta);
+            board.undo();
+            if (_stopped) {
+                return bestSoFar;
+            }
+            if (sense == 1 ? resp >= bestSoFar : resp <= bestSoFar) {
+                if (saveMove) {
+                    _lastFoundMove = m;
+                }
+                best = m;
+                bestSoFar = resp;
+                if (sense == 1) {
+                    alpha = max(alpha, resp);
+                } else {
                     beta = min(beta, resp);
-                    if (beta <= alpha) {
-                        break;
-                    }
+                }
+                if (beta <= alpha) {
+                    _history[m] += depth * depth;
+                    break;
                 }
             }
         }
+        int bound = bestSoFar <= alpha0 ? TranspositionTable.UPPER
+            : bestSoFar >= beta0 ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        if (best >= 0) {
+            best = board.geometry().transformMove(best, sym);
+        }
+        if (_numExcluded == 0 || !saveMove) {
+            _table.store(key, depth, bestSoFar, bound, best);
+        }
         return bestSoFar;
     }
 
+    /** Return WILL_WIN_VALUE or -WILL_WIN_VALUE if the side to move on
+     *  BOARD wins or loses by force within two plies because of a threat
+     *  against or by the king, and 0 otherwise.  White to move wins if the
+     *  king can escape.  Black to move wins if it can capture the king, and
+     *  otherwise loses if the king has two routes to escape, since one
+     *  move can block only one of them. */
+    private static int threatScore(Board board) {
+        int routes = board.kingEscapeRoutes();
+        if (board.turn() == Piece.WHITE) {
+            return routes > 0 ? WILL_WIN_VALUE : 0;
+        } else if (board.kingCapturable()) {
+            return -WILL_WIN_VALUE;
+        } else {
+            return routes > 1 ? WILL_WIN_VALUE : 0;
+        }
+    }
+
+    /** Sort the first N codes of MOVES into decreasing order of their
+     *  history scores. */
+    private void orderByHistory(int[] moves, int n) {
+        for (int i = 1; i < n; i += 1) {
+            int m = moves[i], score = _history[m];
+            int j;
+            for (j = i; j > 0 && _history[moves[j - 1]] < score; j -= 1) {
+                moves[j] = moves[j - 1];
+            }
+            moves[j] = m;
+        }
+    }
+
+    /** Move the code HINT, if it is among the first N codes of MOVES, to
+     *  the front, so that it is searched first. */
+    private static void promote(int[] moves, int n, int hint) {
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == hint) {
+                moves[i] = moves[0];
+                moves[0] = hint;
+                return;
+            }
+        }
+    }
+
+    /** Number of entries in the transposition table of an AI without a
+     *  controller, as a power of 2. */
+    private static final int TABLE_SIZE = 16;
+
+    /** Number of plies within which the solver looks for forced wins
+     *  before each search. */
+    private static final int SOLVER_PLIES = 3;
+
+    /** Node limit of the solver before each search. */
+    private static final long SOLVER_NODES = 20000;
+
+    /** Number of entries in the solver's node table, as a power of 2. */
+    private static final int SOLVER_TABLE_SIZE = 14;
+
+    /** Solver for short forced wins. */
+    private final Solver _solver = new Solver(SOLVER_TABLE_SIZE);
+
+    /** Cache of search results, kept from one search to the next. */
+    private final TranspositionTable _table;
+
+    /** History heuristic: _history[m] is higher the more often and the
+     *  more deeply the move with code m has caused a cutoff.  Moves with
+     *  high scores are searched first.  Cleared at each new search:
+     *  scores carried over from earlier moves helped or hurt by a few
+     *  percent depending on variant and depth. */
+    private final int[] _history = new int[1 << 16];
+
     /** Return a heuristically determined maximum search depth
      *  based on characteristics of BOARD. */
     private static int maxDepth(Board board) {
-        return 4;
+        return MAX_DEPTH;
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
+    /** The maximum search depth. */
+    private static final int MAX_DEPTH = 4;
+
+    /** Return a heuristic value for BOARD: its network's evaluation, if
+     *  it has a network, else a classical one. */
+    int staticScore(Board board) {
         int score = INFTY;
         if (board.winner() == Piece.WHITE) {
             return WINNING_VALUE;
         } else if (board.winner() == Piece.BLACK) {
             return -WINNING_VALUE;
-        } else if (board.kingPosition() == null) {
+        }
+        int king = board.kingIndex();
+        if (king < 0) {
             return -WINNING_VALUE;
-        } else if (board.kingPosition().isEdge()) {
+        } else if (board.isEscape(king)) {
             return WINNING_VALUE;
+        } else if (board.network() != null) {
+            return board.networkScore();
         } else if (board.countSide(Piece.BLACK)
                 > board.countSide(Piece.WHITE)) {
             return -WINNING_VALUE;
@@ -0,0 +1,65 @@
+package tablut;
+
+import static tablut.Piece.*;
+
+/** The hidden layer of a Network for the position on one Board.  The
+ *  board updates it as pieces are added, removed, and moved, so that
+ *  evaluating the position needs only the network's output layer.
+ *  @author Jennifer Tran
+ */
+final class Accumulator {
+
+    /** An accumulator for NETWORK, holding only its biases. */
+    Accumulator(Network network) {
+        _network = network;
+        _values = new short[network.hidden()];
+        network.reset(_values);
+    }
+
+    /** Return my network. */
+    Network network() {
+        return _network;
+    }
+
+    /** Recompute my values for the position on BOARD. */
+    void refresh(Board board) {
+        _network.reset(_values);
+        for (int i = 0; i < board.geometry().numSquares(); i += 1) {
+            Piece p = board.get(i);
+            if (p != EMPTY) {
+                _network.add(_values, p, i);
+            }
+        }
+    }
+
+    /** Copy the values of MODEL, which has the same network as I. */
+    void copy(Accumulator model) {
+        System.arraycopy(model._values, 0, _values, 0, _values.length);
+    }
+
+    /** Account for the addition of piece P to square index SQ. */
+    void add(Piece p, int sq) {
+        _network.add(_values, p, sq);
+    }
+
+    /** Account for the removal of piece P from square index SQ. */
+    void remove(Piece p, int sq) {
+        _network.remove(_values, p, sq);
+    }
+
+    /** Account for the move of piece P from square index FROM to square
+     *  index TO. */
+    void move(Piece p, int from, int to) {
+        _network.move(_values, p, from, to);
+    }
+
+    /** Return the network's evaluation of the current position. */
+    int evaluate() {
+        return _network.evaluate(_values);
+    }
+
+    /** The network. */
+    private final Network _network;
+    /** The hidden units of the network. */
+    private final short[] _values;
+}
@@ -0,0 +1,221 @@
+package tablut;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests that the move-processing paths stay free of garbage: each test
+ *  measures the bytes allocated per operation by the current thread and
+ *  fails if they exceed the operation's budget.  Operations are run
+ *  WARMUP times first so that the measurement sees JIT-compiled code.
+ *  @author Jennifer Tran
+ */
+public class AllocationTest {
+
+    /** Budgets, in bytes per operation.  The move, undo, move-generation,
+     *  and repetition paths should not allocate at all; the small
+     *  allowance absorbs the measurement's own overhead.  A search may
+     *  allocate a fixed amount (a copy of the board, its token), but
+     *  nothing per node. */
+    static final double
+        MAKE_UNDO_BUDGET = 1,
+        MOVE_GENERATION_BUDGET = 1,
+        REPETITION_BUDGET = 1,
+        SEARCH_BUDGET = 8 * 1024;
+
+    /** Number of unmeasured repetitions of each operation. */
+    static final int WARMUP = 20_000;
+
+    /** Number of measured repetitions of each operation. */
+    static final int REPS = 50_000;
+
+    /** Number of measured searches (which are much slower). */
+    static final int SEARCHES = 20;
+
+    /** Number of plies in each of the test games. */
+    static final int PLIES = 40;
+
+    /** Making and then undoing all the moves of a game. */
+    @Test
+    public void makeUndo() {
+        Board board = new Board();
+        int[] game = randomGame(board, 0x1L);
+        double bytes = bytesPerOp(WARMUP / PLIES, REPS / PLIES, () -> {
+            for (int move : game) {
+                board.makeMove(move);
+            }
+            for (int i = 0; i < game.length; i += 1) {
+                board.undo();
+            }
+        }) / game.length;
+        assertBudget("makeMove/undo", bytes, MAKE_UNDO_BUDGET);
+    }
+
+    /** Generating the legal moves in each position of a game. */
+    @Test
+    public void moveGeneration() {
+        Board board = new Board();
+        int[] game = randomGame(board, 0x2L);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int move : game) {
+            board.makeMove(move);
+        }
+        double bytes = bytesPerOp(WARMUP, REPS, () -> {
+            board.legalMoves(board.turn(), moves);
+        });
+        assertBudget("legalMoves", bytes, MOVE_GENERATION_BUDGET);
+    }
+
+    /** Moving pieces back and forth until the position repeats, so that
+     *  every move checks the game's history for repetitions. */
+    @Test
+    public void repetition() {
+        Board board = new Board();
+        int[] game = randomGame(board, 0x3L);
+        for (int move : game) {
+            board.makeMove(move);
+        }
+        int[] cycle = shuffle(board);
+        assertTrue("no shuffle found", cycle != null);
+        double bytes = bytesPerOp(WARMUP / 4, REPS / 4, () -> {
+            for (int move : cycle) {
+                board.makeMove(move);
+            }
+            assertTrue(board.repeatedPosition());
+            for (int i = 0; i < cycle.length; i += 1) {
+                board.undo();
+            }
+        }) / cycle.length;
+        assertBudget("repetition check", bytes, REPETITION_BUDGET);
+    }
+
+    /** A full (fixed-depth) search by the AI. */
+    @Test
+    public void search() {
+        Board board = new Board();
+        int[] game = randomGame(board, 0x4L);
+        for (int i = 0; i < 6; i += 1) {
+            board.makeMove(game[i]);
+        }
+        AI ai = new AI();
+        double bytes = bytesPerOp(SEARCHES / 2, SEARCHES, () -> {
+            ai.findMove(board, new CancellationToken());
+        });
+        assertBudget("AI search", bytes, SEARCH_BUDGET);
+    }
+
+    /** Return the moves of a game of PLIES random legal moves that ends
+     *  without a winner, played on and then undone from BOARD, using
+     *  SEED to choose moves. */
+    private static int[] randomGame(Board board, long seed) {
+        Random random = new Random(seed);
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] game = new int[PLIES];
+        for (int k = 0; k < PLIES;) {
+            int n = board.legalMoves(board.turn(), moves);
+            int move = moves[random.nextInt(n)];
+            board.makeMove(move);
+            if (board.winner() != null) {
+                board.undo();
+            } else {
+                game[k] = move;
+                k += 1;
+            }
+        }
+        for (int k = 0; k < PLIES; k += 1) {
+            board.undo();
+        }
+        return game;
+    }
+
+    /** Return four moves on BOARD after which its position repeats: each
+     *  side moves a piece one step and back, with no captures.  Returns
+     *  null if there are none. */
+    private static int[] shuffle(Board board) {
+        int[] first = new int[Board.MAX_MOVES],
+            second = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(board.turn(), first);
+        for (int i = 0; i < n; i += 1) {
+            int a = first[i];
+            board.makeMove(a);
+            int m = board.legalMoves(board.turn(), second);
+            for (int j = 0; j < m; j += 1) {
+                int b = second[j];
+                int[] cycle = { a, b, reverse(a), reverse(b) };
+                if (repeats(board, cycle)) {
+                    board.undo();
+                    return cycle;
+                }
+            }
+            board.undo();
+        }
+        return null;
+    }
+
+    /** Return true iff playing CYCLE, whose first move has been made on
+     *  BOARD, leads to a repeated position without captures.  Leaves
+     *  BOARD unchanged. */
+    private static boolean repeats(Board board, int[] cycle) {
+        long hash = board.hash();
+        int made = 0;
+        boolean result = false;
+        for (int k = 1; k < cycle.length; k += 1) {
+            if (!board.isLegal(Move.from(cycle[k]), Move.to(cycle[k]))) {
+                break;
+            }
+            board.makeMove(cycle[k]);
+            made += 1;
+            if (board.winner() != null && !board.repeatedPosition()) {
+                break;
+            }
+            if (k == cycle.length - 1) {
+                result = board.repeatedPosition();
+            }
+        }
+        for (; made > 0; made -= 1) {
+            board.undo();
+        }
+        return result && board.hash() == hash;
+    }
+
+    /** Return the code of the move undoing MOVE. */
+    private static int reverse(int move) {
+        return Move.code(Move.to(move), Move.from(move));
+    }
+
+    /** Return the average number of bytes allocated by the current thread
+     *  per call of OP, measured over REPS calls after WARMUP calls. */
+    private static double bytesPerOp(int warmup, int reps, Runnable op) {
+        for (int i = 0; i < warmup; i += 1) {
+            op.run();
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < reps; i += 1) {
+            op.run();
+        }
+        return (double) (allocatedBytes() - start) / reps;
+    }
+
+    /** Return the total number of bytes allocated so far by the current
+     *  thread. */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        assertTrue("allocation measurement not supported",
+                   bean.isThreadAllocatedMemorySupported()
+                   && bean.isThreadAllocatedMemoryEnabled());
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Fail if BYTES allocated per operation by the operation called NAME
+     *  exceed BUDGET. */
+    private static void assertBudget(String name, double bytes,
+                                     double budget) {
+        assertTrue(String.format("%s allocates %.1f bytes per operation "
+                                 + "(budget %.1f)", name, bytes, budget),
+                   bytes <= budget);
+    }
+}
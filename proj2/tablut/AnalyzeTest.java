@@ -0,0 +1,100 @@
+package tablut;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of multi-PV analysis by AI.analyze.
+ *  @author Jennifer Tran
+ */
+public class AnalyzeTest {
+
+    /** Number of lines requested in each analysis. */
+    static final int LINES = 4;
+
+    /** Depth of the searches done by analyze. */
+    static final int DEPTH = 4;
+
+    /** In positions from random games of Brandubh, analyze reports as
+     *  many lines as requested (or as there are legal moves), starting
+     *  with distinct moves, best first for the side to move, each a
+     *  legal sequence of moves.  The first line has the value of the
+     *  position found by an ordinary search, and the board is left
+     *  unchanged. */
+    @Test
+    public void linesAreDistinctAndOrdered() {
+        SplittableRandom random = new SplittableRandom(4);
+        int[] moves = new int[Board.MAX_MOVES];
+        int analyzed = 0;
+        for (int g = 0; g < 4; g += 1) {
+            Board board = new Board(Variant.BRANDUBH);
+            for (int ply = 0; ply < 40 && board.winner() == null;
+                 ply += 1) {
+                int k = board.legalMoves(board.turn(), moves);
+                if (ply % 6 == 5) {
+                    String before = board.encodedBoard();
+                    AI ai = new AI();
+                    List<AI.Line> lines = ai.analyze(board, LINES);
+                    assertEquals(before, board.encodedBoard());
+                    assertEquals(Math.min(LINES, k), lines.size());
+                    checkLines(board, lines);
+                    int best = new AI().score(board, DEPTH,
+                                              new CancellationToken());
+                    assertEquals(best, lines.get(0).score());
+                    analyzed += 1;
+                }
+                board.makeMove(moves[random.nextInt(k)]);
+            }
+        }
+        assertTrue(analyzed > 10);
+    }
+
+    /** Asking for more lines than there are legal moves reports every
+     *  legal move once. */
+    @Test
+    public void allMovesWhenFew() {
+        Board board = new Board(Variant.BRANDUBH);
+        int[] moves = new int[Board.MAX_MOVES];
+        int k = board.legalMoves(board.turn(), moves);
+        List<AI.Line> lines = new AI().analyze(board, k + 5);
+        assertEquals(k, lines.size());
+        checkLines(board, lines);
+    }
+
+    /** An analysis whose token is already cancelled reports no lines. */
+    @Test
+    public void cancelled() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertTrue(new AI().analyze(new Board(), LINES, token).isEmpty());
+    }
+
+    /** Assert that LINES are lines of play from the position on BOARD
+     *  that start with distinct moves and are in order from best to worst
+     *  for the side to move. */
+    private static void checkLines(Board board, List<AI.Line> lines) {
+        int sense = board.turn() == Piece.WHITE ? 1 : -1;
+        Set<Integer> firsts = new HashSet<>();
+        for (int i = 0; i < lines.size(); i += 1) {
+            AI.Line line = lines.get(i);
+            assertTrue(line.moves().length > 0);
+            assertTrue("repeated first move",
+                       firsts.add(line.moves()[0]));
+            if (i > 0) {
+                assertTrue("lines out of order",
+                           sense * lines.get(i - 1).score()
+                           >= sense * line.score());
+            }
+            Board b = new Board(board);
+            for (int move : line.moves()) {
+                assertNull(b.winner());
+                assertTrue(b.isLegal(Move.from(move), Move.to(move)));
+                b.makeMove(move);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static tablut.Utils.*;
+
+/** A writer of text lines to a file that does its output on a background
+ *  thread, so that callers do not wait for system calls.  Lines are
+ *  copied into a bounded ring buffer; the background thread drains it in
+ *  batches through a FileChannel whenever the flush interval passes, the
+ *  buffer becomes half full, or a caller asks for a flush.  A caller
+ *  waits only when the buffer is full.  In SYNC mode, each batch is also
+ *  forced to the storage device before it counts as written.
+ *  @author Jennifer Tran
+ */
+class AsyncLogWriter implements Closeable {
+
+    /** Durability modes.  BUFFERED hands batches to the operating system
+     *  (they survive the process, but not a crash of the machine); SYNC
+     *  also forces them to the device. */
+    enum Durability {
+        /** Write batches without forcing them. */
+        BUFFERED,
+        /** Write and force each batch. */
+        SYNC
+    }
+
+    /** Default size of the ring buffer, in bytes. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Default flush interval, in milliseconds. */
+    static final long DEFAULT_FLUSH_MILLIS = 100;
+
+    /** A writer to FILE (replacing its contents) with the default buffer
+     *  size and flush interval, in mode DURABILITY. */
+    AsyncLogWriter(Path file, Durability durability) throws IOException {
+        this(file, DEFAULT_CAPACITY, DEFAULT_FLUSH_MILLIS, durability);
+    }
+
+    /** A writer to FILE (replacing its contents) whose ring buffer holds
+     *  CAPACITY bytes, which writes what it has at least every
+     *  FLUSHMILLIS milliseconds, in mode DURABILITY. */
+    AsyncLogWriter(Path file, int capacity, long flushMillis,
+                   Durability durability) throws IOException {
+        _channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING);
+        _ring = new byte[capacity];
+        _batch = ByteBuffer.allocateDirect(capacity);
+        _flushNanos = flushMillis * 1_000_000;
+        _durability = durability;
+        _thread = new Thread(this::drain, "log writer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Append LINE and a line terminator. */
+    void println(String line) {
+        append((line + System.lineSeparator())
+               .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Append the result of String.format(FORMAT, ARGS). */
+    void printf(String format, Object... args) {
+        append(String.format(format, args).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Wait until everything appended so far has been written (and forced,
+     *  in SYNC mode). */
+    void flush() {
+        synchronized (_lock) {
+            long target = _appended;
+            _flushRequested = true;
+            _lock.notifyAll();
+            while (_written < target && _failure == null) {
+                awaitQuietly();
+            }
+            checkFailure();
+        }
+    }
+
+    /** Write everything appended so far, stop the background thread, and
+     *  close the file.  Throws IOException if the background thread
+     *  failed to write, now or earlier. */
+    @Override
+    public void close() throws IOException {
+        synchronized (_lock) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            _lock.notifyAll();
+        }
+        try {
+            _thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        _channel.close();
+        synchronized (_lock) {
+            if (_failure != null) {
+                throw new IOException("could not write log: "
+                                      + _failure.getMessage(), _failure);
+            }
+        }
+    }
+
+    /** Copy BYTES into the ring buffer, waiting for room as needed. */
+    private void append(byte[] bytes) {
+        synchronized (_lock) {
+            if (_closed) {
+                throw error("log is closed");
+            }
+            int pos = 0;
+            while (pos < bytes.length) {
+                checkFailure();
+                int room = _ring.length - (int) (_appended - _written);
+                if (room == 0) {
+                    _flushRequested = true;
+                    _lock.notifyAll();
+                    awaitQuietly();
+                    continue;
+                }
+                int start = (int) (_appended % _ring.length);
+                int n = Math.min(Math.min(room, bytes.length - pos),
+                                 _ring.length - start);
+                System.arraycopy(bytes, pos, _ring, start, n);
+                pos += n;
+                _appended += n;
+            }
+            if (_appended - _written >= _ring.length / 2) {
+                _lock.notifyAll();
+            }
+        }
+    }
+
+    /** The body of the background thread: repeatedly wait for a batch,
+     *  then write it. */
+    private void drain() {
+        long lastWrite = System.nanoTime();
+        while (true) {
+            long end;
+            boolean last;
+            synchronized (_lock) {
+                while (!_closed && !_flushRequested
+                       && _appended - _written < _ring.length / 2) {
+                    long wait = _flushNanos - (System.nanoTime() - lastWrite);
+                    if (wait <= 0 && _appended > _written) {
+                        break;
+                    }
+                    try {
+                        _lock.wait(Math.max(1, wait / 1_000_000));
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                    if (_appended == _written) {
+                        lastWrite = System.nanoTime();
+                    }
+                }
+                _flushRequested = false;
+                end = _appended;
+                last = _closed;
+                _batch.clear();
+                for (long k = _written; k < end;) {
+                    int start = (int) (k % _ring.length);
+                    int n = (int) Math.min(end - k, _ring.length - start);
+                    _batch.put(_ring, start, n);
+                    k += n;
+                }
+            }
+            _batch.flip();
+            try {
+                while (_batch.hasRemaining()) {
+                    _channel.write(_batch);
+                }
+                if (_durability == Durability.SYNC) {
+                    _channel.force(false);
+                }
+            } catch (IOException excp) {
+                synchronized (_lock) {
+                    _failure = excp;
+                    _lock.notifyAll();
+                }
+                return;
+            }
+            lastWrite = System.nanoTime();
+            synchronized (_lock) {
+                _written = end;
+                _lock.notifyAll();
+                if (last && _written == _appended) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Wait on _lock, ignoring interrupts (but preserving the thread's
+     *  interrupted status).  Must be called while holding _lock. */
+    private void awaitQuietly() {
+        try {
+            _lock.wait();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Raise an exception if the background thread has failed.  Must be
+     *  called while holding _lock. */
+    private void checkFailure() {
+        if (_failure != null) {
+            throw error("could not write log: %s", _failure.getMessage());
+        }
+    }
+
+    /** The file. */
+    private final FileChannel _channel;
+    /** The ring buffer.  Bytes _written .. _appended-1 of the output are
+     *  in positions (_written .. _appended-1) modulo its length. */
+    private final byte[] _ring;
+    /** The batch being written by the background thread. */
+    private final ByteBuffer _batch;
+    /** Flush interval in nanoseconds. */
+    private final long _flushNanos;
+    /** Durability mode. */
+    private final Durability _durability;
+    /** The background thread. */
+    private final Thread _thread;
+    /** Guards the fields below, and is notified when they change. */
+    private final Object _lock = new Object();
+    /** Total numbers of bytes appended and written. */
+    private long _appended, _written;
+    /** True iff a caller is waiting for a write. */
+    private boolean _flushRequested;
+    /** True iff close has been called. */
+    private boolean _closed;
+    /** The exception that stopped the background thread, if any. */
+    private IOException _failure;
+}
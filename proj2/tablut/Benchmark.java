@@ -0,0 +1,248 @@
+package tablut;
+
+import java.util.SplittableRandom;
+
+import static tablut.Utils.*;
+
+/** Micro-benchmarks of the move machinery.  Each benchmark is run a few
+ *  times to warm up the JIT before it is timed.
+ *  @author Jennifer Tran
+ */
+class Benchmark {
+
+    /** Number of untimed warm-up runs of each benchmark. */
+    private static final int WARMUP = 3;
+
+    /** Number of timed runs of each benchmark; the best is reported. */
+    private static final int RUNS = 5;
+
+    /** Run the benchmarks named in ARGS (all of them if ARGS contains no
+     *  benchmark names): "perft" counts the positions reachable in
+     *  PERFT_DEPTH moves from the initial position, "playout" plays
+     *  random games, generating moves and making and undoing each one
+     *  along the way, "mobility" does the same on a board that keeps a
+     *  MobilityMap, and "eval" evaluates the positions after each such
+     *  move, with the classical evaluation and with a (random) neural
+     *  network using each available kernel, and "search" counts the
+     *  nodes searched by AIs playing SEARCH_GAMES games, comparing a
+     *  fresh AI for each move with one kept from move to move.  An
+     *  argument that names a
+     *  Variant selects it for the benchmarks that follow (initially,
+     *  standard Tablut).  The "eval" benchmark uses the vector kernel
+     *  only if it has been built (make vector) and the benchmark is run
+     *  with --add-modules jdk.incubator.vector. */
+    public static void main(String... args) {
+        Variant variant = Variant.TABLUT;
+        boolean ran = false;
+        for (String name : args) {
+            ran |= run(name, variant);
+            if (Variant.named(name) != null) {
+                variant = Variant.named(name);
+            }
+        }
+        if (!ran) {
+            run("perft", variant);
+            run("playout", variant);
+        }
+    }
+
+    /** Run the benchmark called NAME on a board of VARIANT, returning
+     *  true, or return false if NAME names a variant instead. */
+    private static boolean run(String name, Variant variant) {
+        String heading = variant.name() + " " + name;
+        switch (name) {
+        case "perft":
+            report(heading, () -> perft(new Board(variant), PERFT_DEPTH));
+            return true;
+        case "playout":
+            report(heading, () -> playouts(new Board(variant), PLAYOUTS));
+            return true;
+        case "mobility":
+            Board tracked = new Board(variant);
+            tracked.trackMobility(true);
+            report(heading, () -> playouts(tracked, PLAYOUTS));
+            return true;
+        case "eval":
+            AI ai = new AI();
+            report(heading + " classical",
+                   () -> evaluations(new Board(variant), ai));
+            Network network =
+                Network.random(variant.geometry().numSquares(),
+                               EVAL_HIDDEN, 1);
+            for (NetworkKernel kernel : kernels()) {
+                Board board = new Board(variant);
+                board.setNetwork(network.withKernel(kernel));
+                report(heading + " nnue " + kernel.description(),
+                       () -> evaluations(board, ai));
+            }
+            return true;
+        case "search":
+            long[] nodes = searchNodes(variant);
+            System.out.printf("%-28s %12d cold %12d warm %+6.1f%%%n",
+                              heading, nodes[0], nodes[1],
+                              100.0 * (nodes[1] - nodes[0]) / nodes[0]);
+            return true;
+        default:
+            if (Variant.named(name) == null) {
+                fatal("Unknown benchmark: %s%n", name);
+            }
+            return false;
+        }
+    }
+
+    /** A benchmark: a computation that returns the number of operations it
+     *  performed. */
+    interface Task {
+        /** Run once and return the number of operations done. */
+        long run();
+    }
+
+    /** Time TASK, printing its rate under the heading NAME. */
+    static void report(String name, Task task) {
+        for (int i = 0; i < WARMUP; i += 1) {
+            task.run();
+        }
+        double best = 0;
+        long ops = 0;
+        for (int i = 0; i < RUNS; i += 1) {
+            long start = System.nanoTime();
+            ops = task.run();
+            double secs = (System.nanoTime() - start) * 1e-9;
+            best = Math.max(best, ops / secs);
+        }
+        System.out.printf("%-28s %12d ops %14.0f ops/s%n", name, ops, best);
+    }
+
+    /** Return the number of move sequences of length DEPTH from the
+     *  current position of BOARD, not extending finished games. */
+    static long perft(Board board, int depth) {
+        if (depth == 0 || board.winner() != null) {
+            return 1;
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(board.turn(), moves);
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            total += perft(board, depth - 1);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** Play N random games from the initial position of BOARD, making and
+     *  undoing every legal move at each step before choosing one.  Return
+     *  the number of moves made. */
+    static long playouts(Board board, int n) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[Board.MAX_MOVES];
+        long made = 0;
+        for (int g = 0; g < n; g += 1) {
+            board.init();
+            for (int ply = 0; ply < MAX_PLAYOUT && board.winner() == null;
+                 ply += 1) {
+                int k = board.legalMoves(board.turn(), moves);
+                if (k == 0) {
+                    break;
+                }
+                for (int i = 0; i < k; i += 1) {
+                    board.makeMove(moves[i]);
+                    board.undo();
+                }
+                board.makeMove(moves[random.nextInt(k)]);
+                made += k + 1;
+            }
+        }
+        return made;
+    }
+
+    /** Return the network kernels available: the scalar one and, if
+     *  different, the fastest. */
+    private static NetworkKernel[] kernels() {
+        if (NetworkKernel.fastest() == NetworkKernel.SCALAR) {
+            return new NetworkKernel[] { NetworkKernel.SCALAR };
+        }
+        return new NetworkKernel[] {
+            NetworkKernel.SCALAR, NetworkKernel.fastest()
+        };
+    }
+
+    /** Play EVAL_PLAYOUTS random games from the initial position of
+     *  BOARD, evaluating with AI's static evaluation the position after
+     *  every legal move at each step.  Return the number of evaluations
+     *  done. */
+    static long evaluations(Board board, AI ai) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[Board.MAX_MOVES];
+        long done = 0;
+        for (int g = 0; g < EVAL_PLAYOUTS; g += 1) {
+            board.init();
+            for (int ply = 0; ply < MAX_PLAYOUT && board.winner() == null;
+                 ply += 1) {
+                int k = board.legalMoves(board.turn(), moves);
+                if (k == 0) {
+                    break;
+                }
+                for (int i = 0; i < k; i += 1) {
+                    board.makeMove(moves[i]);
+                    _sink += ai.staticScore(board);
+                    board.undo();
+                }
+                board.makeMove(moves[random.nextInt(k)]);
+                done += k;
+            }
+        }
+        return done;
+    }
+
+    /** Play SEARCH_GAMES games of VARIANT, each from a random opening of
+     *  two moves, for up to SEARCH_PLIES plies, with the moves chosen by
+     *  an AI searching SEARCH_DEPTH plies that keeps its transposition
+     *  table from one move to the next.  Return the total number of
+     *  nodes searched by a fresh AI on each of those positions, and by
+     *  the kept AI. */
+    static long[] searchNodes(Variant variant) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[Board.MAX_MOVES];
+        long[] nodes = new long[2];
+        for (int g = 0; g < SEARCH_GAMES; g += 1) {
+            Board board = new Board(variant);
+            for (int i = 0; i < 2; i += 1) {
+                int k = board.legalMoves(board.turn(), moves);
+                board.makeMove(moves[random.nextInt(k)]);
+            }
+            AI warm = new AI();
+            for (int ply = 2; ply < SEARCH_PLIES && board.winner() == null;
+                 ply += 1) {
+                AI cold = new AI();
+                cold.findMove(board, SEARCH_DEPTH, 0,
+                              new CancellationToken(), null);
+                nodes[0] += cold.nodes();
+                int move = warm.findMove(board, SEARCH_DEPTH, 0,
+                                         new CancellationToken(), null);
+                nodes[1] += warm.nodes();
+                board.makeMove(move);
+            }
+        }
+        return nodes;
+    }
+
+    /** Depth of the perft benchmark. */
+    private static final int PERFT_DEPTH = 3;
+    /** Number of games in the playout benchmark. */
+    private static final int PLAYOUTS = 200;
+    /** Maximum length of a playout. */
+    private static final int MAX_PLAYOUT = 200;
+    /** Number of games in the eval benchmark. */
+    private static final int EVAL_PLAYOUTS = 50;
+    /** Number of hidden units of the network in the eval benchmark. */
+    private static final int EVAL_HIDDEN = 256;
+    /** Number of games in the search benchmark. */
+    private static final int SEARCH_GAMES = 6;
+    /** Number of plies of each game in the search benchmark. */
+    private static final int SEARCH_PLIES = 30;
+    /** Depth of the searches in the search benchmark. */
+    private static final int SEARCH_DEPTH = 4;
+    /** Accumulates evaluations, so that they are not optimized away. */
+    private static long _sink;
+}
@@ -1,26 +1,41 @@
 package tablut;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Stack;
+import java.util.SplittableRandom;
 
+import static tablut.Geometry.NUM_SYMMETRIES;
 import static tablut.Piece.BLACK;
 import static tablut.Piece.EMPTY;
 import static tablut.Piece.KING;
 import static tablut.Piece.WHITE;
-import static tablut.Square.SQUARE_LIST;
 import static tablut.Square.sq;
 
-/** The state of a Tablut Game.
+/** The state of a Tablut Game, or of a game of another tafl Variant.
+ *  Internally, squares are denoted by their indices and moves by their
+ *  codes (see Geometry and Move.code), and the methods that take ints are
+ *  intended for use by the search.  The methods that take or return
+ *  Squares and Moves are a facade over them, which maps each Square to
+ *  the square with the same column and row through my Geometry.  Since
+ *  Squares exist only for the standard 9x9 board, the facade fails
+ *  (with an IllegalArgumentException) on squares that the board or the
+ *  standard board lacks.
+ *  All rules are applied through the tables of the board's Variant, so
+ *  boards of every size share the same code.
  *  @author Jennifer Tran
  */
 class Board {
 
-    /** The number of squares on a side of the board. */
+    /** The number of squares on a side of the standard Tablut board. */
     static final int SIZE = 9;
 
+    /** An upper bound on the number of legal moves in any position of any
+     *  variant. */
+    static final int MAX_MOVES =
+        Geometry.MAX_SQUARES * 2 * (Geometry.MAX_SIZE - 1);
+
     /** The throne (or castle) square and its four surrounding squares.. */
     static final Square THRONE = sq(4, 4),
         NTHRONE = sq(4, 5),
@@ -28,6 +43,51 @@ class Board {
         WTHRONE = sq(3, 4),
         ETHRONE = sq(5, 4);
 
+    /** The index of THRONE. */
+    static final int THRONE_INDEX = THRONE.index();
+
+    /** Bits in a capture mask: bit D (0 <= D < 4) is set if the piece
+     *  adjacent in direction D was captured, and bit KING_CAPTURED + D is
+     *  also set if that piece was the king. */
+    private static final int KING_CAPTURED = 4;
+
+    /** Layout of an undo record, which packs the from- and to-square
+     *  indices of a move, its capture mask, and the winner (as a
+     *  GameRecord result code) and repetition status before it into a
+     *  long.  Each field's position and width. */
+    private static final int
+        FROM_SHIFT = 0, TO_SHIFT = 8, CAPTURE_SHIFT = 16,
+        WINNER_SHIFT = 24, REPEATED_SHIFT = 26,
+        SQUARE_MASK = 0xff, CAPTURE_MASK = 0xff, WINNER_MASK = 3;
+
+    /** Random keys for Zobrist hashing: ZOBRIST[p.ordinal()][i] is the key
+     *  for piece p on square index i (0 for EMPTY), and WHITE_TO_MOVE is
+     *  included iff it is white's turn. */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][Geometry.MAX_SQUARES];
+
+    /** The hash key for white to move. */
+    private static final long WHITE_TO_MOVE;
+
+    /** SYMMETRIC_KEYS[n][p.ordinal()][i * NUM_SYMMETRIES + s] is the
+     *  Zobrist key for piece p on the image of square index i under
+     *  symmetry s (see Geometry) of the board of size n.  Filled in on
+     *  first use of each size. */
+    private static final long[][][] SYMMETRIC_KEYS =
+        new long[Geometry.MAX_SIZE + 1][][];
+
+    static {
+        SplittableRandom keys = new SplittableRandom(0x7ab1e7ab1eL);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < Geometry.MAX_SQUARES; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = keys.nextLong();
+                }
+            }
+        }
+        WHITE_TO_MOVE = keys.nextLong();
+    }
+
     /** Initial positions of attackers. */
     static final Square[] INITIAL_ATTACKERS = {
         sq(0, 3), sq(0, 4), sq(0, 5), sq(1, 4),
@@ -42,10 +102,38 @@ class Board {
         sq(4, 6), sq(4, 2), sq(2, 4), sq(6, 4)
     };
 
+    /** Return the symmetric keys (see SYMMETRIC_KEYS) for boards of
+     *  GEOM. */
+    private static long[][] symmetricKeys(Geometry geom) {
+        synchronized (SYMMETRIC_KEYS) {
+            if (SYMMETRIC_KEYS[geom.size()] == null) {
+                int n = geom.numSquares();
+                int[][] symmetry = geom.symmetry();
+                long[][] keys = new long[ZOBRIST.length][];
+                for (int p = 0; p < keys.length; p += 1) {
+                    keys[p] = new long[n * NUM_SYMMETRIES];
+                    for (int i = 0; i < n; i += 1) {
+                        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                            keys[p][i * NUM_SYMMETRIES + s] =
+                                ZOBRIST[p][symmetry[s][i]];
+                        }
+                    }
+                }
+                SYMMETRIC_KEYS[geom.size()] = keys;
+            }
+            return SYMMETRIC_KEYS[geom.size()];
+        }
+    }
+
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
     Board() {
-        init();
+        this(Variant.TABLUT);
+    }
+
+    /** Initializes a board in the initial position of VARIANT. */
+    Board(Variant variant) {
+        setVariant(variant);
     }
 
     /** Initializes a copy of MODEL. */
@@ -58,41 +146,212 @@ class Board {
         if (model == this) {
             return;
         }
-        init();
+        setVariant(model._variant);
         _winner = model._winner;
         _turn = model._turn;
         _moveCount = model._moveCount;
-        sqStack = model.sqStack;
-        csqStack = model.csqStack;
-        pStack = model.pStack;
-        sStack = model.sStack;
-        board = model.board;
+        _plies = model._plies;
+        _undo = model._undo.clone();
+        _hashes = model._hashes.clone();
+        _hash = model._hash;
+        System.arraycopy(model._symHash, 0, _symHash, 0, NUM_SYMMETRIES);
+        System.arraycopy(model.board, 0, board, 0, board.length);
+        _king = model._king;
+        System.arraycopy(model._rowOcc, 0, _rowOcc, 0, _size);
+        System.arraycopy(model._colOcc, 0, _colOcc, 0, _size);
         _repeated = model._repeated;
         lim = model.lim;
+        if (model._accumulator == null) {
+            _accumulator = null;
+        } else {
+            if (_accumulator == null
+                || _accumulator.network() != model._accumulator.network()) {
+                _accumulator = new Accumulator(model._accumulator.network());
+            }
+            _accumulator.copy(model._accumulator);
+        }
+        if (model._mobility == null) {
+            _mobility = null;
+        } else {
+            if (_mobility == null) {
+                _mobility = new MobilityMap(_variant);
+            }
+            _mobility.copy(model._mobility);
+        }
+    }
+
+    /** Set my variant to VARIANT, and clear the board to its initial
+     *  position. */
+    void setVariant(Variant variant) {
+        Geometry geom = variant.geometry();
+        _variant = variant;
+        _size = geom.size();
+        _numSquares = geom.numSquares();
+        _neighbor = geom.neighbor();
+        _ray = geom.ray();
+        _lineMask = geom.lineMask();
+        _columns = geom.columns();
+        _rows = geom.rows();
+        _escapeEnd = variant.escapeEnd();
+        _symKeys = symmetricKeys(geom);
+        _captures = variant.captures();
+        _escape = variant.escape();
+        _restricted = variant.restricted();
+        _hostileCorner = variant.hostileCorner();
+        _nearThrone = variant.nearThrone();
+        _throne = variant.throne();
+        _armedKing = variant.armedKing();
+        _strongKing = variant.strongKing();
+        _hostileThrone = variant.hostileThrone();
+        _besiegedThrone = variant.besiegedThrone();
+        if (_accumulator != null
+            && _accumulator.network().numSquares() != _numSquares) {
+            _accumulator = null;
+        }
+        if (_mobility != null) {
+            _mobility = new MobilityMap(variant);
+        }
+        init();
+    }
+
+    /** Evaluate positions with NETWORK (none if null) from now on.  A
+     *  network applies only to boards with its number of squares;
+     *  changing to a variant with a different number removes it. */
+    void setNetwork(Network network) {
+        if (network == null) {
+            _accumulator = null;
+        } else if (network.numSquares() != _numSquares) {
+            throw Utils.error("network is for boards of %d squares",
+                              network.numSquares());
+        } else {
+            _accumulator = new Accumulator(network);
+            _accumulator.refresh(this);
+        }
+    }
+
+    /** Return the network evaluating my positions, or null if none. */
+    Network network() {
+        return _accumulator == null ? null : _accumulator.network();
+    }
+
+    /** Return my network's evaluation of the current position (positive
+     *  favors white).  Requires that I have a network. */
+    int networkScore() {
+        return _accumulator.evaluate();
+    }
+
+    /** Keep a MobilityMap of the current position up to date from now on
+     *  iff ON.  It makes hasMove and kingCapturable take constant time,
+     *  but costs a few ray scans per move made or undone. */
+    void trackMobility(boolean on) {
+        if (!on) {
+            _mobility = null;
+        } else if (_mobility == null) {
+            _mobility = new MobilityMap(_variant);
+            _mobility.refresh(this);
+        }
+    }
+
+    /** Return the map of the moves available in the current position, or
+     *  null if it is not tracked (see trackMobility).  The value returned
+     *  should not be modified. */
+    MobilityMap mobility() {
+        return _mobility;
+    }
+
+    /** Return my variant. */
+    Variant variant() {
+        return _variant;
+    }
+
+    /** Return the geometry of my board. */
+    Geometry geometry() {
+        return _variant.geometry();
     }
 
     /** Clears the board to the initial position. */
     void init() {
-        board = new Piece[SIZE][SIZE];
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                board[i][j] = EMPTY;
-            }
+        board = new Piece[_numSquares];
+        for (int i = 0; i < _numSquares; i++) {
+            board[i] = EMPTY;
         }
-        for (Square sq: INITIAL_ATTACKERS) {
-            board[sq.col()][sq.row()] = BLACK;
+        for (int sq : _variant.attackers()) {
+            board[sq] = BLACK;
         }
-        for (Square sq: INITIAL_DEFENDERS) {
-            board[sq.col()][sq.row()] = WHITE;
+        for (int sq : _variant.defenders()) {
+            board[sq] = WHITE;
         }
-        board[THRONE.col()][THRONE.row()] = KING;
-        _moveCount = 0;
+        board[_throne] = KING;
         _turn = BLACK.side();
-        pStack = new Stack<>();
-        sqStack = new Stack<>();
-        csqStack = new Stack<>();
-        sStack = new Stack<>();
         _winner = null;
+        startPosition();
+    }
+
+    /** Set the position to ENCODED, as returned by encodedBoard for a
+     *  board of my variant.  The undo history is cleared, so earlier
+     *  positions do not count as repetitions. */
+    void setPosition(String encoded) {
+        if (encoded.length() != _numSquares + 1
+            || encoded.charAt(0) != 'W' && encoded.charAt(0) != 'B') {
+            throw Utils.error("bad position: %s", encoded);
+        }
+        Piece[] pieces = new Piece[_numSquares];
+        for (int i = 0; i < _numSquares; i += 1) {
+            switch (encoded.charAt(i + 1)) {
+            case '-':
+                pieces[i] = EMPTY;
+                break;
+            case 'W':
+                pieces[i] = WHITE;
+                break;
+            case 'B':
+                pieces[i] = BLACK;
+                break;
+            case 'K':
+                pieces[i] = KING;
+                break;
+            default:
+                throw Utils.error("bad position: %s", encoded);
+            }
+        }
+        board = pieces;
+        _turn = encoded.charAt(0) == 'W' ? WHITE : BLACK;
+        startPosition();
+        if (_king < 0) {
+            _winner = BLACK;
+        } else if (_escape[_king]) {
+            _winner = WHITE;
+        } else {
+            _winner = null;
+        }
+    }
+
+    /** Recompute everything derived from the contents of the board and
+     *  the side to move, and clear the move history. */
+    private void startPosition() {
+        _king = findKing();
+        Arrays.fill(_rowOcc, 0);
+        Arrays.fill(_colOcc, 0);
+        for (int i = 0; i < _numSquares; i += 1) {
+            if (board[i] != EMPTY) {
+                toggleOccupied(i);
+            }
+        }
+        _moveCount = 0;
+        _repeated = false;
+        _hash = computeHash();
+        computeSymmetricHashes();
+        if (_accumulator != null) {
+            _accumulator.refresh(this);
+        }
+        if (_mobility != null) {
+            _mobility.refresh(this);
+        }
+        if (_undo == null) {
+            _undo = new long[INITIAL_HISTORY];
+            _hashes = new long[INITIAL_HISTORY];
+        }
+        _plies = 0;
     }
 
     /** Set the move limit to LIM, N.  It is an error if 2*LIM <=
@@ -121,12 +380,97 @@ class Board {
     }
 
     /** Record current position and set winner() next mover if the current
-     *  position is a repeat. */
+     *  position is a repeat.  Only positions since the last capture, with
+     *  the same side to move, can be repeats. */
     private void checkRepeated() {
-        if (sStack.contains(encodedBoard())) {
-            _repeated = true;
-            _winner = _turn;
+        for (int k = _plies - 1; k >= 0; k -= 1) {
+            if (((_undo[k] >> CAPTURE_SHIFT) & CAPTURE_MASK) != 0) {
+                break;
+            }
+            if (((_plies - k) & 1) == 0 && _hashes[k] == _hash) {
+                _repeated = true;
+                _winner = _turn;
+                break;
+            }
+        }
+    }
+
+    /** Return a hash of the current position (contents and side to move).
+     *  Equal positions have equal hashes, and unequal positions are very
+     *  unlikely to. */
+    long hash() {
+        return _hash;
+    }
+
+    /** Return the canonical hash of the current position: the least of the
+     *  hashes of its images under the symmetries of the board.  Positions
+     *  that are rotations or reflections of each other have equal
+     *  canonical hashes, so caches keyed by them hold only one entry for
+     *  all of them. */
+    long canonicalHash() {
+        long h = _symHash[0];
+        for (int s = 1; s < NUM_SYMMETRIES; s += 1) {
+            h = Math.min(h, _symHash[s]);
+        }
+        return h;
+    }
+
+    /** Return a symmetry (see Geometry) that maps the current position to
+     *  the position whose hash is canonicalHash().  Moves are transformed
+     *  by it to be stored under the canonical hash, and by its inverse
+     *  when retrieved. */
+    int canonicalSymmetry() {
+        int result = 0;
+        for (int s = 1; s < NUM_SYMMETRIES; s += 1) {
+            if (_symHash[s] < _symHash[result]) {
+                result = s;
+            }
         }
+        return result;
+    }
+
+    /** Return the hash of the image of the current position under
+     *  symmetry S (see Geometry).  symmetricHash(0) == hash(). */
+    long symmetricHash(int s) {
+        return _symHash[s];
+    }
+
+    /** Set _symHash from scratch. */
+    private void computeSymmetricHashes() {
+        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+            _symHash[s] = _turn == WHITE ? WHITE_TO_MOVE : 0;
+        }
+        for (int i = 0; i < _numSquares; i += 1) {
+            flipSymmetric(board[i], i);
+        }
+    }
+
+    /** Toggle piece P on square index I in all the symmetric hashes. */
+    private void flipSymmetric(Piece p, int i) {
+        long[] keys = _symKeys[p.ordinal()];
+        int k = i * NUM_SYMMETRIES;
+        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+            _symHash[s] ^= keys[k + s];
+        }
+    }
+
+    /** Move piece P from square index FROM to square index TO in all the
+     *  symmetric hashes, and change the side to move. */
+    private void moveSymmetric(Piece p, int from, int to) {
+        long[] keys = _symKeys[p.ordinal()];
+        int f = from * NUM_SYMMETRIES, t = to * NUM_SYMMETRIES;
+        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+            _symHash[s] ^= keys[f + s] ^ keys[t + s] ^ WHITE_TO_MOVE;
+        }
+    }
+
+    /** Return the hash of the current position, computed from scratch. */
+    private long computeHash() {
+        long h = _turn == WHITE ? WHITE_TO_MOVE : 0;
+        for (int i = 0; i < _numSquares; i += 1) {
+            h ^= ZOBRIST[board[i].ordinal()][i];
+        }
+        return h;
     }
 
     /** Return the number of moves since the initial position that have not been
@@ -135,27 +479,66 @@ class Board {
         return _moveCount;
     }
 
-    /** Return location of the king. */
+    /** Return location of the king, or null if it has been captured. */
     Square kingPosition() {
-        for (int col = 0; col < SIZE; col++) {
-            for (int row = 0; row < SIZE; row++) {
-                if (board[col][row] == KING) {
-                    return sq(col, row);
-                }
+        int k = kingIndex();
+        return k < 0 ? null : square(k);
+    }
+
+    /** Return the index of S on my board, throwing an error if S is off
+     *  it. */
+    private int index(Square s) {
+        Geometry geom = geometry();
+        if (!geom.exists(s.col(), s.row())) {
+            throw Utils.error("%s is not on a %dx%d board", s, _size, _size);
+        }
+        return geom.index(s.col(), s.row());
+    }
+
+    /** Return the Square with the column and row of the square with index
+     *  K on my board, throwing an error if there is none (on boards
+     *  larger than the standard one). */
+    private Square square(int k) {
+        Geometry geom = geometry();
+        return sq(geom.col(k), geom.row(k));
+    }
+
+    /** Return the Move with code MOVE on my board (see square). */
+    Move move(int move) {
+        return Move.mv(square(Move.from(move)), square(Move.to(move)));
+    }
+
+    /** Return the index of the square containing the king, or -1 if the
+     *  king has been captured. */
+    int kingIndex() {
+        return _king;
+    }
+
+    /** Return the index of some square containing a king, or -1 if there
+     *  is none. */
+    private int findKing() {
+        for (int i = 0; i < _numSquares; i += 1) {
+            if (board[i] == KING) {
+                return i;
             }
         }
-        return null;
+        return -1;
     }
 
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return get(s.col(), s.row());
+        return board[index(s)];
     }
 
     /** Return the contents of the square at (COL, ROW), where
-     *  0 <= COL, ROW <= 9. */
+     *  0 <= COL, ROW < size(). */
     final Piece get(int col, int row) {
-        return board[col][row];
+        return board[row * _size + col];
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    final Piece get(int index) {
+        return board[index];
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -165,7 +548,40 @@ class Board {
 
     /** Set square S to P. */
     final void put(Piece p, Square s) {
-        board[s.col()][s.row()] = p;
+        put(p, index(s));
+    }
+
+    /** Set the square with index I to P. */
+    final void put(Piece p, int i) {
+        Piece old = board[i];
+        board[i] = p;
+        if ((old == EMPTY) != (p == EMPTY)) {
+            toggleOccupied(i);
+        }
+        _hash ^= ZOBRIST[old.ordinal()][i] ^ ZOBRIST[p.ordinal()][i];
+        flipSymmetric(old, i);
+        flipSymmetric(p, i);
+        if (_accumulator != null) {
+            if (old != EMPTY) {
+                _accumulator.remove(old, i);
+            }
+            if (p != EMPTY) {
+                _accumulator.add(p, i);
+            }
+        }
+        if (_mobility != null) {
+            if (old != EMPTY) {
+                _mobility.remove(i);
+            }
+            if (p != EMPTY) {
+                _mobility.add(p, i);
+            }
+        }
+        if (p == KING) {
+            _king = i;
+        } else if (old == KING) {
+            _king = findKing();
+        }
     }
 
     /** Set square S to P and record for undoing. */
@@ -175,24 +591,38 @@ class Board {
 
     /** Set square COL ROW to P. */
     final void put(Piece p, char col, char row) {
-        put(p, sq(col - 'a', row - '1'));
+        put(p, geometry().index(col - 'a', row - '1'));
     }
 
     /** Return true iff FROM - TO is an unblocked rook move on the current
      *  board.  For this to be true, FROM-TO must be a rook move and the
      *  squares along it, other than FROM, must be empty. */
     boolean isUnblockedMove(Square from, Square to) {
-        int dir = from.direction(to);
-        if (get(from) == EMPTY) {
+        return isUnblockedMove(index(from), index(to));
+    }
+
+    /** Return true iff the move from square index FROM to square index TO
+     *  is an unblocked rook move on the current board. */
+    boolean isUnblockedMove(int from, int to) {
+        if (board[from] == EMPTY || from == to) {
             return false;
         }
-        while (from.isRookMove(to)) {
-            from = from.rookMove(dir, 1);
-            if (from == null || get(from) != EMPTY) {
+        int d;
+        if (from % _size == to % _size) {
+            d = from < to ? 0 : 2;
+        } else if (from / _size == to / _size) {
+            d = from < to ? 1 : 3;
+        } else {
+            return false;
+        }
+        for (int sq : _ray[from][d]) {
+            if (board[sq] != EMPTY) {
                 return false;
+            } else if (sq == to) {
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
@@ -202,10 +632,16 @@ class Board {
 
     /** Return true iff FROM-TO is a valid move. */
     boolean isLegal(Square from, Square to) {
-        if (from == to || !isLegal(from)) {
+        return isLegal(index(from), index(to));
+    }
+
+    /** Return true iff the move from square index FROM to square index TO
+     *  is a valid move. */
+    boolean isLegal(int from, int to) {
+        if (from == to || board[from].side() != _turn) {
             return false;
         }
-        if (!get(from).equals(KING) && to.equals(THRONE)) {
+        if (board[from] != KING && _restricted[to]) {
             return false;
         }
         return isUnblockedMove(from, to);
@@ -214,138 +650,294 @@ class Board {
     /** Return true iff MOVE is a legal move in the current
      *  position. */
     boolean isLegal(Move move) {
-        return isLegal(move.from(), move.to());
+        return move != null && isLegal(move.from(), move.to());
     }
 
     /** Move FROM-TO, assuming this is a legal move. */
     void makeMove(Square from, Square to) {
+        makeMove(index(from), index(to));
+    }
+
+    /** Move according to MOVE, assuming it is a legal move. */
+    void makeMove(Move move) {
+        makeMove(index(move.from()), index(move.to()));
+    }
+
+    /** Make the move with code MOVE, assuming it is legal. */
+    void makeMove(int move) {
+        makeMove(Move.from(move), Move.to(move));
+    }
+
+    /** Move from square index FROM to square index TO, assuming this is a
+     *  legal move. */
+    void makeMove(int from, int to) {
         assert isLegal(from, to);
-        if (!hasMove(_turn)) {
-            if (_turn == WHITE.side()) {
-                _winner = BLACK.side();
-            } else {
-                _winner = WHITE.side();
-            }
+        Piece side = _turn;
+        if (_plies == _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _plies);
+            _hashes = Arrays.copyOf(_hashes, 2 * _plies);
         }
-        sStack.push(encodedBoard());
-        _moveCount += 1;
-        HashSet<Square> pieces = pieceLocations(_turn);
-        board[to.col()][to.row()] = board[from.col()][from.row()];
-        put(EMPTY, from);
-        for (int d = 0; d < 4; d++) {
-            Square rookSquare = to.rookMove(d, 2);
-            if (rookSquare != null) {
-                pStack.push(get(to.between(rookSquare)));
-                csqStack.push(to.between(rookSquare));
-                if (pieces.contains(rookSquare) || rookSquare.equals(THRONE)) {
-                    capture(to, rookSquare);
-                }
-            }
+        long record = (long) from << FROM_SHIFT | (long) to << TO_SHIFT
+            | (long) GameRecord.resultCode(_winner) << WINNER_SHIFT
+            | (_repeated ? 1L << REPEATED_SHIFT : 0);
+        _hashes[_plies] = _hash;
+        if (!hasMove(side)) {
+            _winner = side.opponent();
         }
-        sqStack.push(from);
-        sqStack.push(to);
-        if (kingPosition() != null && kingPosition().isEdge()) {
-            _winner = WHITE;
+        Piece mover = board[from];
+        long[] keys = ZOBRIST[mover.ordinal()];
+        board[to] = mover;
+        board[from] = EMPTY;
+        toggleOccupied(from);
+        toggleOccupied(to);
+        _hash ^= keys[from] ^ keys[to] ^ WHITE_TO_MOVE;
+        moveSymmetric(mover, from, to);
+        if (_accumulator != null) {
+            _accumulator.move(mover, from, to);
         }
-        if (_turn == WHITE.side()) {
-            _turn = BLACK.side();
-        } else {
-            _turn = WHITE.side();
+        if (_mobility != null) {
+            _mobility.move(from, to);
         }
+        if (mover == KING) {
+            _king = to;
+        }
+        int captured = 0;
+        if (mover != KING || _armedKing) {
+            captured = capture(to, side);
+        }
+        _undo[_plies] = record | (long) captured << CAPTURE_SHIFT;
+        _plies += 1;
+        _moveCount += 1;
+        if (_king >= 0 && _escape[_king]) {
+            _winner = WHITE;
+        }
+        _turn = side.opponent();
         checkRepeated();
     }
 
-    /** Move according to MOVE, assuming it is a legal move. */
-    void makeMove(Move move) {
-        if (move.toString().equals("h4-5")) {
-            int x = 1;
+    /** Perform the captures made by a piece of SIDE that has just moved to
+     *  square index TO, and return their capture mask. */
+    private int capture(int to, Piece side) {
+        int captured = 0;
+        for (int pattern : _captures[to]) {
+            int mid = (pattern >> 8) & 0xff, anvil = pattern & 0xff;
+            Piece victim = board[mid];
+            if (victim == EMPTY || victim.side() == side) {
+                continue;
+            }
+            if (anvil == _throne) {
+                if (!hostileThrone()) {
+                    continue;
+                }
+            } else if (!_hostileCorner[anvil]) {
+                Piece partner = board[anvil];
+                if (partner.side() != side
+                    || partner == KING && !_armedKing) {
+                    continue;
+                }
+            }
+            int d = pattern >> 16;
+            if (victim == KING) {
+                if (!kingSurrounded(mid)) {
+                    continue;
+                }
+                _winner = BLACK;
+                _king = -1;
+                captured |= 1 << (KING_CAPTURED + d);
+            }
+            captured |= 1 << d;
+            board[mid] = EMPTY;
+            toggleOccupied(mid);
+            _hash ^= ZOBRIST[victim.ordinal()][mid];
+            flipSymmetric(victim, mid);
+            if (_accumulator != null) {
+                _accumulator.remove(victim, mid);
+            }
+            if (_mobility != null) {
+                _mobility.remove(mid);
+            }
         }
-        makeMove(move.from(), move.to());
+        return captured;
     }
 
-    /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     *  SQ0 and the necessary conditions are satisfied. */
-    private void capture(Square sq0, Square sq2) {
-        Square sq1 = sq0.between(sq2);
-        if (get(sq1) == KING) {
-            if (captureKing(sq0, sq2)) {
-                _winner = BLACK;
-                put(EMPTY, sq1);
+    /** Return true iff the king at square index KING, which is flanked
+     *  along one line by hostile squares, is captured.  When it is on or
+     *  next to the throne, or always if the king is strong, all four of
+     *  its neighbors must be black or the throne. */
+    private boolean kingSurrounded(int king) {
+        if (_strongKing || _nearThrone[king]) {
+            for (int d = 0; d < 4; d++) {
+                int check = _neighbor[king][d];
+                if (check < 0
+                    || board[check] != BLACK && check != _throne) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Flip the occupancy bits of the square with index I. */
+    private void toggleOccupied(int i) {
+        int c = _columns[i], r = _rows[i];
+        _rowOcc[r] ^= 1 << c;
+        _colOcc[c] ^= 1 << r;
+    }
+
+    /** Return true iff the ray from square index I in direction D is
+     *  empty. */
+    private boolean clearRay(int i, int d) {
+        int occ = d % 2 == 0 ? _colOcc[_columns[i]] : _rowOcc[_rows[i]];
+        return (occ & _lineMask[i][d]) == 0;
+    }
+
+    /** Return the number of distinct escape squares the king can reach
+     *  with its next move (whether or not it is white's turn), or 0 if it
+     *  has been captured.  Each is at the end of a clear ray from the
+     *  king, so this takes constant time. */
+    int kingEscapeRoutes() {
+        if (_king < 0) {
+            return 0;
+        }
+        int routes = 0;
+        for (int d = 0; d < 4; d += 1) {
+            if (_escapeEnd[_king][d] >= 0 && clearRay(_king, d)) {
+                routes += 1;
             }
-        } else if (captureCheck(sq0, sq2)) {
-            put(EMPTY, sq1);
         }
+        return routes;
     }
 
-    /** Returns TRUE if Piece between SQ0 and SQ2 satisfies conditions
-     * to be captured. */
-    private boolean captureCheck(Square sq0, Square sq2) {
-        Piece p0 = get(sq0);
-        Piece p2 = get(sq2);
-        Square sq1 = sq0.between(sq2);
-        if (get(sq1).equals(EMPTY) || get(sq1).side() == p0.side()) {
+    /** Return true iff black could capture the king with its next move
+     *  (whether or not it is black's turn). */
+    boolean kingCapturable() {
+        if (_king < 0 || _winner != null) {
             return false;
-        } else if (sq2.equals(THRONE)) {
-            return checkHostileThrone(sq0, sq2);
-        }
-        return sq0 != sq2
-                && p0.side() == p2.side()
-                && (sq0.col() == sq2.col() || sq0.row() == sq2.row());
-    }
-
-    /** Returns TRUE if conditions to capture a King between SQ0 and SQ2
-     * are satisfied. */
-    private boolean captureKing(Square sq0, Square sq2) {
-        Square sq1 = sq0.between(sq2);
-        if (checkThrone()) {
-            if (get(sq1).equals(KING)) {
-                for (int d = 0; d < 4; d++) {
-                    Square check = sq1.rookMove(d, 1);
-                    if (!get(check).equals(BLACK) && !check.equals(THRONE)) {
+        }
+        int[] around = _neighbor[_king];
+        if (_strongKing || _nearThrone[_king]) {
+            int open = -1;
+            for (int d = 0; d < 4; d += 1) {
+                int sq = around[d];
+                if (sq < 0) {
+                    return false;
+                } else if (board[sq] == EMPTY && sq != _throne) {
+                    if (open >= 0) {
                         return false;
                     }
+                    open = d;
+                } else if (board[sq] != BLACK && sq != _throne) {
+                    return false;
                 }
             }
+            return open >= 0 && hostileToKing(around[(open + 2) % 4])
+                && blackCanReach(around[open]);
+        }
+        for (int d = 0; d < 4; d += 1) {
+            int sq = around[d], anvil = around[(d + 2) % 4];
+            if (sq >= 0 && anvil >= 0 && board[sq] == EMPTY
+                && hostileToKing(anvil) && blackCanReach(sq)) {
+                return true;
+            }
         }
-        return captureCheck(sq0, sq2);
+        return false;
     }
 
-    /** Returns TRUE if the throne is hostile between SQ0 and SQ2. */
-    private boolean checkHostileThrone(Square sq0, Square sq2) {
-        Square sq1 = sq0.between(sq2);
-        if (sq2 == THRONE) {
-            if (get(sq1).equals(EMPTY)) {
-                return false;
-            } else if (!kingPosition().equals(THRONE) || checkBlack()) {
+    /** Return true iff the square with index I, which is next to the
+     *  king, would act as a captor of the king. */
+    private boolean hostileToKing(int i) {
+        if (i == _throne) {
+            return hostileThrone();
+        }
+        return board[i] == BLACK || _hostileCorner[i];
+    }
+
+    /** Return true iff a black piece could move to the empty square with
+     *  index I in one move. */
+    private boolean blackCanReach(int i) {
+        if (_mobility != null) {
+            return _mobility.canReach(BLACK, i);
+        }
+        if (_restricted[i]) {
+            return false;
+        }
+        int c = _columns[i], r = _rows[i];
+        int col = _colOcc[c], row = _rowOcc[r];
+        int north = col & _lineMask[i][0], south = col & _lineMask[i][2],
+            east = row & _lineMask[i][1], west = row & _lineMask[i][3];
+        return north != 0 && board[nearest(north) * _size + c] == BLACK
+            || south != 0 && board[farthest(south) * _size + c] == BLACK
+            || east != 0 && board[r * _size + nearest(east)] == BLACK
+            || west != 0 && board[r * _size + farthest(west)] == BLACK;
+    }
+
+    /** Return the position of the lowest set bit of the nonzero MASK. */
+    private static int nearest(int mask) {
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    /** Return the position of the highest set bit of the nonzero MASK. */
+    private static int farthest(int mask) {
+        return 31 - Integer.numberOfLeadingZeros(mask);
+    }
+
+    /** Return true iff SIDE could capture a soldier by moving one of its
+     *  soldiers to the empty square with index SQ (whether or not it is
+     *  SIDE's turn), against a piece of SIDE or another hostile square
+     *  beyond.  Requires that the mobility is tracked (see trackMobility),
+     *  and takes constant time. */
+    boolean threatensCapture(Piece side, int sq) {
+        Piece soldier = side == BLACK ? BLACK : WHITE;
+        if (_mobility.reach(soldier, sq) == 0) {
+            return false;
+        }
+        for (int pattern : _captures[sq]) {
+            int mid = (pattern >> 8) & 0xff, anvil = pattern & 0xff;
+            Piece victim = board[mid];
+            if (victim == EMPTY || victim == KING
+                || victim.side() == soldier) {
+                continue;
+            }
+            if (anvil == _throne) {
+                if (hostileThrone()) {
+                    return true;
+                }
+            } else if (_hostileCorner[anvil]) {
                 return true;
+            } else {
+                Piece partner = board[anvil];
+                if (partner.side() == soldier
+                    && (partner != KING || _armedKing)) {
+                    return true;
+                }
             }
         }
         return false;
     }
 
+    /** Returns TRUE if the throne is hostile to an occupied square next to
+     *  it. */
+    private boolean hostileThrone() {
+        return _hostileThrone && _king != _throne
+            || _besiegedThrone && checkBlack();
+    }
+
     /** Returns TRUE if there are at least 3 thrones that contain BLACK
      * pieces. */
     private boolean checkBlack() {
-        Square[] thrones = new Square[]{NTHRONE, WTHRONE, ETHRONE, STHRONE};
         int check = 0;
-        for (Square s: thrones) {
-            if (get(s).equals(BLACK)) {
+        for (int d = 0; d < 4; d += 1) {
+            if (board[_neighbor[_throne][d]] == BLACK) {
                 check += 1;
             }
         }
         return check >= 3;
     }
 
-    /** Returns TRUE if the King is positioned on any throne. */
-    private boolean checkThrone() {
-        return kingPosition() == THRONE
-                || kingPosition() == NTHRONE || kingPosition() == WTHRONE
-                || kingPosition() == STHRONE || kingPosition() == ETHRONE;
-    }
-
-    /** Undo one move. Has no effect on the initial board. */
+    /** Undo one move. Has no effect on the initial board, or if the undo
+     *  history has been cleared since the last move. */
     void undo() {
-        if (_moveCount > 0) {
+        if (_moveCount > 0 && _plies > 0) {
             undoPosition();
             _moveCount -= 1;
             _turn = _turn.opponent().side();
@@ -355,50 +947,114 @@ class Board {
     /** Remove record of current position in the set of positions encountered,
      *  unless it is a repeated position or we are at the first move. */
     private void undoPosition() {
-        _repeated = false;
-        Square to = sqStack.pop();
-        Square from = sqStack.pop();
-        for (int d = 3; d >= 0; d--) {
-            Square sq = to.rookMove(d, 2);
-            if (sq != null) {
-                Piece pCapture = pStack.pop();
-                Square sqCapture = csqStack.pop();
-                put(pCapture, sqCapture);
+        _plies -= 1;
+        long record = _undo[_plies];
+        int from = (int) (record >> FROM_SHIFT) & SQUARE_MASK,
+            to = (int) (record >> TO_SHIFT) & SQUARE_MASK,
+            captured = (int) (record >> CAPTURE_SHIFT) & CAPTURE_MASK;
+        Piece mover = board[to];
+        for (int d = 0; d < 4; d += 1) {
+            if ((captured & (1 << d)) != 0) {
+                int mid = _neighbor[to][d];
+                if ((captured & (1 << (KING_CAPTURED + d))) != 0) {
+                    board[mid] = KING;
+                    _king = mid;
+                } else {
+                    board[mid] = mover.opponent();
+                }
+                flipSymmetric(board[mid], mid);
+                toggleOccupied(mid);
+                if (_accumulator != null) {
+                    _accumulator.add(board[mid], mid);
+                }
+                if (_mobility != null) {
+                    _mobility.add(board[mid], mid);
+                }
             }
         }
-        sStack.pop();
-        board[from.col()][from.row()] = board[to.col()][to.row()];
-        put(EMPTY, to);
+        board[from] = mover;
+        board[to] = EMPTY;
+        toggleOccupied(from);
+        toggleOccupied(to);
+        if (mover == KING) {
+            _king = from;
+        }
+        moveSymmetric(mover, to, from);
+        if (_accumulator != null) {
+            _accumulator.move(mover, to, from);
+        }
+        if (_mobility != null) {
+            _mobility.move(to, from);
+        }
+        _hash = _hashes[_plies];
+        _winner = GameRecord.resultPiece(
+            (int) (record >> WINNER_SHIFT) & WINNER_MASK);
+        _repeated = (record & (1L << REPEATED_SHIFT)) != 0;
     }
 
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        sqStack = new Stack<>();
-        pStack = new Stack<>();
-        csqStack = new Stack<>();
-        sStack = new Stack<>();
+        _plies = 0;
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
-        List<Move> moves = new ArrayList<>();
-        for (Square p: pieceLocations(side)) {
-            for (int d = 0; d < 4; d++) {
-                for (Move m: Move.ROOK_MOVES[p.index()][d]) {
-                    if (isLegal(m)) {
-                        moves.add(m);
+        int[] codes = new int[_numSquares * 2 * (_size - 1)];
+        int n = legalMoves(side, codes);
+        List<Move> moves = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            moves.add(move(codes[i]));
+        }
+        return moves;
+    }
+
+    /** Store the codes of all legal moves on the current board for SIDE
+     *  (ignoring whose turn it is at the moment) in MOVES, which must have
+     *  room for MAX_MOVES codes, and return their number. */
+    int legalMoves(Piece side, int[] moves) {
+        int n = 0;
+        for (int from = 0; from < _numSquares; from += 1) {
+            Piece p = board[from];
+            if (p == EMPTY || p.side() != side.side()) {
+                continue;
+            }
+            for (int d = 0; d < 4; d += 1) {
+                for (int to : _ray[from][d]) {
+                    if (board[to] != EMPTY) {
+                        break;
+                    } else if (!_restricted[to] || p == KING) {
+                        moves[n] = Move.code(from, to);
+                        n += 1;
                     }
                 }
             }
         }
-        return moves;
+        return n;
     }
 
     /** Return true iff SIDE has a legal move. */
     boolean hasMove(Piece side) {
-        return !legalMoves(side).isEmpty();
+        if (_mobility != null) {
+            return _mobility.mobility(side) > 0;
+        }
+        for (int from = 0; from < _numSquares; from += 1) {
+            Piece p = board[from];
+            if (p == EMPTY || p.side() != side.side()) {
+                continue;
+            }
+            for (int d = 0; d < 4; d += 1) {
+                for (int to : _ray[from][d]) {
+                    if (board[to] != EMPTY) {
+                        break;
+                    } else if (!_restricted[to] || p == KING) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -411,20 +1067,20 @@ class Board {
      */
     String toString(boolean coordinates) {
         Formatter out = new Formatter();
-        for (int r = SIZE - 1; r >= 0; r -= 1) {
+        for (int r = _size - 1; r >= 0; r -= 1) {
             if (coordinates) {
                 out.format("%2d", r + 1);
             } else {
                 out.format("  ");
             }
-            for (int c = 0; c < SIZE; c += 1) {
+            for (int c = 0; c < _size; c += 1) {
                 out.format(" %s", get(c, r));
             }
             out.format("%n");
         }
         if (coordinates) {
             out.format("  ");
-            for (char c = 'a'; c <= 'i'; c += 1) {
+            for (char c = 'a'; c < 'a' + _size; c += 1) {
                 out.format(" %c", c);
             }
             out.format("%n");
@@ -432,36 +1088,57 @@ class Board {
         return out.toString();
     }
 
-    /** Return the locations of all pieces on SIDE. */
-    private HashSet<Square> pieceLocations(Piece side) {
-        assert side != EMPTY;
-        HashSet<Square> plocations = new HashSet<>();
-        for (int col = 0; col < SIZE; col++) {
-            for (int row = 0; row < SIZE; row++) {
-                if (get(col, row).side() == side.side()) {
-                    plocations.add(sq(col, row));
-                }
-            }
-        }
-        return plocations;
-    }
-
     /** Return INT of positions on a SIDE. */
     int countSide(Piece side) {
-        return pieceLocations(side).size();
+        int n = 0;
+        for (int i = 0; i < _numSquares; i += 1) {
+            if (board[i] != EMPTY && board[i].side() == side.side()) {
+                n += 1;
+            }
+        }
+        return n;
     }
 
     /** Return the contents of _board in the order of SQUARE_LIST as a sequence
      *  of characters: the toString values of the current turn and Pieces. */
     String encodedBoard() {
-        char[] result = new char[Square.SQUARE_LIST.size() + 1];
+        char[] result = new char[_numSquares + 1];
         result[0] = turn().toString().charAt(0);
-        for (Square sq : SQUARE_LIST) {
-            result[sq.index() + 1] = get(sq).toString().charAt(0);
+        for (int i = 0; i < _numSquares; i += 1) {
+            result[i + 1] = board[i].toString().charAt(0);
         }
         return new String(result);
     }
 
+    /** Return the number of squares on a side of my board. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff the king wins by reaching the square with index
+     *  INDEX. */
+    boolean isEscape(int index) {
+        return _escape[index];
+    }
+
+    /** My variant. */
+    private Variant _variant;
+    /** Number of squares on a side, and in total. */
+    private int _size, _numSquares;
+    /** Index of the throne. */
+    private int _throne;
+    /** Geometry tables of my variant (see Geometry). */
+    private int[][] _neighbor;
+    /** Ray table of my variant. */
+    private int[][][] _ray;
+    /** Capture patterns of my variant (see Variant.captures). */
+    private int[][] _captures;
+    /** Square tables of my variant (see Variant). */
+    private boolean[] _escape, _restricted, _hostileCorner, _nearThrone;
+    /** Rule settings of my variant. */
+    private boolean _armedKing, _strongKing, _hostileThrone,
+        _besiegedThrone;
+
     /** Piece whose turn it is (WHITE or BLACK). */
     private Piece _turn;
     /** Cached value of winner on this board, or EMPTY if it has not been
@@ -471,17 +1148,48 @@ class Board {
     private int _moveCount;
     /** True when current board is a repeated position (ending the game). */
     private boolean _repeated;
-    /** A board represented as a 2D array of pieces. */
-    private Piece[][] board;
+    /** Initial capacity of the move history. */
+    private static final int INITIAL_HISTORY = 64;
+
+    /** A board represented as an array of pieces, indexed by square
+     *  index. */
+    private Piece[] board;
     /** Limit of move count. */
     private int lim;
-    /** A stack of squares. */
-    private Stack<Square> sqStack;
-    /** A stack of pieces for captures. */
-    private Stack<Piece> pStack;
-    /** A stack of squares for captures. */
-    private Stack<Square> csqStack;
-    /** A stack of strings for board. */
-    private Stack<String> sStack;
+    /** Index of the king's square, or -1 if it has been captured. */
+    private int _king;
+    /** Occupancy masks: bit c of _rowOcc[r] and bit r of _colOcc[c] are
+     *  set iff the square at column c, row r is occupied. */
+    private final int[] _rowOcc = new int[Geometry.MAX_SIZE],
+        _colOcc = new int[Geometry.MAX_SIZE];
+    /** Line masks, columns, and rows of squares (see Geometry). */
+    private int[][] _lineMask;
+    /** Column of each square. */
+    private int[] _columns;
+    /** Row of each square. */
+    private int[] _rows;
+    /** Escape rays of my variant (see Variant.escapeEnd). */
+    private int[][] _escapeEnd;
+    /** Hash of the current position. */
+    private long _hash;
+    /** _symHash[s] is the hash of the image of the current position under
+     *  symmetry s. */
+    private final long[] _symHash = new long[NUM_SYMMETRIES];
+    /** The hidden layer of my network for the current position, or null
+     *  if I have no network. */
+    private Accumulator _accumulator;
+    /** The moves available in the current position, or null if they are
+     *  not tracked. */
+    private MobilityMap _mobility;
+    /** Symmetric Zobrist keys for my board size (see SYMMETRIC_KEYS). */
+    private long[][] _symKeys;
+    /** Number of moves recorded in the undo history. */
+    private int _plies;
+    /** _undo[k] is the undo record (see FROM_SHIFT) of the kth move in
+     *  the undo history. */
+    private long[] _undo;
+    /** _hashes[k] is the hash of the position before the kth move in the
+     *  undo history. */
+    private long[] _hashes;
 
 }
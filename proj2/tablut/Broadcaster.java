@@ -0,0 +1,756 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** A View that broadcasts the game to spectators connected over TCP, and
+ *  passes each update on to another View.  Each update that changes the
+ *  position is sent as one message: a diff, if the change is a single
+ *  move, and otherwise a snapshot of the whole position.  A snapshot is
+ *  also sent in place of a diff after every SNAPSHOT_INTERVAL diffs, and
+ *  to each spectator when it connects.  See Replica for the format of the
+ *  messages.
+ *  <p>
+ *  Messages are encoded once, into a ring buffer holding the end of the
+ *  stream of messages, which is the same for all spectators.  A spectator
+ *  costs only its connection and its position in the stream.  A single
+ *  thread writes to all the spectators with non-blocking I/O, sending
+ *  each as much of the stream as its connection will take, so that a
+ *  spectator that falls behind catches up with larger writes.  One that
+ *  falls more than the size of the ring behind (because it reads too
+ *  slowly) is disconnected.  Spectators send nothing; anything they do
+ *  send is ignored.
+ *  @author Jennifer Tran
+ */
+class Broadcaster implements View, Closeable {
+
+    /** Number of diffs between snapshots. */
+    static final int SNAPSHOT_INTERVAL = 64;
+    /** Default size of the ring buffer, in bytes. */
+    static final int DEFAULT_RING_SIZE = 1 << 16;
+
+    /** Message type of a diff. */
+    static final byte DIFF = 'D';
+    /** Message type of a snapshot. */
+    static final byte SNAPSHOT = 'S';
+
+    /** A broadcaster that accepts spectators on PORT (any free port if 0),
+     *  holding DEFAULT_RING_SIZE bytes of messages, and passing updates on
+     *  to NEXT. */
+    Broadcaster(int port, View next) throws IOException {
+        this(port, DEFAULT_RING_SIZE, next);
+    }
+
+    /** A broadcaster that accepts spectators on PORT (any free port if 0),
+     *  holding RINGSIZE bytes of messages, and passing updates on to
+     *  NEXT. */
+    Broadcaster(int port, int ringSize, View next) throws IOException {
+        if (ringSize < MAX_MESSAGE) {
+            throw error("ring buffer too small");
+        }
+        _next = next;
+        _ring = ByteBuffer.allocateDirect(ringSize);
+        _window = _ring.duplicate();
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress(port));
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+        Thread sender = new Thread(this::serve, "broadcaster");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /** Return the port on which I accept spectators. */
+    int port() {
+        return _server.socket().getLocalPort();
+    }
+
+    @Override
+    public void update(Controller controller) {
+        publish(controller.board());
+        _next.update(controller);
+    }
+
+    /** Send the position on BOARD to my spectators, if it differs from
+     *  the last one sent. */
+    synchronized void publish(Board board) {
+        int n = board.geometry().numSquares();
+        Piece turn = board.turn(), winner = board.winner();
+        if (_squares == null || board.variant() != _variant) {
+            _variant = board.variant();
+            _squares = new Piece[n];
+            _sequence += 1;
+        } else if (!encodeDiff(board, turn, winner)) {
+            return;
+        } else if (_diffs < SNAPSHOT_INTERVAL) {
+            _diffs += 1;
+            append(_message);
+            return;
+        }
+        for (int i = 0; i < n; i += 1) {
+            _squares[i] = board.get(i);
+        }
+        _turn = turn;
+        _winner = winner;
+        encodeSnapshot(_message);
+        _diffs = 0;
+        append(_message);
+    }
+
+    /** Return the number of spectators connected. */
+    synchronized int spectators() {
+        return _spectators.size();
+    }
+
+    /** Return the number of spectators disconnected for falling behind. */
+    synchronized long dropped() {
+        return _dropped;
+    }
+
+    /** Return the number of messages sent so far. */
+    synchronized long messages() {
+        return _messages;
+    }
+
+    /** Return the number of bytes in the stream so far. */
+    synchronized long written() {
+        return _written;
+    }
+
+    /** Stop accepting spectators, and disconnect those I have. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            _closed = true;
+        }
+        _selector.wakeup();
+    }
+
+    /** Return false if the position on BOARD, where TURN is to move and
+     *  WINNER has won, is the last position sent.  Otherwise, advance the
+     *  sequence number and return true.  If the position differs from the
+     *  last one by one move, also update my copy of the position and
+     *  encode the diff in _message; if not, set _diffs so that a snapshot
+     *  is sent instead. */
+    private boolean encodeDiff(Board board, Piece turn, Piece winner) {
+        int to = -1, changes = 0;
+        for (int i = 0; i < _squares.length; i += 1) {
+            Piece p = board.get(i);
+            if (p != _squares[i]) {
+                changes += 1;
+                if (_squares[i] != EMPTY) {
+                    if (p != EMPTY) {
+                        to = -2;
+                    }
+                } else if (to == -1) {
+                    to = i;
+                } else {
+                    to = -2;
+                }
+            }
+        }
+        if (changes == 0 && turn == _turn && winner == _winner) {
+            return false;
+        }
+        _sequence += 1;
+        if (to < 0 || _turn == null || board.get(to).side() != _turn
+            || turn == _turn || changes > MAX_CAPTURES + 2) {
+            _diffs = SNAPSHOT_INTERVAL;
+            return true;
+        }
+        Piece mover = board.get(to);
+        int from = -1, captures = 0;
+        for (int i = 0; i < _squares.length; i += 1) {
+            if (board.get(i) == _squares[i] || i == to) {
+                continue;
+            } else if (_squares[i] == mover && from < 0) {
+                from = i;
+            } else if (_squares[i].side() == mover.side()) {
+                _diffs = SNAPSHOT_INTERVAL;
+                return true;
+            } else {
+                _captured[captures] = (byte) i;
+                captures += 1;
+            }
+        }
+        if (from < 0) {
+            _diffs = SNAPSHOT_INTERVAL;
+            return true;
+        }
+        _squares[from] = EMPTY;
+        _squares[to] = mover;
+        for (int k = 0; k < captures; k += 1) {
+            _squares[_captured[k] & 0xff] = EMPTY;
+        }
+        _turn = turn;
+        _winner = winner;
+        _message.clear();
+        _message.putShort((short) (9 + captures));
+        _message.put(DIFF).putInt(_sequence).put(state(turn, winner));
+        _message.put((byte) from).put((byte) to).put((byte) captures);
+        _message.put(_captured, 0, captures);
+        _message.flip();
+        return true;
+    }
+
+    /** Encode a snapshot of my copy of the position in MESSAGE. */
+    private void encodeSnapshot(ByteBuffer message) {
+        int n = _squares.length;
+        message.clear();
+        message.putShort((short) (7 + (n + 3) / 4));
+        message.put(SNAPSHOT).putInt(_sequence).put(state(_turn, _winner));
+        message.put((byte) _variant.size());
+        for (int i = 0; i < n; i += 4) {
+            int b = 0;
+            for (int k = 0; k < 4 && i + k < n; k += 1) {
+                b |= _squares[i + k].ordinal() << (2 * k);
+            }
+            message.put((byte) b);
+        }
+        message.flip();
+    }
+
+    /** Return the encoding of the side to move, TURN, and the winner,
+     *  WINNER, in one byte. */
+    private static byte state(Piece turn, Piece winner) {
+        return (byte) ((turn == WHITE ? 1 : 0)
+                       | GameRecord.resultCode(winner) << 1);
+    }
+
+    /** Add MESSAGE to the end of the stream, and have it sent. */
+    private void append(ByteBuffer message) {
+        int n = message.remaining();
+        int start = (int) (_written % _ring.capacity());
+        int first = Math.min(n, _ring.capacity() - start);
+        _window.clear();
+        _window.position(start);
+        ByteBuffer head = message.duplicate();
+        head.limit(head.position() + first);
+        _window.put(head);
+        message.position(message.position() + first);
+        _window.clear();
+        _window.put(message);
+        _written += n;
+        _messages += 1;
+        _snapshot = null;
+        if (!_pending) {
+            _pending = true;
+            _selector.wakeup();
+        }
+    }
+
+    /** Accept spectators and send them the stream until closed. */
+    private void serve() {
+        try {
+            while (true) {
+                _selector.select();
+                synchronized (this) {
+                    if (_closed) {
+                        break;
+                    }
+                    for (SelectionKey key : _selector.selectedKeys()) {
+                        if (!key.isValid()) {
+                            continue;
+                        } else if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Spectator s = (Spectator) key.attachment();
+                        if (key.isReadable()) {
+                            discardInput(s);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(s);
+                        }
+                    }
+                    _selector.selectedKeys().clear();
+                    if (_pending) {
+                        _pending = false;
+                        for (int i = _spectators.size() - 1; i >= 0;
+                             i -= 1) {
+                            flush(_spectators.get(i));
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            /* Stop broadcasting. */
+        }
+        synchronized (this) {
+            for (int i = _spectators.size() - 1; i >= 0; i -= 1) {
+                disconnect(_spectators.get(i));
+            }
+        }
+        try {
+            _server.close();
+            _selector.close();
+        } catch (IOException excp) {
+            /* Ignore IOException. */
+        }
+    }
+
+    /** Accept a waiting spectator, if there is one, and send it a snapshot
+     *  of the current position, followed by the rest of the stream. */
+    private void accept() throws IOException {
+        SocketChannel channel = _server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Spectator s = new Spectator(channel);
+        s.sent = _written;
+        if (_squares != null) {
+            if (_snapshot == null) {
+                _snapshot = ByteBuffer.allocate(MAX_MESSAGE);
+                encodeSnapshot(_snapshot);
+            }
+            s.intro = _snapshot.duplicate();
+        }
+        s.key = channel.register(_selector, SelectionKey.OP_READ, s);
+        _spectators.add(s);
+        flush(s);
+    }
+
+    /** Send spectator S as much of the stream as it will take, or
+     *  disconnect it if it has fallen too far behind. */
+    private void flush(Spectator s) {
+        if (_written - s.sent > _ring.capacity()) {
+            _dropped += 1;
+            disconnect(s);
+            return;
+        }
+        try {
+            if (s.intro != null) {
+                s.channel.write(s.intro);
+                if (s.intro.hasRemaining()) {
+                    s.key.interestOps(SelectionKey.OP_READ
+                                      | SelectionKey.OP_WRITE);
+                    return;
+                }
+                s.intro = null;
+            }
+            while (s.sent < _written) {
+                int start = (int) (s.sent % _ring.capacity());
+                int n = (int) Math.min(_written - s.sent,
+                                       _ring.capacity() - start);
+                _window.limit(start + n).position(start);
+                int k = s.channel.write(_window);
+                s.sent += k;
+                if (k < n) {
+                    break;
+                }
+            }
+            s.key.interestOps(s.sent < _written
+                              ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                              : SelectionKey.OP_READ);
+        } catch (IOException excp) {
+            disconnect(s);
+        }
+    }
+
+    /** Read and ignore whatever spectator S has sent, disconnecting it if
+     *  it has closed its connection. */
+    private void discardInput(Spectator s) {
+        try {
+            _input.clear();
+            if (s.channel.read(_input) < 0) {
+                disconnect(s);
+            }
+        } catch (IOException excp) {
+            disconnect(s);
+        }
+    }
+
+    /** Close the connection to spectator S and forget it. */
+    private void disconnect(Spectator s) {
+        _spectators.remove(s);
+        try {
+            s.channel.close();
+        } catch (IOException excp) {
+            /* Ignore IOException. */
+        }
+    }
+
+    /** A connected spectator. */
+    private static final class Spectator {
+        /** A spectator connected through CHANNEL. */
+        Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** The connection. */
+        final SocketChannel channel;
+        /** The registration of the connection with the selector. */
+        SelectionKey key;
+        /** The rest of the snapshot sent on connection, or null once it
+         *  has been sent. */
+        ByteBuffer intro;
+        /** Number of bytes of the stream sent (or skipped, before
+         *  connection). */
+        long sent;
+    }
+
+    /** A spectator's copy of the game, kept up to date by the messages
+     *  from a Broadcaster.  Each message starts with its length, not
+     *  counting the length itself, as a 2-byte integer, then a byte giving
+     *  its type (DIFF or SNAPSHOT), a 4-byte sequence number, which
+     *  increases by one with each change of position, and a byte encoding
+     *  the side to move (bit 0, set for white) and the winner (bits 1-2,
+     *  as for GameRecord.resultCode).  A diff continues with the indices
+     *  of the square moved from and the square moved to, the number of
+     *  pieces captured, and the index of each captured piece's square, one
+     *  byte each.  A snapshot continues with the size of the board, in a
+     *  byte, and then the contents of the squares in index order, packed
+     *  four to a byte, each the ordinal of its Piece in two bits, starting
+     *  with the low-order ones.  All numbers are big-endian. */
+    static class Replica {
+
+        /** Update me according to the message MESSAGE, which must be
+         *  complete.  Its position is advanced past the message.  Return
+         *  false if I can make no sense of it: if it is a diff and I have
+         *  missed a message since the last snapshot, or have seen none. */
+        boolean apply(ByteBuffer message) {
+            int length = message.getShort() & 0xffff;
+            int end = message.position() + length;
+            byte type = message.get();
+            int sequence = message.getInt();
+            int state = message.get();
+            boolean ok = true;
+            if (type == SNAPSHOT) {
+                int size = message.get();
+                _squares = new Piece[size * size];
+                for (int i = 0; i < _squares.length; i += 4) {
+                    int b = message.get();
+                    for (int k = 0; k < 4 && i + k < _squares.length;
+                         k += 1) {
+                        _squares[i + k] = PIECES[(b >> (2 * k)) & 3];
+                    }
+                }
+            } else if (_squares == null || sequence != _sequence + 1) {
+                _squares = null;
+                ok = false;
+            } else {
+                int from = message.get() & 0xff, to = message.get() & 0xff;
+                int captures = message.get();
+                _squares[to] = _squares[from];
+                _squares[from] = EMPTY;
+                for (int k = 0; k < captures; k += 1) {
+                    _squares[message.get() & 0xff] = EMPTY;
+                }
+            }
+            message.position(end);
+            _sequence = sequence;
+            _turn = (state & 1) == 1 ? WHITE : BLACK;
+            _winner = GameRecord.resultPiece(state >> 1);
+            return ok;
+        }
+
+        /** Return the contents of the square with index I. */
+        Piece get(int i) {
+            return _squares[i];
+        }
+
+        /** Return the side to move. */
+        Piece turn() {
+            return _turn;
+        }
+
+        /** Return the winner, or null if there is none. */
+        Piece winner() {
+            return _winner;
+        }
+
+        /** Return the sequence number of the last message applied. */
+        int sequence() {
+            return _sequence;
+        }
+
+        /** The contents of the board, or null before the first snapshot. */
+        private Piece[] _squares;
+        /** The side to move. */
+        private Piece _turn;
+        /** The winner. */
+        private Piece _winner;
+        /** The sequence number of the last message. */
+        private int _sequence;
+    }
+
+    /** Connect ARGS[0] spectators to a broadcaster, plus ARGS[2] (default
+     *  0) that never read, and broadcast random games to them until ARGS[1]
+     *  messages have been sent.  The messages are published in batches
+     *  of half the ring, and the publisher waits for the spectators that
+     *  read to catch up after each.  Report the rate of messages
+     *  sent and delivered, the number of slow spectators dropped, and the
+     *  heap used per connection (counting both ends, which are in this
+     *  process).  The first spectator's copy of the game is checked
+     *  against the final position. */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            fatal("Usage: java tablut.Broadcaster SPECTATORS MESSAGES"
+                  + " [SLOW]%n");
+        }
+        int n = Integer.parseInt(args[0]);
+        long count = Long.parseLong(args[1]);
+        int slow = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        try (Broadcaster broadcaster =
+             new Broadcaster(0, DEFAULT_RING_SIZE, new NullView())) {
+            long heap = usedHeap();
+            InetSocketAddress address =
+                new InetSocketAddress("localhost", broadcaster.port());
+            Audience audience = new Audience(address, n);
+            List<SocketChannel> idle = new ArrayList<>();
+            for (int i = 0; i < slow; i += 1) {
+                idle.add(SocketChannel.open(address));
+            }
+            while (broadcaster.spectators() < n + slow) {
+                Thread.sleep(1);
+            }
+            long perConnection = (usedHeap() - heap) / Math.max(1, n + slow);
+
+            Board board = new Board();
+            SplittableRandom random = new SplittableRandom(1);
+            int[] moves = new int[Board.MAX_MOVES];
+            long start = System.nanoTime();
+            while (broadcaster.messages() < count) {
+                long mark = broadcaster.written();
+                while (broadcaster.messages() < count
+                       && broadcaster.written() - mark
+                       < DEFAULT_RING_SIZE / 2) {
+                    int k = board.legalMoves(board.turn(), moves);
+                    if (board.winner() != null || k == 0) {
+                        board.init();
+                    } else {
+                        board.makeMove(moves[random.nextInt(k)]);
+                    }
+                    broadcaster.publish(board);
+                }
+                while (audience.behind(broadcaster) > 0) {
+                    Thread.sleep(1);
+                }
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            long sent = broadcaster.messages();
+            System.out.printf("%d messages to %d spectators in %.3f s:"
+                              + " %.0f/s sent, %.0f/s delivered%n",
+                              sent, n, secs, sent / secs,
+                              audience.received() / secs);
+            System.out.printf("%d of %d slow spectators dropped%n",
+                              broadcaster.dropped(), slow);
+            System.out.printf("heap per connection: %d bytes%n",
+                              perConnection);
+            System.out.printf("replica %s%n",
+                              audience.matches(board) ? "matches"
+                              : "DOES NOT MATCH");
+            for (SocketChannel channel : idle) {
+                channel.close();
+            }
+            audience.close();
+        } catch (IOException excp) {
+            fatal("Broadcast failed: %s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            fatal("Broadcast interrupted%n");
+        }
+        System.exit(0);
+    }
+
+    /** Return the heap in use, after collecting garbage. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Spectators for the benchmark in main, which read on a thread of
+     *  their own.  The first keeps a Replica of the game; the others only
+     *  count messages. */
+    private static final class Audience implements Closeable {
+
+        /** N spectators connected to the broadcaster at ADDRESS. */
+        Audience(InetSocketAddress address, int n) throws IOException {
+            _selector = Selector.open();
+            for (int i = 0; i < n; i += 1) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.register(_selector, SelectionKey.OP_READ,
+                                 new long[1]);
+                _channels.add(channel);
+            }
+            Thread reader = new Thread(this::read, "audience");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /** Return the number of bytes BROADCASTER has sent that some
+         *  spectator has yet to read. */
+        long behind(Broadcaster broadcaster) {
+            long written = broadcaster.written();
+            long result = 0;
+            synchronized (this) {
+                for (SocketChannel channel : _channels) {
+                    long[] read = (long[]) channel.keyFor(_selector)
+                        .attachment();
+                    result = Math.max(result, written - read[0]);
+                }
+            }
+            return result;
+        }
+
+        /** Return the number of messages received by all spectators. */
+        synchronized long received() {
+            return _received;
+        }
+
+        /** Return true iff the first spectator's copy of the game matches
+         *  BOARD. */
+        synchronized boolean matches(Board board) {
+            if (_replica.turn() != board.turn()
+                || _replica.winner() != board.winner()) {
+                return false;
+            }
+            for (int i = 0; i < board.geometry().numSquares(); i += 1) {
+                if (_replica.get(i) != board.get(i)) {
+                    return false;
+                }
+            }
+            return _consistent;
+        }
+
+        /** Read from the spectators' connections until closed. */
+        private void read() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            ByteBuffer first = ByteBuffer.allocate(1 << 16);
+            try {
+                while (_selector.isOpen()) {
+                    _selector.select();
+                    for (SelectionKey key : _selector.selectedKeys()) {
+                        SocketChannel channel = (SocketChannel) key.channel();
+                        boolean replica = channel == _channels.get(0);
+                        ByteBuffer into = replica ? first : buffer;
+                        if (!replica) {
+                            buffer.clear();
+                        }
+                        int k = channel.read(into);
+                        if (k < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        synchronized (this) {
+                            ((long[]) key.attachment())[0] += k;
+                            if (replica) {
+                                applyAll(first);
+                            }
+                        }
+                    }
+                    _selector.selectedKeys().clear();
+                }
+            } catch (IOException | RuntimeException excp) {
+                /* Stop reading. */
+            }
+        }
+
+        /** Apply the complete messages at the start of BUFFER, which has
+         *  just been filled, to the replica, and count them for all
+         *  spectators.  Leave BUFFER ready for filling again. */
+        private void applyAll(ByteBuffer buffer) {
+            buffer.flip();
+            while (buffer.remaining() >= 2
+                   && buffer.remaining()
+                   >= 2 + (buffer.getShort(buffer.position()) & 0xffff)) {
+                _consistent &= _replica.apply(buffer);
+                _received += _channels.size();
+            }
+            buffer.compact();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _selector.close();
+            for (SocketChannel channel : _channels) {
+                channel.close();
+            }
+        }
+
+        /** Selects the connections with input. */
+        private final Selector _selector;
+        /** The connections, the first being the replica's.  Each key's
+         *  attachment is a long[1] holding the number of bytes read. */
+        private final List<SocketChannel> _channels = new ArrayList<>();
+        /** The first spectator's copy of the game. */
+        private final Replica _replica = new Replica();
+        /** False if the replica has rejected a message. */
+        private boolean _consistent = true;
+        /** Number of messages received by all spectators, estimated from
+         *  those received by the first. */
+        private long _received;
+    }
+
+    /** Pieces by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+    /** The most pieces one move can capture. */
+    private static final int MAX_CAPTURES = 4;
+    /** The size of the largest message, in bytes. */
+    private static final int MAX_MESSAGE = 64;
+
+    /** Receives my updates after me. */
+    private final View _next;
+    /** Accepts spectators. */
+    private final ServerSocketChannel _server;
+    /** Selects the spectators that can be written to, and new ones. */
+    private final Selector _selector;
+    /** The connected spectators. */
+    private final List<Spectator> _spectators = new ArrayList<>();
+    /** Holds the last bytes of the stream: byte i of the stream is at
+     *  i % capacity, if it is among the last capacity bytes. */
+    private final ByteBuffer _ring;
+    /** A view of _ring, for reading and writing parts of it. */
+    private final ByteBuffer _window;
+    /** The message being encoded. */
+    private final ByteBuffer _message = ByteBuffer.allocate(MAX_MESSAGE);
+    /** A snapshot of the current position for new spectators, or null if
+     *  it must be encoded again. */
+    private ByteBuffer _snapshot;
+    /** Squares captured by the move being encoded. */
+    private final byte[] _captured = new byte[MAX_CAPTURES + 1];
+    /** Discarded input. */
+    private final ByteBuffer _input = ByteBuffer.allocate(256);
+    /** The variant of the position last sent. */
+    private Variant _variant;
+    /** The contents of the position last sent, or null before the first
+     *  message. */
+    private Piece[] _squares;
+    /** The side to move in the position last sent. */
+    private Piece _turn;
+    /** The winner in the position last sent. */
+    private Piece _winner;
+    /** The sequence number of the last message. */
+    private int _sequence;
+    /** Number of diffs since the last snapshot. */
+    private int _diffs;
+    /** Number of bytes in the stream. */
+    private long _written;
+    /** Number of messages in the stream. */
+    private long _messages;
+    /** Number of spectators dropped for falling behind. */
+    private long _dropped;
+    /** True iff messages have been added that the sending thread has not
+     *  yet seen. */
+    private boolean _pending;
+    /** True once I have been closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,237 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Broadcaster, with spectators connected over TCP keeping
+ *  Replicas of the game.
+ *  @author Jennifer Tran
+ */
+public class BroadcasterTest {
+
+    /** The variants tested. */
+    static final Variant[] VARIANTS = {
+        Variant.TABLUT, Variant.BRANDUBH, Variant.HNEFATAFL
+    };
+
+    /** Longest wait for the spectators to catch up, in milliseconds. */
+    static final int TIMEOUT = 30000;
+
+    /** Size of the broadcaster's ring buffer: enough for the whole test,
+     *  so that no spectator falls behind. */
+    static final int RING_SIZE = 1 << 20;
+
+    /** A spectator's replica passes through exactly the positions
+     *  published, as random games of each variant are played with moves
+     *  undone now and then, mostly by way of diffs.  A spectator that
+     *  joins late starts from a snapshot and ends with the same
+     *  position. */
+    @Test
+    public void replicasFollowGames() throws Exception {
+        List<String> expected = new ArrayList<>();
+        Board board = new Board();
+        try (Broadcaster broadcaster =
+                 new Broadcaster(0, RING_SIZE, new NullView());
+             Spectator early = new Spectator(broadcaster)) {
+            waitFor(() -> broadcaster.spectators() == 1);
+            SplittableRandom random = new SplittableRandom(12);
+            int[] moves = new int[Board.MAX_MOVES];
+            Spectator late = null;
+            try {
+                for (Variant variant : VARIANTS) {
+                    board = new Board(variant);
+                    publish(broadcaster, board, expected);
+                    for (int ply = 0; ply < 200 && board.winner() == null;
+                         ply += 1) {
+                        int k = board.legalMoves(board.turn(), moves);
+                        if (k == 0) {
+                            break;
+                        }
+                        if (random.nextInt(8) == 0 && board.moveCount() > 0) {
+                            board.undo();
+                        } else {
+                            board.makeMove(moves[random.nextInt(k)]);
+                        }
+                        publish(broadcaster, board, expected);
+                        publish(broadcaster, board, expected);
+                    }
+                    if (late == null) {
+                        late = new Spectator(broadcaster);
+                    }
+                }
+                String last = state(board);
+                waitFor(() -> early.states().size() == expected.size());
+                assertEquals(expected, early.states());
+                assertTrue(early.consistent());
+                assertTrue(early.diffs() > 3 * early.snapshots());
+                Spectator joined = late;
+                waitFor(() -> joined.last().equals(last));
+                assertTrue(joined.consistent());
+                assertEquals(0, broadcaster.dropped());
+            } finally {
+                if (late != null) {
+                    late.close();
+                }
+            }
+        }
+    }
+
+    /** Publish the position on BOARD to BROADCASTER, checking that a
+     *  message is sent iff the position has changed since the last
+     *  publication, in which case it is added to EXPECTED. */
+    private static void publish(Broadcaster broadcaster, Board board,
+                                List<String> expected) {
+        long before = broadcaster.messages();
+        broadcaster.publish(board);
+        String state = state(board);
+        boolean changed =
+            expected.isEmpty() || !expected.get(expected.size() - 1)
+            .equals(state);
+        assertEquals(changed ? before + 1 : before, broadcaster.messages());
+        if (changed) {
+            expected.add(state);
+        }
+    }
+
+    /** Return the side to move, the winner, and the contents of the
+     *  squares on BOARD, as text. */
+    private static String state(Board board) {
+        StringBuilder result = new StringBuilder();
+        result.append(board.turn()).append(' ').append(board.winner())
+            .append(' ');
+        for (int i = 0; i < board.geometry().numSquares(); i += 1) {
+            result.append(board.get(i).toString().charAt(0));
+        }
+        return result.toString();
+    }
+
+    /** Wait until CONDITION holds, failing after TIMEOUT milliseconds. */
+    private static void waitFor(Condition condition)
+        throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.holds()) {
+            assertTrue("timed out", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    /** A condition to wait for. */
+    interface Condition {
+        /** Return true iff I hold. */
+        boolean holds();
+    }
+
+    /** A spectator that reads messages on a thread of its own and keeps a
+     *  Replica of the game, recording its position after each
+     *  message. */
+    private static final class Spectator implements Closeable {
+
+        /** A spectator of BROADCASTER. */
+        Spectator(Broadcaster broadcaster) throws IOException {
+            _channel = SocketChannel.open(
+                new InetSocketAddress("localhost", broadcaster.port()));
+            Thread reader = new Thread(this::read, "spectator");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /** Return the positions of my replica after each message, as
+         *  text (see BroadcasterTest.state). */
+        synchronized List<String> states() {
+            return new ArrayList<>(_states);
+        }
+
+        /** Return the position of my replica after the last message, or
+         *  "" if there has been none. */
+        synchronized String last() {
+            return _states.isEmpty() ? "" : _states.get(_states.size() - 1);
+        }
+
+        /** Return true iff my replica has made sense of every message,
+         *  whose sequence numbers increased by one each time. */
+        synchronized boolean consistent() {
+            return _consistent;
+        }
+
+        /** Return the number of diffs received. */
+        synchronized int diffs() {
+            return _diffs;
+        }
+
+        /** Return the number of snapshots received. */
+        synchronized int snapshots() {
+            return _snapshots;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** Read and apply messages until the connection closes. */
+        private void read() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            try {
+                while (_channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= 2
+                           && buffer.remaining()
+                           >= 2 + (buffer.getShort(buffer.position())
+                                   & 0xffff)) {
+                        apply(buffer);
+                    }
+                    buffer.compact();
+                }
+            } catch (IOException excp) {
+                /* Stop reading. */
+            }
+        }
+
+        /** Apply the message at the start of BUFFER to my replica. */
+        private synchronized void apply(ByteBuffer buffer) {
+            int start = buffer.position();
+            if (buffer.get(start + 2) == Broadcaster.DIFF) {
+                _diffs += 1;
+            } else {
+                _snapshots += 1;
+                _size = buffer.get(start + 8);
+            }
+            int sequence = buffer.getInt(start + 3);
+            _consistent &= _replica.apply(buffer)
+                && (_states.isEmpty() || sequence == _sequence + 1);
+            _sequence = sequence;
+            StringBuilder state = new StringBuilder();
+            state.append(_replica.turn()).append(' ')
+                .append(_replica.winner()).append(' ');
+            for (int i = 0; _consistent && i < _size * _size; i += 1) {
+                state.append(_replica.get(i).toString().charAt(0));
+            }
+            _states.add(state.toString());
+        }
+
+        /** My connection to the broadcaster. */
+        private final SocketChannel _channel;
+        /** My copy of the game. */
+        private final Broadcaster.Replica _replica = new Broadcaster.Replica();
+        /** The positions of _replica after each message. */
+        private final List<String> _states = new ArrayList<>();
+        /** False once _replica has rejected a message, or a sequence
+         *  number has been skipped. */
+        private boolean _consistent = true;
+        /** The sequence number of the last message. */
+        private int _sequence;
+        /** Numbers of diffs and snapshots received. */
+        private int _diffs, _snapshots;
+        /** The size of the board in the last snapshot. */
+        private int _size;
+    }
+}
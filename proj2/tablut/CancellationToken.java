@@ -0,0 +1,44 @@
+package tablut;
+
+/** A request to stop a computation early, either explicitly (by cancel) or
+ *  when a deadline passes.  The computation polls isCancelled from time
+ *  to time and winds up when it returns true.  Tokens may be cancelled
+ *  from any thread.
+ *  @author Jennifer Tran
+ */
+final class CancellationToken {
+
+    /** A token that is cancelled only by cancel. */
+    CancellationToken() {
+        this(0);
+    }
+
+    /** A token that is cancelled by cancel, or automatically MILLIS
+     *  milliseconds from now if MILLIS > 0. */
+    CancellationToken(long millis) {
+        _hasDeadline = millis > 0;
+        _deadline = _hasDeadline ? System.nanoTime() + millis * 1_000_000 : 0;
+    }
+
+    /** Request that the computation using this token stop. */
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /** Return true iff this token has been cancelled or its deadline has
+     *  passed. */
+    boolean isCancelled() {
+        if (!_cancelled && _hasDeadline
+            && System.nanoTime() - _deadline >= 0) {
+            _cancelled = true;
+        }
+        return _cancelled;
+    }
+
+    /** True iff I have been cancelled (or found to be past my deadline). */
+    private volatile boolean _cancelled;
+    /** True iff I have a deadline. */
+    private final boolean _hasDeadline;
+    /** My deadline, as a value of System.nanoTime(). */
+    private final long _deadline;
+}
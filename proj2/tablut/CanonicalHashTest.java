@@ -0,0 +1,145 @@
+package tablut;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static tablut.Geometry.NUM_SYMMETRIES;
+
+/** Tests of the symmetries of boards and of canonical position hashes.
+ *  @author Jennifer Tran
+ */
+public class CanonicalHashTest {
+
+    /** The variants tested. */
+    static final Variant[] VARIANTS = {
+        Variant.TABLUT, Variant.BRANDUBH, Variant.HNEFATAFL
+    };
+
+    /** Number of random games of each variant played. */
+    static final int GAMES = 100;
+
+    /** The symmetries of each board size are eight distinct permutations
+     *  of its squares, each undone by its inverse, that map the center to
+     *  itself and corners to corners. */
+    @Test
+    public void symmetriesArePermutations() {
+        for (Variant variant : VARIANTS) {
+            Geometry geom = variant.geometry();
+            int n = geom.numSquares();
+            Set<String> images = new HashSet<>();
+            for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                int[] sym = geom.symmetry()[s];
+                int[] inv = geom.symmetry()[Geometry.inverse(s)];
+                boolean[] hit = new boolean[n];
+                StringBuilder image = new StringBuilder();
+                for (int i = 0; i < n; i += 1) {
+                    assertFalse(hit[sym[i]]);
+                    hit[sym[i]] = true;
+                    assertEquals(i, inv[sym[i]]);
+                    assertEquals(geom.corner()[i], geom.corner()[sym[i]]);
+                    image.append(sym[i]).append(' ');
+                }
+                assertEquals(geom.center(), sym[geom.center()]);
+                images.add(image.toString());
+            }
+            assertEquals(NUM_SYMMETRIES, images.size());
+            for (int i = 0; i < n; i += 1) {
+                assertEquals(i, geom.symmetry()[0][i]);
+            }
+        }
+    }
+
+    /** In random games, a board playing the image of each move under a
+     *  symmetry reaches the images of the positions of the original:
+     *  its hash is the original's symmetric hash, the two have the same
+     *  canonical hash, and the canonical symmetry of each gives its
+     *  canonical hash.  This holds after undoing moves, and for positions
+     *  set from scratch. */
+    @Test
+    public void imagesShareCanonicalHash() {
+        SplittableRandom random = new SplittableRandom(7);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Variant variant : VARIANTS) {
+            Geometry geom = variant.geometry();
+            for (int g = 0; g < GAMES; g += 1) {
+                int s = random.nextInt(NUM_SYMMETRIES);
+                Board board = new Board(variant), image = new Board(variant);
+                for (int ply = 0; ply < 150 && board.winner() == null;
+                     ply += 1) {
+                    int k = board.legalMoves(board.turn(), moves);
+                    if (k == 0) {
+                        break;
+                    }
+                    int move = moves[random.nextInt(k)];
+                    int mapped = geom.transformMove(move, s);
+                    assertTrue(image.isLegal(Move.from(mapped),
+                                             Move.to(mapped)));
+                    board.makeMove(move);
+                    image.makeMove(mapped);
+                    if (random.nextInt(4) == 0) {
+                        board.undo();
+                        image.undo();
+                    }
+                    assertImages(board, image, s);
+                }
+                Board fresh = new Board(variant);
+                fresh.setPosition(board.encodedBoard());
+                assertImages(board, fresh, 0);
+            }
+        }
+    }
+
+    /** A best move stored in the canonical orientation of a position, as
+     *  the AI stores it, is legal when mapped back to any image of the
+     *  position. */
+    @Test
+    public void canonicalMovesMapBack() {
+        SplittableRandom random = new SplittableRandom(8);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Variant variant : VARIANTS) {
+            Geometry geom = variant.geometry();
+            for (int g = 0; g < GAMES / 10; g += 1) {
+                Board board = new Board(variant);
+                Board[] images = new Board[NUM_SYMMETRIES];
+                for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                    images[s] = new Board(variant);
+                }
+                for (int ply = 0; ply < 200 && board.winner() == null;
+                     ply += 1) {
+                    int k = board.legalMoves(board.turn(), moves);
+                    if (k == 0) {
+                        break;
+                    }
+                    int move = moves[random.nextInt(k)];
+                    int stored =
+                        geom.transformMove(move, board.canonicalSymmetry());
+                    for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                        int back = Geometry.inverse(
+                            images[s].canonicalSymmetry());
+                        int mapped = geom.transformMove(stored, back);
+                        assertTrue(images[s].isLegal(Move.from(mapped),
+                                                     Move.to(mapped)));
+                    }
+                    board.makeMove(move);
+                    for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                        images[s].makeMove(geom.transformMove(move, s));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Assert that IMAGE holds the image of the position on BOARD under
+     *  symmetry S. */
+    private static void assertImages(Board board, Board image, int s) {
+        assertEquals(board.symmetricHash(s), image.hash());
+        assertEquals(board.canonicalHash(), image.canonicalHash());
+        assertEquals(board.canonicalHash(),
+                     board.symmetricHash(board.canonicalSymmetry()));
+        assertEquals(image.canonicalHash(),
+                     image.symmetricHash(image.canonicalSymmetry()));
+    }
+}
@@ -1,14 +1,20 @@
 package tablut;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 
+import tablut.Events.CommandEvent;
+import tablut.Events.MoveEvent;
+import tablut.Events.PlayerMoveEvent;
+
 import static tablut.Utils.*;
-import static tablut.Square.*;
 import static tablut.Piece.*;
 
 /** The input/output and GUI controller for play of Tablut.
@@ -25,7 +31,7 @@ final class Controller {
      *  non-null, copies all commands to it. If STRICT, exits the
      *  program with non-zero code on receiving an erroneous move from a
      *  player. */
-    Controller(View view, PrintStream logFile, Reporter reporter,
+    Controller(View view, AsyncLogWriter logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
         _view = view;
@@ -39,6 +45,15 @@ final class Controller {
         _black = _manualPlayerTemplate.create(BLACK, this);
         _reporter = reporter;
         _strict = strict;
+        for (Command command : _commands) {
+            _dispatch.put(command._name, command);
+        }
+    }
+
+    /** Take my input from SCRIPT rather than the standard input, without
+     *  prompting, for fast replay of long command scripts. */
+    void batch(ScriptReader script) {
+        _script = script;
     }
 
     /** Play Tablut. */
@@ -51,12 +66,12 @@ final class Controller {
             String command;
             if (_winner == null) {
                 if (_board.turn() == WHITE) {
-                    command = _white.myMove();
+                    command = myMove(_white);
                 } else {
-                    command = _black.myMove();
+                    command = myMove(_black);
                 }
             } else {
-                command = _nonPlayer.myMove();
+                command = myMove(_nonPlayer);
                 if (command == null) {
                     command = "quit";
                 }
@@ -66,12 +81,55 @@ final class Controller {
             } catch (IllegalArgumentException excp) {
                 reportError("Error: %s%n", excp.getMessage());
                 if (_strict) {
+                    closeLog();
+                    System.out.flush();
                     System.exit(1);
                 }
             }
         }
+        closeLog();
+        System.out.flush();
+    }
+
+    /** Return PLAYER's next move or command, recording the time it took
+     *  as a PlayerMoveEvent. */
+    private String myMove(Player player) {
+        PlayerMoveEvent event = new PlayerMoveEvent();
+        event.begin();
+        String result = player.myMove();
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = player.getClass().getSimpleName();
+            event.side = _board.turn().toName();
+            event.result = result;
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Write out and close the log file, if any, reporting any failure to
+     *  write it.  Does nothing if it has already been closed. */
+    void closeLog() {
         if (_logFile != null) {
-            _logFile.close();
+            try {
+                _logFile.close();
+            } catch (IOException excp) {
+                reportError("Could not close log: %s", excp.getMessage());
+            }
+            _logFile = null;
+        }
+    }
+
+    /** Append TEXT to the log file, if any.  If the log can no longer be
+     *  written, close it (which reports the failure) and log nothing
+     *  further, rather than failing every command from here on. */
+    private void log(String text) {
+        if (_logFile != null) {
+            try {
+                _logFile.printf("%s", text);
+            } catch (IllegalArgumentException excp) {
+                closeLog();
+            }
         }
     }
 
@@ -98,8 +156,18 @@ final class Controller {
 
     /** Return the next line of input, or null if there is no more. First
      *  prompts for the line.  Trims the returned line (if any) of all
-     *  leading and trailing whitespace. First issues a prompt iff PROMPT. */
+     *  leading and trailing whitespace. First issues a prompt iff PROMPT,
+     *  unless reading a batch script. */
     String readLine(boolean prompt) {
+        if (_script != null) {
+            try {
+                String line = _script.readLine();
+                return line == null ? null : line.trim();
+            } catch (IOException excp) {
+                reportError("Could not read script: %s", excp.getMessage());
+                return null;
+            }
+        }
         if (prompt) {
             System.out.print("> ");
             System.out.flush();
@@ -121,6 +189,33 @@ final class Controller {
         return _black.isManual();
     }
 
+    /** Return a token for a new search, which is cancelled after the
+     *  current time limit per move (if any) and by cancelSearch. */
+    CancellationToken newSearch() {
+        CancellationToken token = new CancellationToken(_moveTime);
+        _search = token;
+        return token;
+    }
+
+    /** Return the transposition table shared by my AIs. */
+    TranspositionTable table() {
+        if (_table == null) {
+            _table = new TranspositionTable(TABLE_SIZE);
+        }
+        return _table;
+    }
+
+    /** Cancel the current search, if any, so that it returns its best
+     *  move so far as soon as possible.  Commands are read on the thread
+     *  that searches, so none of them can interrupt a search; this is for
+     *  use by other threads, such as Main's shutdown hook. */
+    void cancelSearch() {
+        CancellationToken token = _search;
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
     /** Report error by calling reportError(FORMAT, ARGS) on my reporter. */
     void reportError(String format, Object... args) {
         _reporter.reportError(format, args);
@@ -136,116 +231,237 @@ final class Controller {
         _reporter.reportMove(move);
     }
 
+    /** Report the move with code MOVE (see Move.code) on the current
+     *  board.  Moves on boards larger than the standard one have no Move
+     *  object, and are reported as notes. */
+    void reportMove(int move) {
+        if (_board.size() <= Board.SIZE) {
+            reportMove(_board.move(move));
+        } else {
+            reportNote("%s", _board.geometry().moveName(move));
+        }
+    }
+
     /** Print a comment in the log.  The arguments FORMAT and ARGS are
      *  as for String.format. */
     void logComment(String format, Object... args) {
         if (_logFile != null) {
-            _logFile.printf("# " + format + "%n", args);
-            _logFile.flush();
+            log(String.format("# " + format + "%n", args));
         }
     }
 
-    /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
-     *  <processor> is a functional object whose .accept method takes a
-     *  successfully matched Matcher and performs some operation. */
+    /** A Command is a named textual command together with the number of
+     *  arguments it takes and a processor, a functional object whose
+     *  .accept method takes the words of an instance of the command (its
+     *  name first) and performs it.  No two commands have the same
+     *  name. */
     private static class Command {
-        /** A new Command that matches PATN (a regular expression) and uses
-         *  PROCESSOR to process commands that match the pattern. */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
+        /** A new Command named NAME, taking from MINARGS to MAXARGS
+         *  arguments, that uses PROCESSOR to process its instances. */
+        Command(String name, int minArgs, int maxArgs,
+                Consumer<String[]> processor) {
+            _name = name;
+            _minArgs = minArgs;
+            _maxArgs = maxArgs;
             _processor = processor;
         }
 
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
+        /** Return true iff WORDS has the right number of words for an
+         *  instance of me. */
+        boolean accepts(String[] words) {
+            return words.length - 1 >= _minArgs
+                && words.length - 1 <= _maxArgs;
+        }
+
+        /** The name of my command. */
+        protected final String _name;
+        /** The least and greatest numbers of arguments I take. */
+        private final int _minArgs, _maxArgs;
         /** The function object that implements my command. */
-        protected final Consumer<Matcher> _processor;
+        protected final Consumer<String[]> _processor;
     }
 
     /** A list of Commands describing the valid textual commands to the
      *  Tablut program and the methods to process them. */
     private Command[] _commands = {
-        new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
-        new Command("seed\\s+(\\d+)$", this::doSeed),
-        new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
-        new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
+        new Command("quit", 0, 0, this::doQuit),
+        new Command("new", 0, 0, this::doNew),
+        new Command("seed", 1, 1, this::doSeed),
+        new Command("dump", 0, 0, this::doDump),
+        new Command("undo", 0, 0, this::doUndo),
+        new Command("manual", 1, 1, this::doManual),
+        new Command("auto", 1, 1, this::doAuto),
+        new Command("limit", 1, 1, this::doLimit),
+        new Command("toggle", 1, 1, this::doToggle),
+        new Command("variant", 1, 1, this::doVariant),
+        new Command("solve", 0, 1, this::doSolve),
+        new Command("analyze", 0, 1, this::doAnalyze),
+        new Command("movetime", 1, 1, this::doMoveTime),
+        new Command("table", 2, 2, this::doTable),
+        new Command("network", 1, 1, this::doNetwork),
+        new Command("workers", 1, 1, this::doWorkers),
+        new Command("search", 1, 1, this::doSearch),
+        new Command("stats", 0, 1, this::doStats)
     };
 
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    /** The Commands, by name. */
+    private final Map<String, Command> _dispatch = new HashMap<>();
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
+     *  so, raising an IllegalArgumentException otherwise.  Records the
+     *  time taken in the latency histogram for the kind of command, and
+     *  as a CommandEvent. */
     private void executeCommand(String cmnd) {
-        if (_logFile != null) {
-            _logFile.println(cmnd);
-            _logFile.flush();
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        long start = System.nanoTime();
+        _commandKind = "invalid";
+        try {
+            runCommand(cmnd);
+        } finally {
+            long time = System.nanoTime() - start;
+            event.end();
+            if (_commandKind != null) {
+                latency(_commandKind).record(time);
+                if (event.shouldCommit()) {
+                    event.command = _commandKind;
+                    event.text = cmnd;
+                    event.commit();
+                }
+            }
         }
+    }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+    /** Execute CMND as for executeCommand, setting _commandKind to the
+     *  kind of command ("move" for moves, null for blank lines). */
+    private void runCommand(String cmnd) {
+        log(cmnd + System.lineSeparator());
+
+        int comment = cmnd.indexOf('#');
+        if (comment >= 0) {
+            cmnd = cmnd.substring(0, comment);
+        }
+        cmnd = cmnd.trim().toLowerCase();
 
         if (cmnd.isEmpty()) {
+            _commandKind = null;
             return;
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
-                return;
+        int move = _board.geometry().parseMove(cmnd);
+        if (move >= 0) {
+            _commandKind = "move";
+            doMove(move, cmnd);
+            return;
+        }
+        String[] words = words(cmnd);
+        Command command = _dispatch.get(words[0]);
+        if (command == null || !command.accepts(words)) {
+            throw badCommand(words);
+        }
+        _commandKind = command._name;
+        command._processor.accept(words);
+    }
+
+    /** Return the words of LINE, which is not blank. */
+    private static String[] words(String line) {
+        int n = 0;
+        for (int k = wordStart(line, 0); k < line.length();
+             k = wordStart(line, wordEnd(line, k))) {
+            n += 1;
+        }
+        String[] result = new String[n];
+        n = 0;
+        for (int k = wordStart(line, 0); k < line.length();
+             k = wordStart(line, wordEnd(line, k))) {
+            result[n] = line.substring(k, wordEnd(line, k));
+            n += 1;
+        }
+        return result;
+    }
+
+    /** Return an exception reporting that WORDS is not a valid command,
+     *  which counts as an invalid one in the latency statistics. */
+    private IllegalArgumentException badCommand(String[] words) {
+        _commandKind = "invalid";
+        return error("Bad command: %s", String.join(" ", words));
+    }
+
+    /** Return the value of WORDS[K], which must be a numeral no greater
+     *  than MAX.  WORDS is a bad command if WORDS[K] is not a numeral. */
+    private long number(String[] words, int k, long max) {
+        if (!isNumeral(words[k])) {
+            throw badCommand(words);
+        }
+        try {
+            long value = Long.parseLong(words[k]);
+            if (value <= max) {
+                return value;
             }
+        } catch (NumberFormatException excp) {
+            /* Too large for a long. */
+        }
+        throw error("number too large");
+    }
+
+    /** Return the color named by WORDS[1], which must be "white" or
+     *  "black" (else WORDS is a bad command). */
+    private Piece color(String[] words) {
+        switch (words[1]) {
+        case "white":
+            return WHITE;
+        case "black":
+            return BLACK;
+        default:
+            throw badCommand(words);
+        }
+    }
+
+    /** Return the latency histogram for commands of kind KIND, creating
+     *  it if needed. */
+    private LatencyHistogram latency(String kind) {
+        LatencyHistogram result = _latencies.get(kind);
+        if (result == null) {
+            result = new LatencyHistogram();
+            _latencies.put(kind, result);
         }
-        throw error("Bad command: %s", cmnd);
+        return result;
     }
 
     /** Command "new". */
-    private void doNew(Matcher unused) {
+    private void doNew(String[] unused) {
         _board.init();
         _winner = null;
     }
 
-    /** Command "manual <color>", where <color> is COLOR.group(1). */
-    private void doManual(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
+    /** Command "manual <color>", whose words are WORDS. */
+    private void doManual(String[] words) {
+        if (color(words) == BLACK) {
             _black = _manualPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
+        } else {
             _white = _manualPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
         }
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
-    private void doAuto(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
+    /** Command "auto <color>", whose words are WORDS. */
+    private void doAuto(String[] words) {
+        if (color(words) == BLACK) {
             _black = _autoPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
+        } else {
             _white = _autoPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
         }
         _view.update(this);
     }
 
-    /** Command "toggle". The first group of MAT is a square designation.
+    /** Command "toggle". WORDS[1] is a square designation.
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
+    private void doToggle(String[] words) {
+        String name = words[1];
+        int sq = _board.geometry().parseSquare(name, 0, name.length());
+        if (sq < 0) {
+            throw error("Bad square: %s", name);
+        }
         Piece piece;
         switch (_board.get(sq)) {
         case EMPTY: piece = WHITE; break;
@@ -258,32 +474,219 @@ final class Controller {
         _board.clearUndo();
     }
 
-    /** Command "quit". */
-    private void doQuit(Matcher unused) {
-        _playing = false;
+    /** Command "variant NAME", where NAME is WORDS[1].  Starts a new
+     *  game of that variant. */
+    private void doVariant(String[] words) {
+        Variant variant = Variant.named(words[1]);
+        if (variant == null) {
+            throw error("Unknown variant: %s", words[1]);
+        }
+        _board.setVariant(variant);
+        _winner = null;
+        _view.update(this);
     }
 
-    /** Command "seed N" where N is the first group of MAT. */
-    private void doSeed(Matcher mat) {
+    /** Command "solve [N]", where N, if present, is WORDS[1].  Reports
+     *  whether the side to move can force a win within N plies
+     *  (SOLVE_PLIES by default). */
+    private void doSolve(String[] words) {
+        int plies = SOLVE_PLIES;
+        if (words.length > 1) {
+            plies = (int) number(words, 1, Integer.MAX_VALUE);
+        }
+        if (_solver == null) {
+            _solver = new Solver(SOLVER_TABLE_SIZE);
+        }
+        Piece side = _board.turn();
+        switch (_solver.solve(_board, plies, SOLVE_NODES)) {
+        case Solver.PROVEN:
+            reportNote("%s wins within %d plies, starting with %s "
+                       + "(%d nodes).", side.toName(), plies,
+                       _board.geometry().moveName(_solver.bestMove()),
+                       _solver.nodes());
+            break;
+        case Solver.DISPROVEN:
+            reportNote("%s has no forced win within %d plies (%d nodes).",
+                       side.toName(), plies, _solver.nodes());
+            break;
+        default:
+            reportNote("No result within %d nodes.", _solver.nodes());
+            break;
+        }
+    }
+
+    /** Command "analyze [K]", where K, if present, is WORDS[1].
+     *  Reports the best K moves (ANALYZE_LINES by default) for the side
+     *  to move, with their scores and principal variations. */
+    private void doAnalyze(String[] words) {
+        int count = ANALYZE_LINES;
+        if (words.length > 1) {
+            count = (int) number(words, 1, Integer.MAX_VALUE);
+        }
+        if (_analyzer == null) {
+            _analyzer = new AI(null, this);
+        }
+        int k = 1;
+        for (AI.Line line
+                 : _analyzer.analyze(_board, count, newSearch())) {
+            reportNote("%d. (%s) %s", k, line.scoreText(),
+                       line.moveText(_board.geometry()));
+            k += 1;
+        }
+    }
+
+    /** Command "movetime N", where N is WORDS[1]: limits the AI's
+     *  searches to N milliseconds per move (none if N is 0). */
+    private void doMoveTime(String[] words) {
+        _moveTime = number(words, 1, Long.MAX_VALUE);
+    }
+
+    /** Command "table save FILE" or "table load FILE", whose words are
+     *  WORDS.  Saves the transposition table shared by my AIs to FILE, or
+     *  replaces it with FILE's contents. */
+    private void doTable(String[] words) {
+        if (!words[1].equals("save") && !words[1].equals("load")) {
+            throw badCommand(words);
+        }
+        Path file = Paths.get(words[2]);
         try {
-            setSeed(Long.parseLong(mat.group(1)));
-        } catch (NumberFormatException excp) {
-            throw error("number too large");
+            if (words[1].equals("save")) {
+                table().save(file);
+            } else {
+                table().load(file);
+            }
+        } catch (IOException excp) {
+            throw error("could not %s table: %s", words[1],
+                        excp.getMessage());
         }
     }
 
-    /** Command "limit N" where N is the first captured group of MAT. */
-    private void doLimit(Matcher mat) {
+    /** Command "network FILE", where FILE is WORDS[1]: from now on, the
+     *  AIs evaluate positions with the neural network whose weights are in
+     *  FILE (see Network), or with the classical evaluation if FILE is
+     *  "none". */
+    private void doNetwork(String[] words) {
+        if (words[1].equals("none")) {
+            _board.setNetwork(null);
+            return;
+        }
         try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
-        } catch (NumberFormatException excp) {
-            throw error("number too large");
+            _board.setNetwork(Network.load(Paths.get(words[1])));
+        } catch (IOException excp) {
+            throw error("could not load network: %s", excp.getMessage());
         }
     }
 
-    /** Execute a move command matched in MAT. */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+    /** Command "workers N" or "workers stop", where WORDS[1] is N or
+     *  "stop": start N local search workers (starting the search
+     *  coordinator, if needed), or stop the coordinator and all its
+     *  workers.  Other workers may connect to the coordinator's port. */
+    private void doWorkers(String[] words) {
+        int count = 0;
+        if (!words[1].equals("stop")) {
+            count = (int) number(words, 1, Integer.MAX_VALUE);
+        }
+        try {
+            if (words[1].equals("stop")) {
+                if (_coordinator != null) {
+                    _coordinator.close();
+                    _coordinator = null;
+                }
+                return;
+            }
+            if (_coordinator == null) {
+                _coordinator = new SearchCoordinator(0);
+                reportNote("Search coordinator on port %d.",
+                           _coordinator.port());
+            }
+            _coordinator.startLocalWorkers(count);
+            reportNote("%d workers.", _coordinator.workers());
+        } catch (IOException excp) {
+            throw error("could not start workers: %s", excp.getMessage());
+        }
+    }
+
+    /** Command "search D", where D is WORDS[1]: reports the best move in
+     *  the current position as found by a search of D plies distributed
+     *  among the search workers (see "workers"). */
+    private void doSearch(String[] words) {
+        long depth = number(words, 1, Long.MAX_VALUE);
+        if (_coordinator == null) {
+            throw error("no search workers (use \"workers N\")");
+        }
+        if (depth < 1 || depth > MAX_SEARCH_DEPTH) {
+            throw error("search depth must be between 1 and %d",
+                        MAX_SEARCH_DEPTH);
+        }
+        CancellationToken token = newSearch();
+        AI.Line line = _coordinator.search(_board, (int) depth, token);
+        if (line == null) {
+            reportNote("No moves searched.");
+        } else {
+            reportNote("(%s) %s%s, %d nodes", line.scoreText(),
+                       line.moveText(_board.geometry()),
+                       token.isCancelled() ? " (incomplete)" : "",
+                       _coordinator.nodes());
+        }
+    }
+
+    /** Command "stats" or "stats reset", whose words are WORDS: reports
+     *  the latencies of the commands executed so far, by kind of command,
+     *  or discards them. */
+    private void doStats(String[] words) {
+        if (words.length > 1) {
+            if (!words[1].equals("reset")) {
+                throw badCommand(words);
+            }
+            _latencies.clear();
+            return;
+        }
+        for (Map.Entry<String, LatencyHistogram> entry
+                 : _latencies.entrySet()) {
+            reportNote("%-8s %s", entry.getKey(),
+                       entry.getValue().summary());
+        }
+    }
+
+    /** Command "quit". */
+    private void doQuit(String[] unused) {
+        _playing = false;
+        if (_coordinator != null) {
+            try {
+                _coordinator.close();
+            } catch (IOException excp) {
+                /* Ignore: the workers exit when their connections do. */
+            }
+            _coordinator = null;
+        }
+    }
+
+    /** Command "seed N" where N is WORDS[1]. */
+    private void doSeed(String[] words) {
+        setSeed(number(words, 1, Long.MAX_VALUE));
+    }
+
+    /** Command "limit N" where N is WORDS[1]. */
+    private void doLimit(String[] words) {
+        _board.setMoveLimit((int) number(words, 1, Integer.MAX_VALUE));
+    }
+
+    /** Execute the move with code MOVE (see Move.code), whose text is
+     *  CMND. */
+    private void doMove(int move, String cmnd) {
+        if (Move.from(move) == Move.to(move)) {
+            throw error("Bad move: %s", cmnd);
+        }
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        Piece side = _board.turn();
+        _board.makeMove(move);
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = cmnd;
+            event.side = side.toName();
+            event.commit();
+        }
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
@@ -294,24 +697,70 @@ final class Controller {
     }
 
     /** Dump the contents of the board on standard output. */
-    private void doDump(Matcher unused) {
+    private void doDump(String[] unused) {
         System.out.printf("===%n%s===%n", _board);
     }
 
     /** Undo back to before my last move, if there was one (otherwise does
      *  nothing). */
-    private void doUndo(Matcher unused) {
+    private void doUndo(String[] unused) {
         if (_board.moveCount() > 1) {
-            _board.undo();
-            _board.undo();
+            undoMove();
+            undoMove();
             _winner = null;
             _view.update(this);
         }
     }
 
+    /** Undo the last move on the board, recording the time it took as a
+     *  MoveEvent. */
+    private void undoMove() {
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        _board.undo();
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = "undo";
+            event.side = _board.turn().toName();
+            event.commit();
+        }
+    }
+
     /** The board. */
     private Board _board = new Board();
 
+    /** Largest depth of the search command. */
+    private static final int MAX_SEARCH_DEPTH = 12;
+    /** Coordinator of distributed searches, or null if not started. */
+    private SearchCoordinator _coordinator;
+
+    /** Latency histograms of the commands executed, by kind of command. */
+    private final Map<String, LatencyHistogram> _latencies = new TreeMap<>();
+    /** The kind of the command being executed (see runCommand). */
+    private String _commandKind;
+
+    /** Default number of plies searched by the solve command. */
+    private static final int SOLVE_PLIES = 5;
+    /** Node limit of the solve command. */
+    private static final long SOLVE_NODES = 5_000_000;
+    /** Number of entries in the solver's node table, as a power of 2. */
+    private static final int SOLVER_TABLE_SIZE = 20;
+    /** Solver for the solve command, created on first use. */
+    private Solver _solver;
+    /** Default number of lines reported by the analyze command. */
+    private static final int ANALYZE_LINES = 3;
+    /** Searcher for the analyze command, created on first use. */
+    private AI _analyzer;
+    /** Time limit per move for searches, in milliseconds (0 if none). */
+    private long _moveTime;
+    /** Number of entries in the shared transposition table, as a power
+     *  of 2. */
+    private static final int TABLE_SIZE = 18;
+    /** Transposition table shared by my AIs, created on first use. */
+    private TranspositionTable _table;
+    /** Token of the current (or last) search. */
+    private volatile CancellationToken _search;
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -324,12 +773,15 @@ final class Controller {
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
-    /** Log file, or null if absent. */
-    private PrintStream _logFile;
+    /** Log file, or null if absent or closed. */
+    private AsyncLogWriter _logFile;
 
     /** Input source. */
     private Scanner _input;
 
+    /** Script read instead of _input in batch mode, or null. */
+    private ScriptReader _script;
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
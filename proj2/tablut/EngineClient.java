@@ -0,0 +1,285 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static tablut.Utils.*;
+
+/** A connection to an engine: a process that speaks the protocol of
+ *  EngineServer on its standard input and output.  Requests are sent as
+ *  soon as they are made, without waiting for the answers to earlier
+ *  ones, so any number may be outstanding at once.  A thread of my own
+ *  reads the answers and matches them with the outstanding requests in
+ *  order, completing each request's future.  If the engine exits, the
+ *  futures of the requests it has not answered fail with an IOException.
+ *  @author Jennifer Tran
+ */
+class EngineClient implements Closeable {
+
+    /** A client of a new engine process that runs COMMAND (a program and
+     *  its arguments).  The engine's error output goes to mine. */
+    EngineClient(List<String> command) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        _process = builder.start();
+        _in = new BufferedReader(
+            new InputStreamReader(_process.getInputStream(),
+                                  StandardCharsets.UTF_8));
+        _out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(_process.getOutputStream(),
+                                   StandardCharsets.UTF_8)));
+        Thread reader = new Thread(this::readAnswers, "engine reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Return the command that runs an EngineServer in a new process, with
+     *  the same Java and class path as this program. */
+    static List<String> localCommand() {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        return Arrays.asList(java, "-cp",
+                             System.getProperty("java.class.path"),
+                             "tablut.EngineServer");
+    }
+
+    /** Ask my engine for a move for the side to move on BOARD, searching
+     *  up to DEPTH plies and stopping after about NODES nodes or MILLIS
+     *  milliseconds (each limit applying only if positive).  The result
+     *  yields the code of the move, or -1 if there is none.  If PROGRESS
+     *  is not null, it is told of each iteration of the search, on my
+     *  reader thread.  Only BOARD's position is sent, so repetitions of
+     *  earlier positions are not seen. */
+    CompletableFuture<Integer> search(Board board, int depth, long nodes,
+                                      long millis, AI.Progress progress) {
+        StringBuilder go = new StringBuilder("go");
+        if (depth > 0) {
+            go.append(" depth ").append(depth);
+        }
+        if (nodes > 0) {
+            go.append(" nodes ").append(nodes);
+        }
+        if (millis > 0) {
+            go.append(" movetime ").append(millis);
+        }
+        Request request = new Request(board.geometry(), progress);
+        synchronized (this) {
+            if (_closed) {
+                request.result.completeExceptionally(
+                    new IOException("engine has exited"));
+                return request.result;
+            }
+            _pending.add(request);
+            _out.printf("position %s %s%n%s%n", board.variant().name(),
+                        board.encodedBoard(), go);
+            _out.flush();
+        }
+        return request.result;
+    }
+
+    /** Return a future that yields 0 once my engine has answered all my
+     *  requests so far. */
+    CompletableFuture<Integer> ready() {
+        Request request = new Request(null, null);
+        synchronized (this) {
+            if (_closed) {
+                request.result.completeExceptionally(
+                    new IOException("engine has exited"));
+                return request.result;
+            }
+            _pending.add(request);
+            _out.println("isready");
+            _out.flush();
+        }
+        return request.result;
+    }
+
+    /** Ask my engine to finish all my searches so far as soon as
+     *  possible.  Each still yields the best move found. */
+    synchronized void stop() {
+        if (!_closed) {
+            _out.println("stop");
+            _out.flush();
+        }
+    }
+
+    /** Ask my engine to discard what it has learned from earlier
+     *  searches. */
+    synchronized void newGame() {
+        if (!_closed) {
+            _out.println("newgame");
+            _out.flush();
+        }
+    }
+
+    /** Return the number of my requests that my engine has not yet
+     *  answered. */
+    synchronized int outstanding() {
+        return _pending.size();
+    }
+
+    /** Tell my engine to quit, and wait a short while for it to do so
+     *  before ending it forcibly. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!_closed) {
+                _out.println("quit");
+                _out.flush();
+            }
+            _closed = true;
+        }
+        _out.close();
+        try {
+            if (!_process.waitFor(QUIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                _process.destroyForcibly();
+            }
+        } catch (InterruptedException excp) {
+            _process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Read my engine's answers until it exits, and complete the requests
+     *  they answer.  Then fail the requests left. */
+    private void readAnswers() {
+        try {
+            String line;
+            while ((line = _in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                switch (words[0]) {
+                case "info":
+                    info(words);
+                    break;
+                case "bestmove":
+                    Request request = next();
+                    if (request != null) {
+                        request.result.complete(
+                            words.length < 2 || words[1].equals("none") ? -1
+                            : request.geometry.parseMove(words[1]));
+                    }
+                    break;
+                case "readyok":
+                    request = next();
+                    if (request != null) {
+                        request.result.complete(0);
+                    }
+                    break;
+                case "error":
+                    request = next();
+                    if (request != null) {
+                        request.result.completeExceptionally(
+                            error("engine: %s", line.trim().substring(5)
+                                  .trim()));
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            /* Treat as the end of the engine. */
+        }
+        synchronized (this) {
+            _closed = true;
+            for (Request request : _pending) {
+                request.result.completeExceptionally(
+                    new IOException("engine has exited"));
+            }
+            _pending.clear();
+        }
+    }
+
+    /** Pass the statistics in WORDS, an "info" answer, to the progress
+     *  listener of the request being answered, if it has one. */
+    private void info(String[] words) {
+        Request request;
+        synchronized (this) {
+            request = _pending.peek();
+        }
+        if (request == null || request.progress == null) {
+            return;
+        }
+        int depth = 0, score = 0;
+        long nodes = 0;
+        int[] pv = new int[0];
+        try {
+            for (int i = 1; i < words.length - 1; i += 2) {
+                switch (words[i]) {
+                case "depth":
+                    depth = Integer.parseInt(words[i + 1]);
+                    break;
+                case "nodes":
+                    nodes = Long.parseLong(words[i + 1]);
+                    break;
+                case "score":
+                    score = AI.Line.parseScore(words[i + 1]);
+                    break;
+                case "pv":
+                    pv = new int[words.length - i - 1];
+                    for (int k = 0; k < pv.length; k += 1) {
+                        pv[k] = request.geometry.parseMove(words[i + 1 + k]);
+                    }
+                    i = words.length;
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (NumberFormatException excp) {
+            return;
+        }
+        request.progress.completed(depth, nodes, new AI.Line(score, pv));
+    }
+
+    /** Remove and return the oldest outstanding request, or null if there
+     *  is none. */
+    private synchronized Request next() {
+        return _pending.poll();
+    }
+
+    /** An outstanding request. */
+    private static final class Request {
+        /** A request concerning a board of GEOMETRY (null if it is not a
+         *  search), whose iterations are reported to PROGRESS, if it is
+         *  not null. */
+        Request(Geometry geometry, AI.Progress progress) {
+            this.geometry = geometry;
+            this.progress = progress;
+        }
+
+        /** The geometry of the board searched, for reading moves. */
+        final Geometry geometry;
+        /** Receives reports of the iterations of the search, or null. */
+        final AI.Progress progress;
+        /** Completed with the answer. */
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+    }
+
+    /** Time allowed for the engine to quit, in milliseconds. */
+    private static final int QUIT_MILLIS = 2000;
+
+    /** The engine. */
+    private final Process _process;
+    /** Answers from the engine. */
+    private final BufferedReader _in;
+    /** Commands to the engine. */
+    private final PrintWriter _out;
+    /** Requests not yet answered, oldest first. */
+    private final Deque<Request> _pending = new ArrayDeque<>();
+    /** True once I have been closed or my engine has exited. */
+    private boolean _closed;
+}
@@ -0,0 +1,92 @@
+package tablut;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** A Player whose moves are found by an engine running in another
+ *  process (see EngineServer).  All the players created from the same
+ *  template share its pool of engines.  The engine is told to stop when
+ *  the controller's time limit per move passes or the controller cancels
+ *  the search.  If the engine fails, the move is found by a local AI
+ *  instead.
+ *  @author Jennifer Tran
+ */
+class EnginePlayer extends Player {
+
+    /** A new player with no piece or controller (intended to produce a
+     *  template), using the engines of POOL. */
+    EnginePlayer(EnginePool pool) {
+        this(null, null, pool);
+    }
+
+    /** A new player of PIECE under control of CONTROLLER, using the
+     *  engines of POOL. */
+    EnginePlayer(Piece piece, Controller controller, EnginePool pool) {
+        super(piece, controller);
+        _pool = pool;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new EnginePlayer(piece, controller, _pool);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String myMove() {
+        CancellationToken token = _controller.newSearch();
+        EngineClient engine = _pool.engine();
+        CompletableFuture<Integer> result =
+            engine.search(board(), 0, 0, 0, null);
+        boolean stopped = false;
+        int move;
+        try {
+            while (true) {
+                try {
+                    move = result.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException excp) {
+                    if (!stopped && token.isCancelled()) {
+                        engine.stop();
+                        stopped = true;
+                    }
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return fallback("interrupted");
+        } catch (ExecutionException excp) {
+            return fallback(excp.getCause().getMessage());
+        }
+        if (move >= 0 && !board().isLegal(Move.from(move), Move.to(move))) {
+            return fallback("illegal move from engine");
+        }
+        _controller.reportMove(move);
+        return board().geometry().moveName(move);
+    }
+
+    /** Report that the engine failed because of PROBLEM, and return the
+     *  move of a local AI instead. */
+    private String fallback(String problem) {
+        _controller.reportError("engine failed: %s", problem);
+        if (_fallback == null) {
+            _fallback = new AI(_myPiece, _controller);
+        }
+        return _fallback.myMove();
+    }
+
+    /** Interval at which the controller's token is checked while waiting
+     *  for the engine, in milliseconds. */
+    private static final int POLL_MILLIS = 10;
+
+    /** The engines. */
+    private final EnginePool _pool;
+    /** The AI used when the engine fails, or null if none is needed yet. */
+    private AI _fallback;
+}
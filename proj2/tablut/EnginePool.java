@@ -0,0 +1,133 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+import static tablut.Utils.*;
+
+/** A set of engine processes (see EngineClient) that share work.  Each
+ *  request goes to the engine with the fewest requests outstanding, so
+ *  that searches requested at the same time run in parallel, each in its
+ *  own process.
+ *  @author Jennifer Tran
+ */
+class EnginePool implements Closeable {
+
+    /** A pool of N engines, each a new process running COMMAND. */
+    EnginePool(List<String> command, int n) throws IOException {
+        if (n <= 0) {
+            throw error("an engine pool needs at least one engine");
+        }
+        try {
+            for (int i = 0; i < n; i += 1) {
+                _engines.add(new EngineClient(command));
+            }
+        } catch (IOException excp) {
+            close();
+            throw excp;
+        }
+    }
+
+    /** Return the number of my engines. */
+    int size() {
+        return _engines.size();
+    }
+
+    /** Return the engine with the fewest outstanding requests. */
+    synchronized EngineClient engine() {
+        EngineClient best = _engines.get(0);
+        for (EngineClient engine : _engines) {
+            if (engine.outstanding() < best.outstanding()) {
+                best = engine;
+            }
+        }
+        return best;
+    }
+
+    /** Return the result of engine().search(BOARD, DEPTH, NODES, MILLIS,
+     *  PROGRESS). */
+    CompletableFuture<Integer> search(Board board, int depth, long nodes,
+                                      long millis, AI.Progress progress) {
+        synchronized (this) {
+            return engine().search(board, depth, nodes, millis, progress);
+        }
+    }
+
+    /** Ask all my engines to finish their searches so far as soon as
+     *  possible. */
+    void stop() {
+        for (EngineClient engine : _engines) {
+            engine.stop();
+        }
+    }
+
+    /** Close all my engines. */
+    @Override
+    public void close() throws IOException {
+        for (EngineClient engine : _engines) {
+            engine.close();
+        }
+    }
+
+    /** Start ARGS[0] local engines, and have them search ARGS[1] positions
+     *  from random games, each to ARGS[2] plies, all requested at once.
+     *  Report the rate at which the searches finish. */
+    public static void main(String... args) {
+        if (args.length != 3) {
+            fatal("Usage: java tablut.EnginePool ENGINES POSITIONS"
+                  + " DEPTH%n");
+        }
+        int engines = Integer.parseInt(args[0]),
+            n = Integer.parseInt(args[1]),
+            depth = Integer.parseInt(args[2]);
+        try (EnginePool pool =
+             new EnginePool(EngineClient.localCommand(), engines)) {
+            List<Board> positions = randomPositions(n);
+            for (EngineClient engine : pool._engines) {
+                GameReplay.await(engine.ready());
+            }
+            long start = System.nanoTime();
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (Board board : positions) {
+                results.add(pool.search(board, depth, 0, 0, null));
+            }
+            for (CompletableFuture<Integer> result : results) {
+                GameReplay.await(result);
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.out.printf("%d searches on %d engines in %.3f s"
+                              + " (%.1f/s)%n", n, engines, secs, n / secs);
+        } catch (IOException excp) {
+            fatal("Engine pool failed: %s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Return N positions from random games of standard Tablut, none of
+     *  them finished. */
+    private static List<Board> randomPositions(int n) {
+        SplittableRandom random = new SplittableRandom(1);
+        List<Board> result = new ArrayList<>();
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        while (result.size() < n) {
+            int k = board.legalMoves(board.turn(), moves);
+            if (board.winner() != null || k == 0) {
+                board.init();
+                continue;
+            }
+            board.makeMove(moves[random.nextInt(k)]);
+            if (board.winner() == null) {
+                result.add(new Board(board));
+            }
+        }
+        return result;
+    }
+
+    /** My engines. */
+    private final List<EngineClient> _engines = new ArrayList<>();
+}
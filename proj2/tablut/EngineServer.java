@@ -0,0 +1,273 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static tablut.Utils.*;
+
+/** An AI running as a separate process (an engine), which obeys commands
+ *  read from its standard input and answers on its standard output, so
+ *  that other programs (see EngineClient) can use it as a player.
+ *
+ *  The protocol consists of lines of text.  The client sends
+ *  <pre>
+ *      position VARIANT POSITION [moves MOVE ...]
+ *      go [depth PLIES] [nodes NODES] [movetime MILLIS]
+ *      stop
+ *      isready
+ *      newgame
+ *      quit
+ *  </pre>
+ *  "position" sets the position for later searches: POSITION is
+ *  "startpos" or as for Board.encodedBoard, and the MOVEs are made from
+ *  it (unlike POSITION, they count toward repetitions).  "go" searches
+ *  the position set last, deepening one ply at a time up to PLIES (by
+ *  default, as far as the AI normally does), and stopping early after
+ *  about NODES nodes or MILLIS milliseconds, if given.  "stop" ends the
+ *  searches requested by all earlier "go"s as soon as possible.
+ *  "newgame" discards what earlier searches have learned.  The engine
+ *  answers
+ *  <pre>
+ *      info depth PLIES nodes NODES time MILLIS score SCORE pv MOVE ...
+ *      bestmove MOVE
+ *      readyok
+ *      error MESSAGE
+ *  </pre>
+ *  Each "go" is answered by an "info" line for each iteration of the
+ *  search that finishes, with the search's statistics, the score (as for
+ *  AI.Line.scoreText) and the principal variation, and then by the move
+ *  found ("none" if there is no legal move), or by an "error" if the
+ *  position or limits are invalid.  "isready" is answered by "readyok"
+ *  once everything sent before it has been answered.  Other commands, and
+ *  malformed ones, are ignored.
+ *
+ *  Commands are read while searches run, and searches run one at a time,
+ *  in the order requested.  So a client need not wait for one answer
+ *  before sending its next command: it can match the answers with its
+ *  "go"s and "isready"s in order.
+ *  @author Jennifer Tran
+ */
+class EngineServer {
+
+    /** The greatest search depth a client may ask for. */
+    static final int MAX_PLIES = 64;
+
+    /** Serve a client on the standard input and output until it sends
+     *  "quit" or closes the input.  ARGS must be empty. */
+    public static void main(String... args) {
+        if (args.length != 0) {
+            fatal("Usage: java tablut.EngineServer%n");
+        }
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(System.in,
+                                                     StandardCharsets.UTF_8));
+        PrintWriter out =
+            new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        try {
+            new EngineServer(in, out).run();
+        } catch (IOException excp) {
+            fatal("engine: %s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** An engine that reads commands from IN and answers on OUT. */
+    EngineServer(BufferedReader in, PrintWriter out) {
+        _in = in;
+        _out = out;
+    }
+
+    /** Obey commands until "quit" or the end of the input. */
+    void run() throws IOException {
+        try {
+            String line;
+            while ((line = _in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                switch (words[0]) {
+                case "position":
+                    setPosition(words);
+                    break;
+                case "go":
+                    go(words);
+                    break;
+                case "stop":
+                    stop();
+                    break;
+                case "isready":
+                    _searcher.execute(() -> send("readyok"));
+                    break;
+                case "newgame":
+                    _searcher.execute(_ai.table()::clear);
+                    break;
+                case "quit":
+                    return;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            stop();
+            _searcher.shutdown();
+            try {
+                _searcher.awaitTermination(QUIT_MILLIS,
+                                           TimeUnit.MILLISECONDS);
+            } catch (InterruptedException excp) {
+                /* Ignore InterruptedException. */
+            }
+        }
+    }
+
+    /** Set the position for later searches as described by WORDS:
+     *  "position VARIANT POSITION [moves MOVE ...]".  If WORDS is
+     *  invalid, record why instead, for the next "go" to report. */
+    private void setPosition(String[] words) {
+        _board = null;
+        try {
+            if (words.length < 3) {
+                throw error("missing position");
+            }
+            Variant variant = Variant.named(words[1]);
+            if (variant == null) {
+                throw error("unknown variant: %s", words[1]);
+            }
+            Board board = new Board(variant);
+            if (!words[2].equals("startpos")) {
+                board.setPosition(words[2]);
+            }
+            if (words.length > 3 && !words[3].equals("moves")) {
+                throw error("unexpected %s in position", words[3]);
+            }
+            for (int i = 4; i < words.length; i += 1) {
+                int move = board.geometry().parseMove(words[i]);
+                if (move < 0 || board.winner() != null
+                    || !board.isLegal(Move.from(move), Move.to(move))) {
+                    throw error("illegal move: %s", words[i]);
+                }
+                board.makeMove(move);
+            }
+            _board = board;
+        } catch (IllegalArgumentException excp) {
+            _positionError = excp.getMessage();
+        }
+    }
+
+    /** Queue the search described by WORDS: "go [depth PLIES] [nodes
+     *  NODES] [movetime MILLIS]". */
+    private void go(String[] words) {
+        Board board = _board;
+        int depth = 0;
+        long nodes = 0, millis = 0;
+        try {
+            if (board == null) {
+                throw error("%s", _positionError == null ? "no position"
+                            : _positionError);
+            }
+            for (int i = 1; i < words.length; i += 2) {
+                if (i + 1 == words.length) {
+                    throw error("missing value for %s", words[i]);
+                }
+                long value = Long.parseLong(words[i + 1]);
+                if (value <= 0) {
+                    throw error("%s must be positive", words[i]);
+                }
+                switch (words[i]) {
+                case "depth":
+                    if (value > MAX_PLIES) {
+                        throw error("depth may be at most %d", MAX_PLIES);
+                    }
+                    depth = (int) value;
+                    break;
+                case "nodes":
+                    nodes = value;
+                    break;
+                case "movetime":
+                    millis = value;
+                    break;
+                default:
+                    throw error("unknown limit: %s", words[i]);
+                }
+            }
+        } catch (IllegalArgumentException excp) {
+            String message = excp.getMessage();
+            _searcher.execute(() -> send("error %s", message));
+            return;
+        }
+        int plies = depth, stops = _stops;
+        long limit = nodes, time = millis;
+        _searcher.execute(() -> search(board, plies, limit, time, stops));
+    }
+
+    /** Search BOARD, which is not modified, with the limits DEPTH, NODES,
+     *  and MILLIS (each 0 if none), and report the results, as requested
+     *  when "stop" had been received STOPS times. */
+    private void search(Board board, int depth, long nodes, long millis,
+                        int stops) {
+        CancellationToken token = new CancellationToken(millis);
+        _current = token;
+        if (_stops != stops) {
+            token.cancel();
+        }
+        long start = System.nanoTime();
+        Geometry geometry = board.geometry();
+        AI.Progress progress = (plies, count, line) ->
+            send("info depth %d nodes %d time %d score %s pv %s",
+                 plies, count, (System.nanoTime() - start) / 1_000_000,
+                 line.scoreText(), line.moveText(geometry));
+        int move = -1;
+        if (board.winner() == null) {
+            move = _ai.findMove(board, depth, nodes, token, progress);
+        }
+        _current = null;
+        send("bestmove %s", move < 0 ? "none" : geometry.moveName(move));
+    }
+
+    /** End the searches requested so far as soon as possible. */
+    private void stop() {
+        _stops += 1;
+        CancellationToken token = _current;
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
+    /** Send the answer String.format(FORMAT, ARGS) to the client. */
+    private void send(String format, Object... args) {
+        synchronized (_out) {
+            _out.printf(format + "%n", args);
+            _out.flush();
+        }
+    }
+
+    /** Time allowed for the searches still queued on "quit" to answer, in
+     *  milliseconds. */
+    private static final int QUIT_MILLIS = 1000;
+
+    /** Commands from the client. */
+    private final BufferedReader _in;
+    /** Answers to the client. */
+    private final PrintWriter _out;
+    /** Runs the searches and other queued work, one at a time. */
+    private final ExecutorService _searcher =
+        Executors.newSingleThreadExecutor();
+    /** The searcher. */
+    private final AI _ai = new AI();
+    /** The position set by the last "position", or null if there is none
+     *  or it was invalid.  Never modified once set. */
+    private Board _board;
+    /** Why the last "position" was invalid. */
+    private String _positionError;
+    /** The number of "stop"s received.  A queued search requested before
+     *  the last "stop" is cancelled as soon as it starts. */
+    private volatile int _stops;
+    /** The token of the running search, or null if there is none. */
+    private volatile CancellationToken _current;
+}
@@ -0,0 +1,176 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the engine protocol: EngineServer, and EngineClient driving
+ *  an engine in another process.
+ *  @author Jennifer Tran
+ */
+public class EngineTest {
+
+    /** Longest wait for an answer, in seconds. */
+    static final int TIMEOUT = 30;
+
+    /** The server answers each "go" with an "info" line per iteration,
+     *  whose principal variations are legal, and then a legal best move
+     *  (the first move of the last principal variation), and answers
+     *  invalid positions and limits with errors, all in the order
+     *  requested. */
+    @Test
+    public void serverAnswersInOrder() throws Exception {
+        LineQueue answers = new LineQueue();
+        PipedWriter commands = new PipedWriter();
+        EngineServer server =
+            new EngineServer(new BufferedReader(new PipedReader(commands)),
+                             new PrintWriter(answers));
+        CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+            try {
+                server.run();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        PrintWriter out = new PrintWriter(commands, true);
+        out.println("position tablut startpos");
+        out.println("go depth 2");
+        out.println("position brandubh startpos moves a4-3 d3-c");
+        out.println("go depth 3 nodes 1000000");
+        out.println("position brandubh nonsense");
+        out.println("go");
+        out.println("position tablut startpos moves a1-2");
+        out.println("go");
+        out.println("position tablut startpos");
+        out.println("go depth 0");
+        out.println("go depth 65");
+        out.println("go speed 3");
+        out.println("isready");
+        Board tablut = new Board(Variant.TABLUT);
+        checkSearch(answers, tablut, 2);
+        Board brandubh = new Board(Variant.BRANDUBH);
+        brandubh.makeMove(brandubh.geometry().parseMove("a4-3"));
+        brandubh.makeMove(brandubh.geometry().parseMove("d3-c"));
+        checkSearch(answers, brandubh, 3);
+        for (String error : new String[] {
+                "error bad position", "error illegal move: a1-2",
+                "error depth must be positive",
+                "error depth may be at most 64",
+                "error unknown limit: speed" }) {
+            assertTrue(answers.next().startsWith(error));
+        }
+        assertEquals("readyok", answers.next());
+        out.println("quit");
+        running.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /** A client of an engine process gets legal moves and progress
+     *  reports for its searches, can stop a long search, and fails its
+     *  requests once the engine is closed. */
+    @Test
+    public void clientDrivesEngine() throws Exception {
+        Board board = new Board();
+        EngineClient client =
+            new EngineClient(EngineClient.localCommand());
+        try {
+            List<Integer> depths = new ArrayList<>();
+            int move = client.search(board, 3, 0, 0,
+                                     (d, n, line) -> depths.add(d))
+                .get(TIMEOUT, TimeUnit.SECONDS);
+            assertTrue(board.isLegal(Move.from(move), Move.to(move)));
+            assertEquals(0, (int) client.ready().get(TIMEOUT,
+                                                     TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(1, 2, 3), depths);
+            CompletableFuture<Integer> deep =
+                client.search(board, EngineServer.MAX_PLIES, 0, 0, null);
+            client.stop();
+            move = deep.get(TIMEOUT, TimeUnit.SECONDS);
+            assertTrue(board.isLegal(Move.from(move), Move.to(move)));
+            assertEquals(0, client.outstanding());
+        } finally {
+            client.close();
+        }
+        try {
+            client.search(board, 1, 0, 0, null).get(TIMEOUT,
+                                                    TimeUnit.SECONDS);
+            fail("searched after close");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof IOException);
+        }
+    }
+
+    /** Check that the next answers in ANSWERS are those to a "go" of
+     *  DEPTH plies from the position on BOARD. */
+    private static void checkSearch(LineQueue answers, Board board,
+                                    int depth) throws InterruptedException {
+        String lastFirst = null;
+        for (int d = 1; d <= depth; d += 1) {
+            String[] words = answers.next().split(" ");
+            assertEquals("info", words[0]);
+            assertEquals("depth", words[1]);
+            assertEquals(d, Integer.parseInt(words[2]));
+            assertEquals("pv", words[9]);
+            Board b = new Board(board);
+            for (int i = 10; i < words.length; i += 1) {
+                int move = b.geometry().parseMove(words[i]);
+                assertTrue(words[i], b.isLegal(Move.from(move),
+                                               Move.to(move)));
+                b.makeMove(move);
+            }
+            lastFirst = words[10];
+        }
+        assertEquals("bestmove " + lastFirst, answers.next());
+    }
+
+    /** A Writer that queues the lines written to it. */
+    private static final class LineQueue extends Writer {
+
+        @Override
+        public synchronized void write(char[] buf, int off, int len) {
+            for (int i = off; i < off + len; i += 1) {
+                if (buf[i] == '\n') {
+                    _lines.add(_line.toString());
+                    _line.setLength(0);
+                } else if (buf[i] != '\r') {
+                    _line.append(buf[i]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Return the next line written, waiting up to TIMEOUT seconds for
+         *  it. */
+        String next() throws InterruptedException {
+            String line = _lines.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull("no answer", line);
+            return line;
+        }
+
+        /** Lines written so far and not yet taken. */
+        private final BlockingQueue<String> _lines =
+            new LinkedBlockingQueue<>();
+        /** The line being written. */
+        private final StringBuilder _line = new StringBuilder();
+    }
+}
@@ -0,0 +1,96 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Java Flight Recorder events for the stages of move processing.  Each is
+ *  used in the pattern
+ *  <pre>
+ *      SomeEvent event = new SomeEvent();
+ *      event.begin();
+ *      ...
+ *      event.end();
+ *      if (event.shouldCommit()) {
+ *          ...set fields...;
+ *          event.commit();
+ *      }
+ *  </pre>
+ *  so that when recording is off, the cost is an object the JIT can
+ *  eliminate and a test of a flag.  Record with, e.g.,
+ *  java -XX:StartFlightRecording=filename=tablut.jfr tablut.Main.
+ *  @author Jennifer Tran
+ */
+class Events {
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /** The execution of one command by the Controller. */
+    @Name("tablut.Command")
+    @Label("Command")
+    @Category("Tablut")
+    @Description("Execution of one controller command")
+    static class CommandEvent extends Event {
+        /** The kind of command ("move" for moves). */
+        @Label("Command")
+        String command;
+        /** The command's text. */
+        @Label("Text")
+        String text;
+    }
+
+    /** Making or undoing a move on the game board. */
+    @Name("tablut.Move")
+    @Label("Move")
+    @Category("Tablut")
+    @Description("Making or undoing a move on the game board")
+    static class MoveEvent extends Event {
+        /** The move, or "undo". */
+        @Label("Move")
+        String move;
+        /** The side that moved (or whose move was undone). */
+        @Label("Side")
+        String side;
+    }
+
+    /** A player's choice of its next move or command. */
+    @Name("tablut.PlayerMove")
+    @Label("Player Move")
+    @Category("Tablut")
+    @Description("A player choosing its next move or command")
+    static class PlayerMoveEvent extends Event {
+        /** The kind of player. */
+        @Label("Player")
+        String player;
+        /** The side the player plays. */
+        @Label("Side")
+        String side;
+        /** The player's result. */
+        @Label("Result")
+        String result;
+    }
+
+    /** One search by the AI. */
+    @Name("tablut.Search")
+    @Label("Search")
+    @Category("Tablut")
+    @Description("One move search by the AI")
+    static class SearchEvent extends Event {
+        /** The move chosen. */
+        @Label("Move")
+        String move;
+        /** The depth of the deepest completed iteration. */
+        @Label("Depth")
+        int depth;
+        /** The number of nodes visited. */
+        @Label("Nodes")
+        long nodes;
+        /** True iff the search was cancelled. */
+        @Label("Cancelled")
+        boolean cancelled;
+    }
+}
@@ -0,0 +1,361 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** The moves of a game and its variations, with a cursor that can be
+ *  moved to any ply of any line, for reviewing games.  Each line of play
+ *  stores its moves as 16-bit codes (see Move.code) and, every
+ *  interval() plies, a checkpoint: the position packed into two bits per
+ *  square and a byte for the side to move.  The cursor's position is kept
+ *  on a single Board.  Short steps are made with Board.makeMove and
+ *  Board.undo; longer jumps restore the nearest checkpoint before the
+ *  target and replay at most interval() - 1 moves from it, so seeking
+ *  takes time bounded by the interval, whatever the length of the game.
+ *  <p>
+ *  A variation is a line that leaves its parent line at some ply.  It
+ *  shares the parent's moves and checkpoints up to that ply, so it costs
+ *  only its own moves.  A position restored from a checkpoint has no
+ *  history before it, so the Board does not see repetitions that span
+ *  the checkpoint; winner() reports the result recorded when the last
+ *  move of a line was played instead.
+ *  @author Jennifer Tran
+ */
+class GameHistory {
+
+    /** Default number of plies between checkpoints. */
+    static final int DEFAULT_INTERVAL = 16;
+
+    /** A history of VARIANT with no moves and the default checkpoint
+     *  interval. */
+    GameHistory(Variant variant) {
+        this(variant, DEFAULT_INTERVAL);
+    }
+
+    /** A history of VARIANT with no moves and a checkpoint every INTERVAL
+     *  plies. */
+    GameHistory(Variant variant, int interval) {
+        if (interval <= 0) {
+            throw error("checkpoint interval must be positive");
+        }
+        _interval = interval;
+        _board = new Board(variant);
+        _line = _root = new Line(null, 0);
+    }
+
+    /** Return a history of the variant of GAME holding its moves, with
+     *  the cursor at the end. */
+    static GameHistory of(GameRecord game) {
+        GameHistory history = new GameHistory(game.variant());
+        for (int k = 0; k < game.moveCount(); k += 1) {
+            history.play(game.move(k));
+        }
+        return history;
+    }
+
+    /** Return the board in the position at the cursor.  It should not be
+     *  modified. */
+    Board board() {
+        return _board;
+    }
+
+    /** Return the number of plies between checkpoints. */
+    int interval() {
+        return _interval;
+    }
+
+    /** Return the number of moves made to reach the cursor. */
+    int ply() {
+        return _ply;
+    }
+
+    /** Return the number of moves in the current line, from the start of
+     *  the game. */
+    int length() {
+        return _line.end();
+    }
+
+    /** Return true iff the cursor is on a variation rather than the main
+     *  line. */
+    boolean inVariation() {
+        return _line != _root;
+    }
+
+    /** Return the code of the move made at ply PLY of the current line,
+     *  where 0 <= PLY < length(). */
+    int move(int ply) {
+        if (ply < 0 || ply >= length()) {
+            throw error("no move %d in this line", ply);
+        }
+        return _line.moveAt(ply);
+    }
+
+    /** Return the winner at the cursor: the winner recorded when the
+     *  current line's last move was made if the cursor is at its end, and
+     *  otherwise null. */
+    Piece winner() {
+        return _ply == length() ? _line._winner : null;
+    }
+
+    /** Return the codes of the moves played from the cursor's position in
+     *  all lines, that of the line that continues furthest back first. */
+    int[] continuations() {
+        Line base = base(_line, _ply);
+        int[] result = new int[base._children.size() + 1];
+        int n = 0;
+        if (_ply < base.end()) {
+            result[n] = base.moveAt(_ply);
+            n += 1;
+        }
+        for (Line child : base._children) {
+            if (child._start == _ply) {
+                result[n] = child.moveAt(_ply);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Make the move with code MOVE from the cursor's position, advancing
+     *  the cursor.  If some line already continues with MOVE, the cursor
+     *  follows it (preferring the current one); otherwise MOVE extends the
+     *  current line, if the cursor is at its end, or starts a new
+     *  variation.  MOVE must be legal, and the game must not be over. */
+    void play(int move) {
+        if (winner() != null || _board.winner() != null) {
+            throw error("game is over");
+        }
+        if (!_board.isLegal(Move.from(move), Move.to(move))) {
+            throw error("illegal move: %s",
+                        _board.geometry().moveName(move));
+        }
+        if (_ply < length() && _line.moveAt(_ply) == move) {
+            step(move);
+            return;
+        }
+        Line base = base(_line, _ply);
+        Line next = null;
+        if (_ply < base.end() && base.moveAt(_ply) == move) {
+            next = base;
+        } else {
+            for (Line child : base._children) {
+                if (child._start == _ply && child.moveAt(_ply) == move) {
+                    next = child;
+                    break;
+                }
+            }
+        }
+        if (next != null) {
+            _line = next;
+            step(move);
+            return;
+        }
+        if (_ply < length()) {
+            _line = new Line(base, _ply);
+            base._children.add(_line);
+        }
+        _line.append(move);
+        step(move);
+        if (_ply % _interval == 0) {
+            _line.addCheckpoint(pack(_board));
+        }
+        _line._winner = _board.winner();
+    }
+
+    /** Move the cursor one ply forward along the current line, returning
+     *  false (and doing nothing) if it is at the end. */
+    boolean forward() {
+        if (_ply == length()) {
+            return false;
+        }
+        seek(_ply + 1);
+        return true;
+    }
+
+    /** Move the cursor one ply back, returning false (and doing nothing)
+     *  if it is at the start of the game. */
+    boolean back() {
+        if (_ply == 0) {
+            return false;
+        }
+        seek(_ply - 1);
+        return true;
+    }
+
+    /** Move the cursor to ply PLY of the current line, where 0 <= PLY <=
+     *  length(). */
+    void seek(int ply) {
+        if (ply < 0 || ply > length()) {
+            throw error("no ply %d in this line", ply);
+        }
+        if (ply <= _ply && ply >= _restored && _ply - ply <= _interval) {
+            while (_ply > ply) {
+                _board.undo();
+                _ply -= 1;
+            }
+            return;
+        }
+        if (ply < _ply || ply - _ply >= _interval) {
+            restore(ply / _interval * _interval);
+        }
+        while (_ply < ply) {
+            step(_line.moveAt(_ply));
+        }
+    }
+
+    /** Leave the current variation for the line it branched from, moving
+     *  the cursor back to the branch point if needed.  Return false (and
+     *  do nothing) if the cursor is on the main line. */
+    boolean exit() {
+        if (_line == _root) {
+            return false;
+        }
+        if (_ply > _line._start) {
+            seek(_line._start);
+        }
+        _line = _line._parent;
+        return true;
+    }
+
+    /** Make MOVE on the board, and advance the cursor. */
+    private void step(int move) {
+        _board.makeMove(move);
+        _ply += 1;
+    }
+
+    /** Put the board in the position at ply PLY of the current line,
+     *  which must have a checkpoint (or be 0). */
+    private void restore(int ply) {
+        if (ply == 0) {
+            _board.init();
+        } else {
+            Line owner = _line;
+            while (ply <= owner._start) {
+                owner = owner._parent;
+            }
+            _board.setPosition(unpack(owner.checkpoint(ply, _interval)));
+        }
+        _ply = _restored = ply;
+    }
+
+    /** Return the line in which the position at ply PLY of LINE is not a
+     *  branch point: LINE itself, or the ancestor from which it and the
+     *  lines between branched at PLY or later.  Variations from that
+     *  position are children of this line. */
+    private static Line base(Line line, int ply) {
+        while (line._parent != null && ply <= line._start) {
+            line = line._parent;
+        }
+        return line;
+    }
+
+    /** Return the position on BOARD packed as for a checkpoint. */
+    private static byte[] pack(Board board) {
+        int n = board.geometry().numSquares();
+        byte[] result = new byte[1 + (n + 3) / 4];
+        result[0] = (byte) (board.turn() == WHITE ? 1 : 0);
+        for (int i = 0; i < n; i += 1) {
+            result[1 + i / 4] |= board.get(i).ordinal() << (2 * (i % 4));
+        }
+        return result;
+    }
+
+    /** Return the checkpoint CHECKPOINT of a board of my variant as an
+     *  encoded board (see Board.encodedBoard). */
+    private String unpack(byte[] checkpoint) {
+        int n = _board.geometry().numSquares();
+        char[] result = new char[n + 1];
+        result[0] = checkpoint[0] == 1 ? 'W' : 'B';
+        for (int i = 0; i < n; i += 1) {
+            int p = (checkpoint[1 + i / 4] >> (2 * (i % 4))) & 3;
+            result[i + 1] = PIECES[p].toString().charAt(0);
+        }
+        return new String(result);
+    }
+
+    /** A line of play: the moves made from the position at some ply of a
+     *  parent line (or from the start, for the main line), and the
+     *  checkpoints of the positions they reach. */
+    private static final class Line {
+
+        /** A line with no moves yet that leaves PARENT (null for the main
+         *  line) at ply START. */
+        Line(Line parent, int start) {
+            _parent = parent;
+            _start = start;
+        }
+
+        /** Return the number of the ply after my last move. */
+        int end() {
+            return _start + _length;
+        }
+
+        /** Return the code of the move made at ply PLY of my line, which
+         *  may be one of an ancestor's moves. */
+        int moveAt(int ply) {
+            Line line = this;
+            while (ply < line._start) {
+                line = line._parent;
+            }
+            return line._moves[ply - line._start] & 0xffff;
+        }
+
+        /** Add the move with code MOVE to my end. */
+        void append(int move) {
+            if (_length == _moves.length) {
+                _moves = Arrays.copyOf(_moves, 2 * _length + 4);
+            }
+            _moves[_length] = (short) move;
+            _length += 1;
+        }
+
+        /** Record CHECKPOINT as the position after my last move, which
+         *  is at a multiple of the checkpoint interval. */
+        void addCheckpoint(byte[] checkpoint) {
+            _checkpoints.add(checkpoint);
+        }
+
+        /** Return the checkpoint of the position at ply PLY, which is
+         *  after one of my moves and a multiple of INTERVAL. */
+        byte[] checkpoint(int ply, int interval) {
+            return _checkpoints.get(ply / interval - _start / interval - 1);
+        }
+
+        /** The line I branched from, or null for the main line. */
+        private final Line _parent;
+        /** The ply of my first move. */
+        private final int _start;
+        /** My moves. */
+        private short[] _moves = new short[0];
+        /** The number of my moves. */
+        private int _length;
+        /** My checkpoints, in order: one for each ply that is a multiple
+         *  of the interval after _start, up to end(). */
+        private final List<byte[]> _checkpoints = new ArrayList<>();
+        /** The variations that branch from my positions. */
+        private final List<Line> _children = new ArrayList<>(0);
+        /** The winner after my last move, or null. */
+        private Piece _winner;
+    }
+
+    /** Pieces by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** The number of plies between checkpoints. */
+    private final int _interval;
+    /** The board, in the position at the cursor. */
+    private final Board _board;
+    /** The main line. */
+    private final Line _root;
+    /** The line the cursor is on. */
+    private Line _line;
+    /** The ply of the cursor. */
+    private int _ply;
+    /** The ply of the last position set from a checkpoint (or the
+     *  initial position); the board can undo back to it. */
+    private int _restored;
+}
@@ -0,0 +1,177 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of GameHistory against replaying moves from the start.
+ *  @author Jennifer Tran
+ */
+public class GameHistoryTest {
+
+    /** Checkpoint interval of the histories tested: small, so that games
+     *  have many checkpoints. */
+    static final int INTERVAL = 5;
+
+    /** Seeking to random plies of random games of each variant, and
+     *  stepping forward and back, gives the positions reached by playing
+     *  the moves from the start, and the history of a GameRecord ends with
+     *  its result. */
+    @Test
+    public void seekMatchesReplay() {
+        SplittableRandom random = new SplittableRandom(9);
+        for (GameRecord game : GameRecordTest.randomGames(random)) {
+            if (game.moveCount() == 0) {
+                continue;
+            }
+            GameHistory history = new GameHistory(game.variant(), INTERVAL);
+            for (int move : game.moves()) {
+                history.play(move);
+            }
+            assertEquals(game.moveCount(), history.length());
+            assertEquals(game.result(), history.winner());
+            assertEquals(game.result(), GameHistory.of(game).winner());
+            List<String> positions = positions(game.variant(), game.moves());
+            for (int i = 0; i < 20; i += 1) {
+                int ply = random.nextInt(game.moveCount() + 1);
+                history.seek(ply);
+                assertPosition(positions, history);
+                if (random.nextBoolean() ? history.forward()
+                    : history.back()) {
+                    assertPosition(positions, history);
+                }
+            }
+            history.seek(0);
+            assertFalse(history.back());
+            history.seek(history.length());
+            assertFalse(history.forward());
+        }
+    }
+
+    /** A move other than the next one starts a variation that shares the
+     *  moves before it, which can be followed, searched and left again
+     *  for the main line, and a move already played follows its line
+     *  instead of starting another. */
+    @Test
+    public void variations() {
+        SplittableRandom random = new SplittableRandom(10);
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] main = randomLine(new Board(), random, 40);
+        GameHistory history = new GameHistory(Variant.TABLUT, INTERVAL);
+        for (int move : main) {
+            history.play(move);
+        }
+        int branch = 17;
+        history.seek(branch);
+        assertTrue(main.length > branch);
+        history.board().legalMoves(history.board().turn(), moves);
+        int other = moves[0] == main[branch] ? moves[1] : moves[0];
+        history.play(other);
+        assertTrue(history.inVariation());
+        assertEquals(branch + 1, history.length());
+        Board board = new Board(history.board());
+        int[] rest = randomLine(board, random, 20);
+        for (int move : rest) {
+            history.play(move);
+        }
+        int[] line = new int[branch + 1 + rest.length];
+        System.arraycopy(main, 0, line, 0, branch);
+        line[branch] = other;
+        System.arraycopy(rest, 0, line, branch + 1, rest.length);
+        List<String> positions = positions(Variant.TABLUT, line);
+        for (int ply : new int[] { line.length, 3, 18, 16, 30, 0, 25 }) {
+            history.seek(Math.min(ply, line.length));
+            assertPosition(positions, history);
+            if (ply < line.length) {
+                assertEquals(line[ply], history.move(ply));
+            }
+        }
+        history.seek(branch);
+        assertArrayEquals(new int[] { main[branch], other },
+                          history.continuations());
+        history.play(main[branch]);
+        assertFalse(history.inVariation());
+        assertEquals(main.length, history.length());
+        history.seek(branch);
+        history.play(other);
+        assertTrue(history.inVariation());
+        assertEquals(line.length, history.length());
+        assertTrue(history.exit());
+        assertFalse(history.inVariation());
+        assertEquals(branch, history.ply());
+        assertFalse(history.exit());
+        positions = positions(Variant.TABLUT, main);
+        history.seek(main.length);
+        assertPosition(positions, history);
+    }
+
+    /** Illegal moves, seeks outside the line and non-positive intervals
+     *  are rejected. */
+    @Test
+    public void rejectsErrors() {
+        GameHistory history = new GameHistory(Variant.BRANDUBH);
+        int[] moves = new int[Board.MAX_MOVES];
+        history.board().legalMoves(Piece.BLACK, moves);
+        history.play(moves[0]);
+        assertThrows(() -> history.play(moves[0]));
+        assertThrows(() -> history.seek(2));
+        assertThrows(() -> history.seek(-1));
+        assertThrows(() -> history.move(1));
+        assertThrows(() -> new GameHistory(Variant.TABLUT, 0));
+        assertEquals(1, history.ply());
+    }
+
+    /** Return the encoded positions (see Board.encodedBoard) of a game of
+     *  VARIANT after each number of MOVES, from 0 to all of them. */
+    private static List<String> positions(Variant variant, int[] moves) {
+        List<String> result = new ArrayList<>();
+        Board board = new Board(variant);
+        result.add(board.encodedBoard());
+        for (int move : moves) {
+            board.makeMove(move);
+            result.add(board.encodedBoard());
+        }
+        return result;
+    }
+
+    /** Return up to N random legal moves made in turn from the position
+     *  on BOARD, which is left after the last of them. */
+    private static int[] randomLine(Board board, SplittableRandom random,
+                                    int n) {
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] line = new int[n];
+        int k = 0;
+        while (k < n && board.winner() == null) {
+            int m = board.legalMoves(board.turn(), moves);
+            if (m == 0) {
+                break;
+            }
+            line[k] = moves[random.nextInt(m)];
+            board.makeMove(line[k]);
+            k += 1;
+        }
+        return Arrays.copyOf(line, k);
+    }
+
+    /** Assert that the board of HISTORY holds the position in POSITIONS
+     *  at its ply. */
+    private static void assertPosition(List<String> positions,
+                                       GameHistory history) {
+        assertEquals("ply " + history.ply(), positions.get(history.ply()),
+                     history.board().encodedBoard());
+    }
+
+    /** Assert that running ACTION throws an IllegalArgumentException. */
+    private static void assertThrows(Runnable action) {
+        try {
+            action.run();
+            fail("no exception");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** A record of one game of Tablut or another Variant: the moves played
+ *  from the initial position (as codes; see Move.code), the final result,
+ *  and the seed and move limit in effect.  Records may be read from and
+ *  written to the text format produced by the --log option of the
+ *  Controller, and to the compact binary format handled by
+ *  GameRecordWriter and GameRecordReader.
+ *  @author Jennifer Tran
+ */
+final class GameRecord {
+
+    /** The four bytes that begin a binary game record file. */
+    static final byte[] MAGIC = { 'T', 'B', 'L', 'R' };
+
+    /** The version of the binary format written by GameRecordWriter.
+     *  Version 1, which had no HAS_VARIANT flag, is still read. */
+    static final int VERSION = 2;
+
+    /** Header flag bits for the binary format.  The low two bits hold the
+     *  result (0 for none, 1 for WHITE, 2 for BLACK). */
+    static final int RESULT_MASK = 3, HAS_SEED = 4, HAS_LIMIT = 8,
+        HAS_VARIANT = 16;
+
+    /** An empty record of standard Tablut: no moves, no result, no seed
+     *  and no limit. */
+    GameRecord() {
+        this(Variant.TABLUT, new int[0], null, null, 0);
+    }
+
+    /** A record of a game of VARIANT with moves whose codes are MOVES,
+     *  with result RESULT (WHITE, BLACK, or null), SEED (or null if none
+     *  was given), and move limit LIMIT (0 if none). */
+    GameRecord(Variant variant, int[] moves, Piece result, Long seed,
+               int limit) {
+        _variant = variant;
+        _moves = moves.clone();
+        _numMoves = moves.length;
+        _result = result;
+        _seed = seed;
+        _limit = limit;
+    }
+
+    /** Return the variant played. */
+    Variant variant() {
+        return _variant;
+    }
+
+    /** Set the variant played to VARIANT. */
+    void setVariant(Variant variant) {
+        _variant = variant;
+    }
+
+    /** Return the number of moves in this game. */
+    int moveCount() {
+        return _numMoves;
+    }
+
+    /** Return the code of move K (numbering from 0) of this game. */
+    int move(int k) {
+        if (k < 0 || k >= _numMoves) {
+            throw new IndexOutOfBoundsException("no move " + k);
+        }
+        return _moves[k];
+    }
+
+    /** Return the codes of the moves of this game, in order. */
+    int[] moves() {
+        return Arrays.copyOf(_moves, _numMoves);
+    }
+
+    /** Append the move whose code is MOVE to this game. */
+    void addMove(int move) {
+        if (_numMoves == _moves.length) {
+            _moves = Arrays.copyOf(_moves, Math.max(16, 2 * _numMoves));
+        }
+        _moves[_numMoves] = move;
+        _numMoves += 1;
+    }
+
+    /** Return the winner of this game, or null if it did not finish. */
+    Piece result() {
+        return _result;
+    }
+
+    /** Set the winner of this game to RESULT. */
+    void setResult(Piece result) {
+        _result = result;
+    }
+
+    /** Return the random seed given for this game, or null if none. */
+    Long seed() {
+        return _seed;
+    }
+
+    /** Set the random seed for this game to SEED (null if none). */
+    void setSeed(Long seed) {
+        _seed = seed;
+    }
+
+    /** Return the move limit for this game, or 0 if there was none. */
+    int limit() {
+        return _limit;
+    }
+
+    /** Set the move limit for this game to LIMIT (0 if none). */
+    void setLimit(int limit) {
+        _limit = limit;
+    }
+
+    /** Return the binary header flags describing this record. */
+    int flags() {
+        return resultCode(_result)
+            | (_seed != null ? HAS_SEED : 0)
+            | (_limit > 0 ? HAS_LIMIT : 0)
+            | (_variant != Variant.TABLUT ? HAS_VARIANT : 0);
+    }
+
+    /** Return the binary code for RESULT. */
+    static int resultCode(Piece result) {
+        return result == WHITE ? 1 : result == BLACK ? 2 : 0;
+    }
+
+    /** Return the result denoted by the binary CODE. */
+    static Piece resultPiece(int code) {
+        switch (code & RESULT_MASK) {
+        case 0:
+            return null;
+        case 1:
+            return WHITE;
+        case 2:
+            return BLACK;
+        default:
+            throw error("bad result code in game record: %d", code);
+        }
+    }
+
+    /** Return a new Board in the final position of this game. */
+    Board replay() {
+        Board board = new Board(_variant);
+        for (int k = 0; k < _numMoves; k += 1) {
+            board.makeMove(_moves[k]);
+        }
+        return board;
+    }
+
+    /** Write this game to OUT in the text format of the game log, in the
+     *  form of commands that reproduce it. */
+    void toLog(PrintStream out) {
+        toLog(out, Variant.TABLUT);
+    }
+
+    /** Write this game to OUT as for toLog(OUT), assuming that a game of
+     *  PREVIOUS has just been started.  As in the Controller, the variant
+     *  holds until changed, so the variant command is written only if my
+     *  variant differs. */
+    private void toLog(PrintStream out, Variant previous) {
+        if (_variant != previous) {
+            out.printf("variant %s%n", _variant.name());
+        }
+        if (_seed != null) {
+            out.printf("seed %d%n", _seed);
+        }
+        if (_limit > 0) {
+            out.printf("limit %d%n", _limit);
+        }
+        Geometry geometry = _variant.geometry();
+        for (int k = 0; k < _numMoves; k += 1) {
+            out.println(geometry.moveName(_moves[k]));
+        }
+    }
+
+    /** Write all of GAMES to OUT as a single game log, separating
+     *  successive games with "new" commands and ending with "quit". */
+    static void toLog(List<GameRecord> games, PrintStream out) {
+        Variant variant = Variant.TABLUT;
+        for (int i = 0; i < games.size(); i += 1) {
+            if (i > 0) {
+                out.println("new");
+            }
+            games.get(i).toLog(out, variant);
+            variant = games.get(i)._variant;
+        }
+        out.println("quit");
+    }
+
+    /** Return the games recorded in the text log read from INP.  Commands
+     *  are interpreted as in Controller: "new" starts a new game, "variant"
+     *  starts a new game of the named variant (which holds until the next
+     *  "variant"), "undo" retracts the last two moves, and illegal or
+     *  misplaced moves (which the Controller logs before rejecting) are
+     *  skipped.  Commands that
+     *  do not affect the game record, including "toggle", are ignored.
+     *  The seed and limit of a game are those given since the previous
+     *  game's last move, so that each game of a log written by toLog gets
+     *  back the values written for it.  The result of each game is found
+     *  by replaying its moves. */
+    static List<GameRecord> parseLog(BufferedReader inp) throws IOException {
+        List<GameRecord> games = new ArrayList<>();
+        LogReader reader = new LogReader(inp);
+        for (GameRecord game = reader.read(); game != null;
+             game = reader.read()) {
+            games.add(game);
+        }
+        return games;
+    }
+
+    /** A source of games, read one at a time. */
+    interface Source extends Closeable {
+
+        /** Return the next game, or null if there are no more. */
+        GameRecord read() throws IOException;
+    }
+
+    /** Return a Source of the games in the file at PATH, which is either a
+     *  text log or a file of binary game records. */
+    static Source open(Path path) throws IOException {
+        if (isBinary(path)) {
+            return new GameRecordReader(path);
+        }
+        return new LogReader(Files.newBufferedReader(path));
+    }
+
+    /** A Source of the games in a text log, parsed as by parseLog.  Each
+     *  game is returned as soon as the command that ends it has been
+     *  read. */
+    static final class LogReader implements Source {
+
+        /** A reader of the games in the log read from INP. */
+        LogReader(BufferedReader inp) {
+            _inp = inp;
+        }
+
+        @Override
+        public GameRecord read() throws IOException {
+            String line;
+            while ((line = _inp.readLine()) != null) {
+                GameRecord finished = interpret(line);
+                if (finished != null) {
+                    return finished;
+                }
+            }
+            GameRecord last = _game;
+            _game = new GameRecord();
+            return last._numMoves > 0 ? last : null;
+        }
+
+        /** Apply the command on LINE to the game being read.  Return the
+         *  game that it ends, if any, and otherwise null. */
+        private GameRecord interpret(String line) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim().toLowerCase();
+            if (line.isEmpty()) {
+                return null;
+            }
+            GameRecord finished = null;
+            int end = wordEnd(line, 0);
+            String arg = line.substring(wordStart(line, end));
+            switch (line.substring(0, end)) {
+            case "new":
+                if (_game._numMoves > 0) {
+                    finished = _game;
+                    _game = new GameRecord(_game._variant, new int[0],
+                                           null, null, 0);
+                }
+                _board.init();
+                break;
+            case "variant":
+                Variant variant =
+                    !arg.isEmpty() && wordEnd(arg, 0) == arg.length()
+                    ? Variant.named(arg) : null;
+                if (variant != null) {
+                    if (_game._numMoves > 0) {
+                        finished = _game;
+                        _game = new GameRecord();
+                    }
+                    _game._variant = variant;
+                    _board = new Board(variant);
+                }
+                break;
+            case "quit":
+                break;
+            case "seed":
+                if (isNumeral(arg)) {
+                    try {
+                        _game._seed = Long.parseLong(arg);
+                    } catch (NumberFormatException excp) {
+                        /* Too large: rejected by the Controller too. */
+                    }
+                }
+                break;
+            case "limit":
+                if (isNumeral(arg)) {
+                    try {
+                        _game._limit = Integer.parseInt(arg);
+                    } catch (NumberFormatException excp) {
+                        /* Too large: rejected by the Controller too. */
+                    }
+                }
+                break;
+            case "undo":
+                if (_game._numMoves > 1) {
+                    _game._numMoves -= 2;
+                    _board = _game.replay();
+                    _game._result = _board.winner();
+                }
+                break;
+            default:
+                int move = _board.geometry().parseMove(line);
+                if (move >= 0 && _board.winner() == null
+                    && _board.isLegal(Move.from(move), Move.to(move))) {
+                    _board.makeMove(move);
+                    _game.addMove(move);
+                    _game._result = _board.winner();
+                }
+                break;
+            }
+            return finished;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _inp.close();
+        }
+
+        /** The log. */
+        private final BufferedReader _inp;
+        /** The game being read. */
+        private GameRecord _game = new GameRecord();
+        /** The position reached in _game. */
+        private Board _board = new Board();
+    }
+
+    /** Return true iff the file at PATH begins with MAGIC. */
+    static boolean isBinary(Path path) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        try (InputStream inp = Files.newInputStream(path)) {
+            if (inp.readNBytes(head, 0, head.length) != head.length) {
+                return false;
+            }
+        }
+        return Arrays.equals(head, MAGIC);
+    }
+
+    /** Convert the game file ARGS[0] to the other format, writing the
+     *  result to ARGS[1]: text logs become binary records, and binary
+     *  records become text logs. */
+    public static void main(String... args) {
+        if (args.length != 2) {
+            fatal("Usage: java tablut.GameRecord INPUT OUTPUT%n");
+        }
+        Path inp = Paths.get(args[0]), out = Paths.get(args[1]);
+        try {
+            if (isBinary(inp)) {
+                List<GameRecord> games = new ArrayList<>();
+                try (GameRecordReader reader = new GameRecordReader(inp)) {
+                    while (reader.next()) {
+                        games.add(reader.record());
+                    }
+                }
+                try (PrintStream log = new PrintStream(out.toFile())) {
+                    toLog(games, log);
+                }
+            } else {
+                try (BufferedReader log = Files.newBufferedReader(inp);
+                     GameRecordWriter writer = new GameRecordWriter(out)) {
+                    for (GameRecord game : parseLog(log)) {
+                        writer.write(game);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            fatal("Could not convert %s: %s%n", inp, excp.getMessage());
+        } catch (IllegalArgumentException excp) {
+            fatal("Bad game file %s: %s%n", inp, excp.getMessage());
+        }
+    }
+
+    /** The variant played. */
+    private Variant _variant;
+    /** The codes of the moves played, in _moves[0 .. _numMoves-1]. */
+    private int[] _moves;
+    /** The number of moves played. */
+    private int _numMoves;
+    /** The winner, or null if none. */
+    private Piece _result;
+    /** The random seed used, or null if none was given. */
+    private Long _seed;
+    /** The move limit, or 0 if none. */
+    private int _limit;
+}
@@ -0,0 +1,209 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.READ;
+import static tablut.Utils.*;
+
+/** A reader of the binary game records written by GameRecordWriter.  The
+ *  file is memory-mapped, and records are read in place: next() advances
+ *  to the following record, after which its header fields and moves may be
+ *  queried without copying.  Use record() to obtain a GameRecord that
+ *  outlives the current position of the reader.
+ *  @author Jennifer Tran
+ */
+class GameRecordReader implements GameRecord.Source {
+
+    /** A reader of the binary game record file at PATH. */
+    GameRecordReader(Path path) throws IOException {
+        _channel = FileChannel.open(path, READ);
+        if (_channel.size() > Integer.MAX_VALUE) {
+            _channel.close();
+            throw error("game record file too large to map: %s", path);
+        }
+        _data = _channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                             _channel.size());
+        try {
+            checkHeader(path);
+        } catch (IllegalArgumentException excp) {
+            _channel.close();
+            throw excp;
+        }
+        _movesStart = _data.position();
+    }
+
+    /** Check and skip over the file header of _data, which was read from
+     *  PATH. */
+    private void checkHeader(Path path) {
+        byte[] magic = new byte[GameRecord.MAGIC.length];
+        if (_data.remaining() < magic.length + 1) {
+            throw error("not a game record file: %s", path);
+        }
+        _data.get(magic);
+        for (int i = 0; i < magic.length; i += 1) {
+            if (magic[i] != GameRecord.MAGIC[i]) {
+                throw error("not a game record file: %s", path);
+            }
+        }
+        int version = _data.get();
+        if (version < 1 || version > GameRecord.VERSION) {
+            throw error("unsupported game record version: %d", version);
+        }
+    }
+
+    /** Advance to the next record, returning false if there are no
+     *  more. */
+    boolean next() {
+        _data.position(_movesStart + 2 * _moveCount);
+        if (!_data.hasRemaining()) {
+            _moveCount = 0;
+            return false;
+        }
+        try {
+            _flags = _data.get() & 0xff;
+            _seed = (_flags & GameRecord.HAS_SEED) != 0 ? _data.getLong() : 0;
+            _limit = (_flags & GameRecord.HAS_LIMIT) != 0 ? getVarint() : 0;
+            _variant = (_flags & GameRecord.HAS_VARIANT) != 0 ? getVariant()
+                : Variant.TABLUT;
+            _moveCount = getVarint();
+        } catch (BufferUnderflowException excp) {
+            throw error("truncated game record");
+        }
+        _movesStart = _data.position();
+        if (_data.remaining() < 2 * _moveCount) {
+            throw error("truncated game record");
+        }
+        return true;
+    }
+
+    /** Return the winner of the current game, or null if none. */
+    Piece result() {
+        return GameRecord.resultPiece(_flags);
+    }
+
+    /** Return true iff the current game has a recorded seed. */
+    boolean hasSeed() {
+        return (_flags & GameRecord.HAS_SEED) != 0;
+    }
+
+    /** Return the seed of the current game (0 if none). */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the move limit of the current game (0 if none). */
+    int limit() {
+        return _limit;
+    }
+
+    /** Return the variant of the current game. */
+    Variant variant() {
+        return _variant;
+    }
+
+    /** Return the number of moves in the current game. */
+    int moveCount() {
+        return _moveCount;
+    }
+
+    /** Return the index of the from-square of move K of the current
+     *  game. */
+    int fromIndex(int k) {
+        return _data.get(_movesStart + 2 * k) & 0xff;
+    }
+
+    /** Return the index of the to-square of move K of the current game. */
+    int toIndex(int k) {
+        return _data.get(_movesStart + 2 * k + 1) & 0xff;
+    }
+
+    /** Return the code (see Move.code) of move K (numbering from 0) of
+     *  the current game. */
+    int move(int k) {
+        if (k < 0 || k >= _moveCount) {
+            throw new IndexOutOfBoundsException("no move " + k);
+        }
+        int from = fromIndex(k), to = toIndex(k);
+        Geometry geometry = _variant.geometry();
+        if (from >= geometry.numSquares() || to >= geometry.numSquares()) {
+            throw error("bad square index in game record");
+        }
+        if (from == to || geometry.col(from) != geometry.col(to)
+            && geometry.row(from) != geometry.row(to)) {
+            throw error("bad move in game record");
+        }
+        return Move.code(from, to);
+    }
+
+    /** Return a copy of the current game as a GameRecord. */
+    GameRecord record() {
+        GameRecord game = new GameRecord();
+        game.setVariant(_variant);
+        for (int k = 0; k < _moveCount; k += 1) {
+            game.addMove(move(k));
+        }
+        game.setResult(result());
+        game.setSeed(hasSeed() ? _seed : null);
+        game.setLimit(_limit);
+        return game;
+    }
+
+    /** Advance to the next record and return a copy of it, or return
+     *  null if there are no more. */
+    @Override
+    public GameRecord read() {
+        return next() ? record() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Read and return a variant name from the current position of _data,
+     *  returning the variant it names. */
+    private Variant getVariant() {
+        byte[] name = new byte[_data.get() & 0xff];
+        _data.get(name);
+        Variant result = Variant.named(new String(name, US_ASCII));
+        if (result == null) {
+            throw error("unknown variant in game record");
+        }
+        return result;
+    }
+
+    /** Read and return a varint from the current position of _data. */
+    private int getVarint() {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = _data.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw error("bad varint in game record");
+    }
+
+    /** The file being read. */
+    private final FileChannel _channel;
+    /** The contents of _channel. */
+    private final MappedByteBuffer _data;
+    /** Header flags of the current record. */
+    private int _flags;
+    /** Seed of the current record (0 if none). */
+    private long _seed;
+    /** Move limit of the current record. */
+    private int _limit;
+    /** Variant of the current record. */
+    private Variant _variant = Variant.TABLUT;
+    /** Number of moves in the current record. */
+    private int _moveCount;
+    /** Position in _data of the first move of the current record. */
+    private int _movesStart;
+}
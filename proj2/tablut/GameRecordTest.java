@@ -0,0 +1,239 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the text and binary formats of GameRecord.
+ *  @author Jennifer Tran
+ */
+public class GameRecordTest {
+
+    /** Number of random games in each round trip. */
+    static final int GAMES = 300;
+
+    /** The variants of the random games. */
+    static final Variant[] VARIANTS = {
+        Variant.TABLUT, Variant.BRANDUBH, Variant.HNEFATAFL
+    };
+
+    /** Random games come back unchanged from the text log format. */
+    @Test
+    public void textRoundTrip() throws IOException {
+        List<GameRecord> games = randomGames(new SplittableRandom(1));
+        assertGamesEqual(games, fromText(toText(games)));
+    }
+
+    /** Random games come back unchanged from the binary format. */
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        List<GameRecord> games = randomGames(new SplittableRandom(2));
+        assertGamesEqual(games, fromBinary(games));
+    }
+
+    /** Games converted from text to binary and back to text are
+     *  unchanged. */
+    @Test
+    public void textBinaryRoundTrip() throws IOException {
+        List<GameRecord> games = randomGames(new SplittableRandom(3));
+        List<GameRecord> copy = fromText(toText(fromBinary(games)));
+        assertGamesEqual(games, copy);
+        assertEquals(toText(games), toText(copy));
+    }
+
+    /** parseLog interprets "undo", "new" and "variant", skips illegal
+     *  moves and unknown commands, and applies seed and limit commands
+     *  only to the game they precede. */
+    @Test
+    public void parseLogCommands() throws IOException {
+        List<GameRecord> games = fromText(String.join("\n",
+            "seed 12", "limit 30", "a4-c", "toggle e3", "e7-3", "e3-c",
+            "d1-3", "undo", "e3-c", "new", "quit", "  A4-C  # comment",
+            "seed 99999999999999999999", "limit -1", "bogus",
+            "variant brandubh", "d2-c", "variant nonesuch", "new",
+            "k4-j", "a4-3", "variant hnefatafl", "k4-j"));
+        Geometry nine = Variant.TABLUT.geometry(),
+            seven = Variant.BRANDUBH.geometry(),
+            eleven = Variant.HNEFATAFL.geometry();
+        assertEquals(5, games.size());
+        GameRecord first = games.get(0), second = games.get(1);
+        assertArrayEquals(new int[] {
+                nine.parseMove("a4-c"), nine.parseMove("e3-c") },
+            first.moves());
+        assertEquals(Long.valueOf(12), first.seed());
+        assertEquals(30, first.limit());
+        assertArrayEquals(new int[] { nine.parseMove("a4-c") },
+                          second.moves());
+        assertNull(second.seed());
+        assertEquals(0, second.limit());
+        assertEquals(Variant.TABLUT, second.variant());
+        assertEquals(Variant.BRANDUBH, games.get(2).variant());
+        assertArrayEquals(new int[] { seven.parseMove("d2-c") },
+                          games.get(2).moves());
+        assertEquals(Variant.BRANDUBH, games.get(3).variant());
+        assertArrayEquals(new int[] { seven.parseMove("a4-3") },
+                          games.get(3).moves());
+        assertEquals(Variant.HNEFATAFL, games.get(4).variant());
+        assertArrayEquals(new int[] { eleven.parseMove("k4-j") },
+                          games.get(4).moves());
+    }
+
+    /** parseLog separates a command from its argument by any run of
+     *  whitespace, and ignores seed and limit commands whose argument is
+     *  not a number, and variant commands with more than one argument. */
+    @Test
+    public void parseLogArguments() throws IOException {
+        List<GameRecord> games = fromText(String.join("\n",
+            "seed\t 7", "limit 12x", "limit   40", "a4-c",
+            "variant brandubh extra", "variant\tbrandubh", "seed -3",
+            "d2-c"));
+        assertEquals(2, games.size());
+        GameRecord first = games.get(0), second = games.get(1);
+        assertEquals(Variant.TABLUT, first.variant());
+        assertEquals(Long.valueOf(7), first.seed());
+        assertEquals(40, first.limit());
+        assertEquals(Variant.BRANDUBH, second.variant());
+        assertNull(second.seed());
+        assertArrayEquals(new int[] {
+                Variant.BRANDUBH.geometry().parseMove("d2-c") },
+            second.moves());
+    }
+
+    /** A LogReader returns each game as soon as the command that ends it
+     *  has been read, without reading any further. */
+    @Test
+    public void logReaderStreams() throws IOException {
+        String text = "a4-c\nnew\n";
+        Reader log = new Reader() {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                if (_pos == text.length()) {
+                    throw new IOException("read past the first game");
+                }
+                buf[off] = text.charAt(_pos);
+                _pos += 1;
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            /** Number of characters read so far. */
+            private int _pos;
+        };
+        GameRecord.LogReader reader =
+            new GameRecord.LogReader(new BufferedReader(log));
+        GameRecord game = reader.read();
+        assertArrayEquals(new int[] {
+                Variant.TABLUT.geometry().parseMove("a4-c") },
+            game.moves());
+        try {
+            reader.read();
+            fail("read the rest of the log");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Return GAMES random games, each of a random variant, with a
+     *  random number of moves, a seed and limit or none, and the result of
+     *  playing its moves.  Runs of games of the same variant are
+     *  common. */
+    static List<GameRecord> randomGames(SplittableRandom random) {
+        List<GameRecord> games = new ArrayList<>();
+        int[] moves = new int[Board.MAX_MOVES];
+        Variant variant = Variant.TABLUT;
+        for (int g = 0; g < GAMES; g += 1) {
+            if (random.nextInt(4) == 0) {
+                variant = VARIANTS[random.nextInt(VARIANTS.length)];
+            }
+            Board board = new Board(variant);
+            GameRecord game = new GameRecord();
+            game.setVariant(variant);
+            int length = 1 + random.nextInt(300);
+            while (game.moveCount() < length && board.winner() == null) {
+                int k = board.legalMoves(board.turn(), moves);
+                if (k == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(k)];
+                board.makeMove(move);
+                game.addMove(move);
+            }
+            game.setResult(board.winner());
+            if (random.nextBoolean()) {
+                game.setSeed(random.nextLong(Long.MAX_VALUE));
+            }
+            if (random.nextBoolean()) {
+                game.setLimit(1 + random.nextInt(1 << 20));
+            }
+            games.add(game);
+        }
+        return games;
+    }
+
+    /** Return GAMES written as a text log. */
+    static String toText(List<GameRecord> games) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        GameRecord.toLog(games, out);
+        out.close();
+        return bytes.toString();
+    }
+
+    /** Return the games in the text log LOG. */
+    static List<GameRecord> fromText(String log) throws IOException {
+        return GameRecord.parseLog(new BufferedReader(new StringReader(log)));
+    }
+
+    /** Return the games read back after writing GAMES to a binary
+     *  file. */
+    static List<GameRecord> fromBinary(List<GameRecord> games)
+        throws IOException {
+        Path file = Files.createTempFile("games", ".tblr");
+        try {
+            try (GameRecordWriter writer = new GameRecordWriter(file)) {
+                for (GameRecord game : games) {
+                    writer.write(game);
+                }
+                assertEquals(games.size(), writer.count());
+            }
+            List<GameRecord> result = new ArrayList<>();
+            try (GameRecordReader reader = new GameRecordReader(file)) {
+                while (reader.next()) {
+                    result.add(reader.record());
+                }
+            }
+            return result;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Assert that ACTUAL has the same games as EXPECTED. */
+    static void assertGamesEqual(List<GameRecord> expected,
+                                 List<GameRecord> actual) {
+        assertEquals("number of games", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i += 1) {
+            GameRecord e = expected.get(i), a = actual.get(i);
+            String game = "game " + i;
+            assertEquals(game + " variant", e.variant(), a.variant());
+            assertArrayEquals(game + " moves", e.moves(), a.moves());
+            assertEquals(game + " result", e.result(), a.result());
+            assertEquals(game + " seed", e.seed(), a.seed());
+            assertEquals(game + " limit", e.limit(), a.limit());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.*;
+
+/** A streaming writer of binary game records.  A file consists of the
+ *  bytes of GameRecord.MAGIC and a version byte, followed by any number of
+ *  records, each of which has the form
+ *  <pre>
+ *      flags         1 byte: result and which optional fields follow
+ *      seed          8 bytes, big-endian (present iff HAS_SEED)
+ *      limit         varint (present iff HAS_LIMIT)
+ *      variant       1 byte of length, then the ASCII name (present iff
+ *                    HAS_VARIANT; otherwise the variant is standard Tablut)
+ *      move count    varint
+ *      moves         2 bytes per move: from-square and to-square index
+ *  </pre>
+ *  Varints are unsigned LEB128: seven bits per byte, least significant
+ *  group first, with the high bit set on all but the last byte.  Output is
+ *  accumulated in a direct buffer and handed to the file's channel only
+ *  when the buffer fills or the writer is flushed or closed.
+ *  @author Jennifer Tran
+ */
+class GameRecordWriter implements Closeable {
+
+    /** Size of the output buffer in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A writer that creates (or truncates) the file at PATH and writes
+     *  the file header to it. */
+    GameRecordWriter(Path path) throws IOException {
+        _channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING);
+        _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _buffer.put(GameRecord.MAGIC);
+        _buffer.put((byte) GameRecord.VERSION);
+    }
+
+    /** Append GAME to my file. */
+    void write(GameRecord game) throws IOException {
+        int flags = game.flags();
+        ensure(1 + 8 + 5);
+        _buffer.put((byte) flags);
+        if ((flags & GameRecord.HAS_SEED) != 0) {
+            _buffer.putLong(game.seed());
+        }
+        if ((flags & GameRecord.HAS_LIMIT) != 0) {
+            putVarint(game.limit());
+        }
+        if ((flags & GameRecord.HAS_VARIANT) != 0) {
+            byte[] name = game.variant().name().getBytes(US_ASCII);
+            ensure(1 + name.length);
+            _buffer.put((byte) name.length);
+            _buffer.put(name);
+        }
+        ensure(5);
+        putVarint(game.moveCount());
+        for (int k = 0; k < game.moveCount(); k += 1) {
+            int move = game.move(k);
+            ensure(2);
+            _buffer.put((byte) Move.from(move));
+            _buffer.put((byte) Move.to(move));
+        }
+        _count += 1;
+    }
+
+    /** Return the number of games written so far. */
+    int count() {
+        return _count;
+    }
+
+    /** Write any buffered output to my file. */
+    void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_channel.isOpen()) {
+            flush();
+            _channel.close();
+        }
+    }
+
+    /** Make sure there is room for at least N more bytes in my buffer,
+     *  flushing it if necessary. */
+    private void ensure(int n) throws IOException {
+        if (_buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    /** Append the non-negative VALUE to my buffer as a varint. */
+    private void putVarint(int value) {
+        assert value >= 0;
+        while ((value & ~0x7f) != 0) {
+            _buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        _buffer.put((byte) value);
+    }
+
+    /** The file being written. */
+    private final FileChannel _channel;
+    /** Output not yet written to _channel. */
+    private final ByteBuffer _buffer;
+    /** Number of records written. */
+    private int _count;
+}
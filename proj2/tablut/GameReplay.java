@@ -0,0 +1,353 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static tablut.Utils.*;
+
+/** A pipeline that replays every game in a directory of game files (text
+ *  logs or binary game records) and extracts the positions reached.  Each
+ *  file is parsed by its own reader task; the games it contains are
+ *  handed to a pool of workers that replay them with Board.makeMove.
+ *  Positions are delivered to a sink either in file and game order, or in
+ *  whatever order the workers finish.  At most twice as many games of each
+ *  file as there are workers are being replayed or waiting for delivery
+ *  at once, so that memory use does not grow with the size of the
+ *  archive.
+ *  @author Jennifer Tran
+ */
+class GameReplay {
+
+    /** One position reached in an archived game. */
+    static final class Position {
+
+        /** The position at ply PLY of game number GAME of FILE, which is
+         *  a game of VARIANT, whose encoded contents (as for
+         *  Board.encodedBoard) are BOARD, and whose game was won by OUTCOME
+         *  (null if unfinished). */
+        Position(Path file, int game, Variant variant, int ply,
+                 String board, Piece outcome) {
+            _file = file;
+            _game = game;
+            _variant = variant;
+            _ply = ply;
+            _board = board;
+            _outcome = outcome;
+        }
+
+        /** Return the file containing my game. */
+        Path file() {
+            return _file;
+        }
+
+        /** Return the number of my game within file(), from 0. */
+        int game() {
+            return _game;
+        }
+
+        /** Return the variant of my game. */
+        Variant variant() {
+            return _variant;
+        }
+
+        /** Return the number of moves made to reach me. */
+        int moveCount() {
+            return _ply;
+        }
+
+        /** Return the side to move in this position. */
+        Piece turn() {
+            return _board.charAt(0) == 'W' ? Piece.WHITE : Piece.BLACK;
+        }
+
+        /** Return the encoded board, as for Board.encodedBoard. */
+        String board() {
+            return _board;
+        }
+
+        /** Return the winner of my game, or null if it was unfinished. */
+        Piece outcome() {
+            return _outcome;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d %s", _board, _ply,
+                                 _outcome == null ? "-" : _outcome);
+        }
+
+        /** The file containing my game. */
+        private final Path _file;
+        /** The number of my game in _file. */
+        private final int _game;
+        /** The variant of my game. */
+        private final Variant _variant;
+        /** My move number. */
+        private final int _ply;
+        /** My encoded contents. */
+        private final String _board;
+        /** The result of my game. */
+        private final Piece _outcome;
+    }
+
+    /** A pipeline using THREADS replay workers, which delivers positions
+     *  in order iff ORDERED. */
+    GameReplay(int threads, boolean ordered) {
+        if (threads <= 0) {
+            throw error("need at least one replay thread");
+        }
+        _threads = threads;
+        _ordered = ordered;
+    }
+
+    /** Replay all game files in DIR, passing every position to SINK, and
+     *  return the number of positions.  SINK is never called concurrently
+     *  from more than one thread. */
+    long replay(Path dir, Consumer<Position> sink) throws IOException {
+        return replay(gameFiles(dir), sink);
+    }
+
+    /** Replay all games in FILES, passing every position to SINK, and
+     *  return the number of positions.  SINK is never called concurrently
+     *  from more than one thread.  Replays may run concurrently on the
+     *  same GameReplay. */
+    long replay(List<Path> files, Consumer<Position> sink)
+        throws IOException {
+        ExecutorService readers =
+            Executors.newFixedThreadPool(Math.min(_threads, files.size() + 1));
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        Delivery delivery = new Delivery(sink);
+        try {
+            List<BlockingQueue<Future<List<Position>>>> queues =
+                new ArrayList<>();
+            List<Future<?>> fileTasks = new ArrayList<>();
+            for (Path file : files) {
+                BlockingQueue<Future<List<Position>>> queue =
+                    new ArrayBlockingQueue<>(2 * _threads);
+                queues.add(queue);
+                fileTasks.add(readers.submit(
+                    () -> readFile(file, workers, queue, delivery)));
+            }
+            for (int f = 0; f < files.size(); f += 1) {
+                BlockingQueue<Future<List<Position>>> queue = queues.get(f);
+                while (true) {
+                    Future<List<Position>> game = take(queue);
+                    if (game == END_OF_FILE) {
+                        break;
+                    }
+                    List<Position> positions = await(game);
+                    if (_ordered) {
+                        delivery.deliver(positions);
+                    }
+                }
+                await(fileTasks.get(f));
+            }
+        } finally {
+            readers.shutdownNow();
+            workers.shutdownNow();
+        }
+        return delivery.count();
+    }
+
+    /** Read the games in FILE one at a time, submitting a replay of each
+     *  to WORKERS as soon as it is read and putting the resulting tasks on
+     *  QUEUE in game order, followed by END_OF_FILE.  Waits whenever QUEUE
+     *  is full, so the number of games of FILE read but not yet replayed
+     *  is bounded by its capacity.  Unless positions are ordered, each
+     *  task passes its positions to DELIVERY itself. */
+    private Void readFile(Path file, ExecutorService workers,
+                          BlockingQueue<Future<List<Position>>> queue,
+                          Delivery delivery)
+        throws IOException, InterruptedException {
+        try (GameRecord.Source games = GameRecord.open(file)) {
+            GameRecord next;
+            for (int g = 0; (next = games.read()) != null; g += 1) {
+                GameRecord game = next;
+                int num = g;
+                queue.put(workers.submit(
+                    () -> replayGame(file, num, game, delivery)));
+            }
+        } finally {
+            queue.put(END_OF_FILE);
+        }
+        return null;
+    }
+
+    /** Return the next element of QUEUE, waiting for one if needed. */
+    private static <T> T take(BlockingQueue<T> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("replay interrupted");
+        }
+    }
+
+    /** Return the games in FILE, which is either a text log or a file of
+     *  binary game records. */
+    static List<GameRecord> readGames(Path file) throws IOException {
+        List<GameRecord> games = new ArrayList<>();
+        try (GameRecord.Source source = GameRecord.open(file)) {
+            for (GameRecord game = source.read(); game != null;
+                 game = source.read()) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
+    /** Return the game files in DIR, in order of their names. */
+    static List<Path> gameFiles(Path dir) throws IOException {
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.filter(Files::isRegularFile).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Replay GAME, which is game NUM of FILE.  If positions are ordered,
+     *  return its positions.  Otherwise, pass them to DELIVERY and return
+     *  an empty list. */
+    private List<Position> replayGame(Path file, int num, GameRecord game,
+                                      Delivery delivery) {
+        List<Position> result = positions(file, num, game);
+        if (_ordered) {
+            return result;
+        }
+        delivery.deliver(result);
+        return Collections.emptyList();
+    }
+
+    /** Return the positions in GAME, which is game NUM of FILE: the
+     *  position before each move followed by the final position. */
+    private static List<Position> positions(Path file, int num,
+                                            GameRecord game) {
+        List<Position> result = new ArrayList<>(game.moveCount() + 1);
+        Variant variant = game.variant();
+        Board board = new Board(variant);
+        Piece outcome = game.result();
+        int ply;
+        for (ply = 0; ply < game.moveCount(); ply += 1) {
+            result.add(new Position(file, num, variant, ply,
+                                    board.encodedBoard(), outcome));
+            board.makeMove(game.move(ply));
+        }
+        result.add(new Position(file, num, variant, ply,
+                                board.encodedBoard(), outcome));
+        return result;
+    }
+
+    /** The sink of one replay, with a count of the positions passed to
+     *  it. */
+    private static final class Delivery {
+
+        /** A delivery to SINK. */
+        Delivery(Consumer<Position> sink) {
+            _sink = sink;
+        }
+
+        /** Pass all of POSITIONS to my sink, one thread at a time. */
+        synchronized void deliver(List<Position> positions) {
+            for (Position posn : positions) {
+                _sink.accept(posn);
+            }
+            _count += positions.size();
+        }
+
+        /** Return the number of positions delivered so far. */
+        synchronized long count() {
+            return _count;
+        }
+
+        /** The sink. */
+        private final Consumer<Position> _sink;
+        /** Number of positions delivered. */
+        private long _count;
+    }
+
+    /** Return the value of TASK, waiting for it if needed, and converting
+     *  failures to unchecked exceptions. */
+    static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("replay interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Replay the games in directory ARGS[0], reporting the number of
+     *  positions and the rate at which they were produced.  If ARGS[1] is
+     *  present, it is the number of replay threads (default: one per
+     *  processor).  If ARGS[2] is present, the positions are written to
+     *  that file, in order. */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 3) {
+            usage();
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) {
+            try {
+                threads = Integer.parseInt(args[1]);
+            } catch (NumberFormatException excp) {
+                usage();
+            }
+            if (threads <= 0) {
+                usage();
+            }
+        }
+        try {
+            PrintStream out = args.length > 2 ? new PrintStream(args[2])
+                : null;
+            GameReplay replay = new GameReplay(threads, out != null);
+            long start = System.nanoTime();
+            long n = replay.replay(Paths.get(args[0]),
+                                   out == null ? p -> { } : out::println);
+            double secs = (System.nanoTime() - start) * 1e-9;
+            if (out != null) {
+                out.close();
+            }
+            System.out.printf("%d positions in %.3f s (%.0f/s)%n",
+                              n, secs, n / secs);
+        } catch (IOException excp) {
+            fatal("Replay failed: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        fatal("Usage: java tablut.GameReplay DIR [THREADS [OUTPUT]]%n");
+    }
+
+    /** Number of replay workers. */
+    private final int _threads;
+    /** True iff positions are delivered in file and game order. */
+    private final boolean _ordered;
+
+    /** Marks the end of the games of a file in its queue. */
+    private static final Future<List<Position>> END_OF_FILE =
+        CompletableFuture.completedFuture(Collections.emptyList());
+}
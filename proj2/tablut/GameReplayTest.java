@@ -0,0 +1,118 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of GameReplay.
+ *  @author Jennifer Tran
+ */
+public class GameReplayTest {
+
+    /** Number of files in the test archive (alternately binary and
+     *  text). */
+    static final int FILES = 4;
+
+    /** Positions replayed in order by several workers come out exactly
+     *  as they do from a single worker, and as many come out in any
+     *  order. */
+    @Test
+    public void orderedMatchesSequential() throws IOException {
+        Path dir = archive();
+        try {
+            List<String> expected = replay(new GameReplay(1, true), dir);
+            assertEquals(expected, replay(new GameReplay(4, true), dir));
+            List<String> unordered = replay(new GameReplay(4, false), dir);
+            Collections.sort(expected);
+            Collections.sort(unordered);
+            assertEquals(expected, unordered);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Concurrent replays on the same GameReplay each see and count only
+     *  their own positions. */
+    @Test
+    public void concurrentReplays() throws Exception {
+        Path dir = archive();
+        try {
+            GameReplay replay = new GameReplay(2, true);
+            List<Path> files = GameReplay.gameFiles(dir);
+            long all = replay.replay(files, p -> { });
+            long first = replay.replay(files.subList(0, 1), p -> { });
+            CompletableFuture<Long> a = CompletableFuture.supplyAsync(
+                () -> replayQuietly(replay, files));
+            CompletableFuture<Long> b = CompletableFuture.supplyAsync(
+                () -> replayQuietly(replay, files.subList(0, 1)));
+            assertEquals(all, (long) a.get());
+            assertEquals(first, (long) b.get());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Return a new directory holding FILES game files of random games,
+     *  alternately binary records and text logs. */
+    static Path archive() throws IOException {
+        Path dir = Files.createTempDirectory("replay");
+        SplittableRandom random = new SplittableRandom(5);
+        for (int f = 0; f < FILES; f += 1) {
+            List<GameRecord> games = GameRecordTest.randomGames(random);
+            Path file = dir.resolve("games" + f);
+            if (f % 2 == 0) {
+                try (GameRecordWriter writer = new GameRecordWriter(file)) {
+                    for (GameRecord game : games) {
+                        writer.write(game);
+                    }
+                }
+            } else {
+                try (PrintStream log = new PrintStream(file.toFile())) {
+                    GameRecord.toLog(games, log);
+                }
+            }
+        }
+        return dir;
+    }
+
+    /** Return the printed forms of the positions delivered by REPLAY from
+     *  the games in DIR, in the order of delivery, checking that their
+     *  number is the one REPLAY returns. */
+    static List<String> replay(GameReplay replay, Path dir)
+        throws IOException {
+        List<String> result = new ArrayList<>();
+        long n = replay.replay(dir, posn -> result.add(posn.toString()));
+        assertEquals(result.size(), n);
+        return result;
+    }
+
+    /** Return REPLAY.replay(FILES, ...), discarding the positions, with
+     *  IOExceptions made unchecked. */
+    private static long replayQuietly(GameReplay replay, List<Path> files) {
+        try {
+            return replay.replay(files, p -> { });
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Delete DIR and the files in it. */
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
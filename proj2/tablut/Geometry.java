@@ -0,0 +1,317 @@
+package tablut;
+
+import static tablut.Utils.*;
+
+/** The geometry of a square tafl board of a given size, described in
+ *  terms of square indices.  Squares are numbered as for Square: index
+ *  ROW * SIZE + COL, with 0 at the lower-left corner.  Directions are
+ *  numbered as for Square.rookMove: 0 for north, 1 for east, 2 for south
+ *  and 3 for west.  Tables use -1 to denote a position off the board.
+ *  There is one Geometry for each size, obtained with the factory method
+ *  of, and its tables are shared by all boards of that size.
+ *  @author Jennifer Tran
+ */
+final class Geometry {
+
+    /** The largest supported board size.  Columns are designated by the
+     *  letters a-m and square indices fit in a byte. */
+    static final int MAX_SIZE = 13;
+
+    /** The smallest supported board size. */
+    static final int MIN_SIZE = 5;
+
+    /** The number of squares on the largest board. */
+    static final int MAX_SQUARES = MAX_SIZE * MAX_SIZE;
+
+    /** The number of symmetries of a square board: the rotations and
+     *  reflections (the dihedral group of order 8).  Symmetry S first
+     *  transposes the board (swaps columns and rows) iff bit 2 of S is set,
+     *  then reverses the columns iff bit 0 is set and the rows iff bit 1
+     *  is.  Symmetry 0 is the identity. */
+    static final int NUM_SYMMETRIES = 8;
+
+    /** Return the symmetry that undoes symmetry S.  The reflections are
+     *  their own inverses; a transposition followed by reversals becomes
+     *  the same transposition preceded by them, which swaps which of the
+     *  reversals applies to columns and which to rows. */
+    static int inverse(int s) {
+        if ((s & 4) == 0) {
+            return s;
+        }
+        return 4 | (s & 1) << 1 | (s & 2) >> 1;
+    }
+
+    /** Return the (unique) Geometry of a board with SIZE squares on a
+     *  side. */
+    static Geometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw error("unsupported board size: %d", size);
+        }
+        synchronized (GEOMETRIES) {
+            if (GEOMETRIES[size] == null) {
+                GEOMETRIES[size] = new Geometry(size);
+            }
+            return GEOMETRIES[size];
+        }
+    }
+
+    /** Return the number of squares on a side. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the total number of squares. */
+    int numSquares() {
+        return _size * _size;
+    }
+
+    /** Return the index of the square at COL ROW, which must exist. */
+    int index(int col, int row) {
+        return row * _size + col;
+    }
+
+    /** Return the column of the square with index INDEX. */
+    int col(int index) {
+        return index % _size;
+    }
+
+    /** Return the row of the square with index INDEX. */
+    int row(int index) {
+        return index / _size;
+    }
+
+    /** Return true iff COL ROW is on the board. */
+    boolean exists(int col, int row) {
+        return col >= 0 && row >= 0 && col < _size && row < _size;
+    }
+
+    /** Return the table of neighbors: neighbor()[i][d] is the index of the
+     *  square adjacent to square i in direction d, or -1. */
+    int[][] neighbor() {
+        return _neighbor;
+    }
+
+    /** Return the table of capture partners: anvil()[i][d] is the index of
+     *  the square two steps from square i in direction d, or -1. */
+    int[][] anvil() {
+        return _anvil;
+    }
+
+    /** Return the table of rays: ray()[i][d] lists the indices of the
+     *  squares in direction d from square i, nearest first. */
+    int[][][] ray() {
+        return _ray;
+    }
+
+    /** Return the table of line masks: lineMask()[i][d] has bit k set iff
+     *  the square in position k of the line through square i in direction
+     *  d is in the ray from i in that direction.  For north and south
+     *  (even d) the line is i's column and position k is row k; for east
+     *  and west it is i's row and position k is column k. */
+    int[][] lineMask() {
+        return _lineMask;
+    }
+
+    /** Return the table of columns: columns()[i] == col(i). */
+    int[] columns() {
+        return _columns;
+    }
+
+    /** Return the table of rows: rows()[i] == row(i). */
+    int[] rows() {
+        return _rows;
+    }
+
+    /** Return the table of edges: edge()[i] is true iff square i is on the
+     *  edge of the board. */
+    boolean[] edge() {
+        return _edge;
+    }
+
+    /** Return the table of corners: corner()[i] is true iff square i is a
+     *  corner of the board. */
+    boolean[] corner() {
+        return _corner;
+    }
+
+    /** Return the table of symmetries: symmetry()[s][i] is the index of
+     *  the image of square i under symmetry S (see NUM_SYMMETRIES). */
+    int[][] symmetry() {
+        return _symmetry;
+    }
+
+    /** Return the code of the image of the move with code MOVE under
+     *  symmetry S. */
+    int transformMove(int move, int s) {
+        return Move.code(_symmetry[s][Move.from(move)],
+                         _symmetry[s][Move.to(move)]);
+    }
+
+    /** Return the index of the center square. */
+    int center() {
+        return index(_size / 2, _size / 2);
+    }
+
+    /** Return the standard designation of the square with index INDEX
+     *  (e.g., a4 or k11). */
+    String squareName(int index) {
+        return _names[index];
+    }
+
+    /** Return the standard text of the move with code CODE (see
+     *  Move.code), using the forms CR-C for horizontal moves and CR-R for
+     *  vertical ones. */
+    String moveName(int code) {
+        int from = Move.from(code), to = Move.to(code);
+        String dest;
+        if (col(from) == col(to)) {
+            dest = Integer.toString(row(to) + 1);
+        } else {
+            dest = String.valueOf((char) ('a' + col(to)));
+        }
+        return _names[from].concat("-").concat(dest);
+    }
+
+    /** Return the index of the square designated by characters
+     *  START..END-1 of STR, or -1 if they do not designate a square. */
+    int parseSquare(CharSequence str, int start, int end) {
+        if (end - start < 2) {
+            return -1;
+        }
+        int col = str.charAt(start) - 'a';
+        int row = parseNumber(str, start + 1, end) - 1;
+        return exists(col, row) ? index(col, row) : -1;
+    }
+
+    /** Return the code (see Move.code) of the move denoted by STR, or -1
+     *  if STR does not have the syntax of a move on this board.  The
+     *  result may denote a null move (from-square equal to to-square). */
+    int parseMove(CharSequence str) {
+        int dash = -1;
+        for (int i = 0; i < str.length(); i += 1) {
+            if (str.charAt(i) == '-') {
+                dash = i;
+                break;
+            }
+        }
+        if (dash < 0 || dash == str.length() - 1) {
+            return -1;
+        }
+        int from = parseSquare(str, 0, dash);
+        if (from < 0) {
+            return -1;
+        }
+        char dest = str.charAt(dash + 1);
+        if (dest >= 'a' && dest < 'a' + _size) {
+            if (dash + 2 != str.length()) {
+                return -1;
+            }
+            return Move.code(from, index(dest - 'a', row(from)));
+        }
+        int row = parseNumber(str, dash + 1, str.length()) - 1;
+        if (row < 0 || row >= _size) {
+            return -1;
+        }
+        return Move.code(from, index(col(from), row));
+    }
+
+    /** Return the value of the decimal numeral (without leading zeros) in
+     *  characters START..END-1 of STR, or -1 if there is none there. */
+    private static int parseNumber(CharSequence str, int start, int end) {
+        if (start >= end || end - start > 2 || str.charAt(start) == '0') {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < end; i += 1) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = 10 * result + c - '0';
+        }
+        return result;
+    }
+
+    /** Displacements of the four directions: one step from (col, row) in
+     *  direction k leads to (col + DIR[k][0], row + DIR[k][1]). */
+    private static final int[][] DIR = {
+        { 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 }
+    };
+
+    /** The Geometry of a board with SIZE squares on a side. */
+    private Geometry(int size) {
+        _size = size;
+        int n = size * size;
+        _neighbor = new int[n][4];
+        _anvil = new int[n][4];
+        _ray = new int[n][4][];
+        _edge = new boolean[n];
+        _corner = new boolean[n];
+        _names = new String[n];
+        _symmetry = new int[NUM_SYMMETRIES][n];
+        _lineMask = new int[n][4];
+        _columns = new int[n];
+        _rows = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int c0 = col(i), r0 = row(i);
+            _columns[i] = c0;
+            _rows[i] = r0;
+            _names[i] = String.valueOf((char) ('a' + c0))
+                .concat(Integer.toString(r0 + 1));
+            _edge[i] = c0 == 0 || r0 == 0 || c0 == size - 1 || r0 == size - 1;
+            _corner[i] = (c0 == 0 || c0 == size - 1)
+                && (r0 == 0 || r0 == size - 1);
+            for (int d = 0; d < 4; d += 1) {
+                int len = 0;
+                while (exists(c0 + (len + 1) * DIR[d][0],
+                              r0 + (len + 1) * DIR[d][1])) {
+                    len += 1;
+                }
+                _ray[i][d] = new int[len];
+                for (int k = 1; k <= len; k += 1) {
+                    _ray[i][d][k - 1] =
+                        index(c0 + k * DIR[d][0], r0 + k * DIR[d][1]);
+                }
+                for (int sq : _ray[i][d]) {
+                    _lineMask[i][d] |= 1 << (d % 2 == 0 ? row(sq) : col(sq));
+                }
+                _neighbor[i][d] = len > 0 ? _ray[i][d][0] : -1;
+                _anvil[i][d] = len > 1 ? _ray[i][d][1] : -1;
+            }
+            for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+                int c = (s & 4) == 0 ? c0 : r0, r = (s & 4) == 0 ? r0 : c0;
+                if ((s & 1) != 0) {
+                    c = size - 1 - c;
+                }
+                if ((s & 2) != 0) {
+                    r = size - 1 - r;
+                }
+                _symmetry[s][i] = index(c, r);
+            }
+        }
+    }
+
+    /** The geometries created so far, indexed by size. */
+    private static final Geometry[] GEOMETRIES = new Geometry[MAX_SIZE + 1];
+
+    /** Number of squares on a side. */
+    private final int _size;
+    /** Neighbor table. */
+    private final int[][] _neighbor;
+    /** Capture-partner table. */
+    private final int[][] _anvil;
+    /** Ray table. */
+    private final int[][][] _ray;
+    /** Edge squares. */
+    private final boolean[] _edge;
+    /** Corner squares. */
+    private final boolean[] _corner;
+    /** Line-mask table. */
+    private final int[][] _lineMask;
+    /** Column and row of each square. */
+    private final int[] _columns, _rows;
+    /** Symmetry table. */
+    private final int[][] _symmetry;
+    /** Square designations, by index. */
+    private final String[] _names;
+}
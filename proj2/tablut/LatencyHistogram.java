@@ -0,0 +1,112 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A histogram of latencies in nanoseconds, in the style of HdrHistogram:
+ *  values are counted in buckets whose widths grow with the values, so
+ *  that every value is recorded to within 1/SUB_BUCKETS of its size, with
+ *  a fixed, small amount of memory and constant time per value.  Values
+ *  below SUB_BUCKETS are exact; each power-of-two range above that is
+ *  split into SUB_BUCKETS / 2 equal buckets.
+ *  @author Jennifer Tran
+ */
+class LatencyHistogram {
+
+    /** Log2 of the number of buckets in the lowest range. */
+    private static final int SUB_BITS = 5;
+
+    /** Number of buckets in the lowest range. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Total number of buckets (enough for any non-negative long). */
+    private static final int NUM_BUCKETS =
+        SUB_BUCKETS + (Long.SIZE - SUB_BITS) * (SUB_BUCKETS / 2);
+
+    /** Record one value of NANOS nanoseconds.  Negative values count as
+     *  0. */
+    synchronized void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        _counts[bucket(nanos)] += 1;
+        _count += 1;
+        _total += nanos;
+        _max = Math.max(_max, nanos);
+    }
+
+    /** Return the number of values recorded. */
+    synchronized long count() {
+        return _count;
+    }
+
+    /** Return the mean of the values recorded, in nanoseconds, or 0 if
+     *  there are none. */
+    synchronized long mean() {
+        return _count == 0 ? 0 : _total / _count;
+    }
+
+    /** Return the largest value recorded, in nanoseconds. */
+    synchronized long max() {
+        return _max;
+    }
+
+    /** Return an upper bound (accurate to within the width of a bucket) on
+     *  the value at percentile P (0 <= P <= 100), in nanoseconds, or 0 if
+     *  there are no values. */
+    synchronized long percentile(double p) {
+        if (_count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * _count));
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b += 1) {
+            seen += _counts[b];
+            if (seen >= rank) {
+                return Math.min(_max, highest(b));
+            }
+        }
+        return _max;
+    }
+
+    /** Discard all values. */
+    synchronized void reset() {
+        Arrays.fill(_counts, 0);
+        _count = _total = _max = 0;
+    }
+
+    /** Return a one-line summary of my values, in microseconds. */
+    synchronized String summary() {
+        return String.format("n=%d mean=%s p50=%s p90=%s p99=%s max=%s",
+                             _count, micros(mean()), micros(percentile(50)),
+                             micros(percentile(90)), micros(percentile(99)),
+                             micros(_max));
+    }
+
+    /** Return NANOS in microseconds, as text. */
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1000.0);
+    }
+
+    /** Return the index of the bucket holding VALUE >= 0. */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int range = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        int sub = (int) (value >>> range) - SUB_BUCKETS / 2;
+        return SUB_BUCKETS + (range - 1) * (SUB_BUCKETS / 2) + sub;
+    }
+
+    /** Return the largest value that falls in bucket B. */
+    private static long highest(int b) {
+        if (b < SUB_BUCKETS) {
+            return b;
+        }
+        int range = (b - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+        long sub = (b - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        return ((sub + 1) << range) - 1;
+    }
+
+    /** Number of values in each bucket. */
+    private final long[] _counts = new long[NUM_BUCKETS];
+    /** Number, sum, and maximum of the values recorded. */
+    private long _count, _total, _max;
+}
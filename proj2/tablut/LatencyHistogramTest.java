@@ -0,0 +1,88 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of LatencyHistogram.
+ *  @author Jennifer Tran
+ */
+public class LatencyHistogramTest {
+
+    /** Number of random values recorded. */
+    static final int VALUES = 100000;
+
+    /** The percentiles of random values of widely varying sizes are no
+     *  smaller than the exact percentiles, and larger by at most 1/16 of
+     *  them; the count, mean and maximum are exact. */
+    @Test
+    public void percentilesWithinBucketWidth() {
+        SplittableRandom random = new SplittableRandom(3);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[VALUES];
+        long total = 0;
+        for (int i = 0; i < VALUES; i += 1) {
+            values[i] = random.nextLong(1L << random.nextInt(1, 41));
+            histogram.record(values[i]);
+            total += values[i];
+        }
+        Arrays.sort(values);
+        assertEquals(VALUES, histogram.count());
+        assertEquals(total / VALUES, histogram.mean());
+        assertEquals(values[VALUES - 1], histogram.max());
+        for (double p : new double[] { 0, 1, 10, 25, 50, 75, 90, 99, 99.9,
+                                       100 }) {
+            long exact =
+                values[Math.max(0, (int) Math.ceil(p / 100 * VALUES) - 1)];
+            long got = histogram.percentile(p);
+            assertTrue(p + ": " + got + " < " + exact, got >= exact);
+            assertTrue(p + ": " + got + " >> " + exact,
+                       got <= exact + exact / 16);
+        }
+    }
+
+    /** Small values, including negative ones (recorded as 0), are counted
+     *  exactly, and the largest longs can be recorded. */
+    @Test
+    public void extremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(0, histogram.mean());
+        for (long v = -5; v < 32; v += 1) {
+            histogram.record(v);
+        }
+        assertEquals(0, histogram.percentile(5));
+        assertEquals(13, histogram.percentile(50));
+        assertEquals(31, histogram.percentile(100));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.max());
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    /** Values recorded from several threads at once are all counted. */
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < VALUES; i += 1) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * VALUES, histogram.count());
+        assertEquals((VALUES - 1) / 2, histogram.mean());
+        assertEquals(VALUES - 1, histogram.max());
+    }
+}
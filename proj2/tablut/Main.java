@@ -1,10 +1,14 @@
 package tablut;
 
 import java.util.List;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import static tablut.Utils.error;
 
@@ -15,20 +19,53 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** Size of the output buffer in batch mode, in bytes. */
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    /** The main program.  ARGS may contain the option --display.  With
+     *  --batch, commands are read from INPUT (which is then required) as
+     *  fast as possible: without prompts, and with output buffered until
+     *  the end.  With --engine=COMMAND, automated players get their moves
+     *  from an engine (see EngineServer) run by COMMAND, whose words are
+     *  separated by blanks.  With --broadcast=PORT, spectators may connect
+     *  to PORT to follow the game (see Broadcaster). */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
-                            args);
-        if (!options.ok()) {
+            new CommandArgs("--display --testing --strict --log={0,1} "
+                            + "--logsync --batch --engine={0,1} "
+                            + "--broadcast={0,1} --={0,2}", args);
+        boolean batch = options.contains("--batch");
+        if (!options.ok()
+            || batch && (options.contains("--display")
+                         || options.get("--").isEmpty())) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE [--logsync]] [--strict]"
+                               + " [--engine=COMMAND] [--broadcast=PORT]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.println("       java tablut.Main --batch"
+                               + " [--log=FILE [--logsync]] [--strict]"
+                               + " [--engine=COMMAND] [--broadcast=PORT]"
+                               + " INPUT [OUTPUT]");
             System.exit(1);
         }
 
         List<String> files = options.get("--");
-        if (!files.isEmpty()) {
+        ScriptReader script = null;
+        if (batch) {
+            try {
+                script = new ScriptReader(Paths.get(files.get(0)));
+                FileOutputStream out =
+                    files.size() > 1 ? new FileOutputStream(files.get(1))
+                    : new FileOutputStream(FileDescriptor.out);
+                System.setOut(new PrintStream(
+                    new BufferedOutputStream(out, BATCH_BUFFER_SIZE), false));
+            } catch (IOException excp) {
+                System.err.printf("Could not open file: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        } else if (!files.isEmpty()) {
             try {
                 System.setIn(new FileInputStream(files.get(0)));
                 if (files.size() > 1) {
@@ -49,6 +86,13 @@ public class Main {
         }
 
         Controller control = getController(options);
+        if (script != null) {
+            control.batch(script);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            control.cancelSearch();
+            control.closeLog();
+        }));
         System.out.println("Tablut 61B, staff version 1.0");
 
         try {
@@ -59,6 +103,8 @@ public class Main {
         } catch (IllegalStateException excp) {
             System.err.printf("Internal error: %s%n", excp.getMessage());
             System.exit(1);
+        } finally {
+            control.closeLog();
         }
 
     }
@@ -67,7 +113,7 @@ public class Main {
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
         GUI gui;
-        PrintStream log;
+        AsyncLogWriter log;
         View view;
         Reporter reporter;
 
@@ -81,6 +127,15 @@ public class Main {
             reporter = new TextReporter();
             view = new NullView();
         }
+        if (options.contains("--broadcast")) {
+            try {
+                view = new Broadcaster(
+                    Integer.parseInt(options.getFirst("--broadcast")), view);
+            } catch (IOException | NumberFormatException excp) {
+                throw error("Could not start broadcast: %s",
+                            excp.getMessage());
+            }
+        }
         if (!options.contains("--testing") && options.contains("--display")) {
             manualPlayer = new GUIPlayer(gui);
         } else {
@@ -90,13 +145,27 @@ public class Main {
         log = null;
         if (options.contains("--log")) {
             try {
-                log = new PrintStream(options.getFirst("--log"));
+                log = new AsyncLogWriter(Paths.get(options.getFirst("--log")),
+                                         options.contains("--logsync")
+                                         ? AsyncLogWriter.Durability.SYNC
+                                         : AsyncLogWriter.Durability.BUFFERED);
             } catch (IOException excp) {
                 throw error("Could not open log file");
             }
         }
 
+        Player autoPlayer = new AI();
+        if (options.contains("--engine")) {
+            String command = options.getFirst("--engine").trim();
+            try {
+                autoPlayer = new EnginePlayer(
+                    new EnginePool(Arrays.asList(command.split("\\s+")), 1));
+            } catch (IOException excp) {
+                throw error("Could not start engine: %s", excp.getMessage());
+            }
+        }
+
         return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+                              autoPlayer, options.contains("--strict"));
     }
 }
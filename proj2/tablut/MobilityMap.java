@@ -0,0 +1,206 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+
+/** The moves available on one Board, kept up to date as pieces are
+ *  added, removed, and moved: for each empty square, how many pieces of
+ *  each kind can move to it; for each piece, how many squares it can move
+ *  to; and for each kind of piece, how many moves it has in all.  A piece
+ *  reaches the squares along each of its four rays up to the first
+ *  occupied one, less the restricted squares (unless it is the king).
+ *  When a square changes, only the rays that cross it change: those of
+ *  the nearest piece in each direction, which now stop at the square or
+ *  continue through it, and those of the piece on it.  So each change
+ *  scans at most eight rays, and all queries take constant time.
+ *  @author Jennifer Tran
+ */
+final class MobilityMap {
+
+    /** A map of an empty board of VARIANT. */
+    MobilityMap(Variant variant) {
+        int n = variant.geometry().numSquares();
+        _ray = variant.geometry().ray();
+        _restricted = variant.restricted();
+        _board = new Piece[n];
+        Arrays.fill(_board, EMPTY);
+        _reach = new int[Piece.values().length][n];
+        _pieceMoves = new int[n];
+        _moves = new int[Piece.values().length];
+    }
+
+    /** Recompute me for the position on BOARD, which has my variant. */
+    void refresh(Board board) {
+        Arrays.fill(_board, EMPTY);
+        for (int[] reach : _reach) {
+            Arrays.fill(reach, 0);
+        }
+        Arrays.fill(_pieceMoves, 0);
+        Arrays.fill(_moves, 0);
+        for (int i = 0; i < _board.length; i += 1) {
+            _board[i] = board.get(i);
+        }
+        for (int i = 0; i < _board.length; i += 1) {
+            if (_board[i] != EMPTY) {
+                for (int d = 0; d < 4; d += 1) {
+                    sweep(i, d, 1);
+                }
+            }
+        }
+    }
+
+    /** Copy MODEL, which has the same variant as I. */
+    void copy(MobilityMap model) {
+        System.arraycopy(model._board, 0, _board, 0, _board.length);
+        for (int p = 0; p < _reach.length; p += 1) {
+            System.arraycopy(model._reach[p], 0, _reach[p], 0,
+                             _board.length);
+        }
+        System.arraycopy(model._pieceMoves, 0, _pieceMoves, 0,
+                         _board.length);
+        System.arraycopy(model._moves, 0, _moves, 0, _moves.length);
+    }
+
+    /** Account for the addition of piece P to the empty square with index
+     *  SQ. */
+    void add(Piece p, int sq) {
+        set(sq, p);
+    }
+
+    /** Account for the removal of the piece on square index SQ. */
+    void remove(int sq) {
+        set(sq, EMPTY);
+    }
+
+    /** Account for the move of the piece on square index FROM to the empty
+     *  square with index TO. */
+    void move(int from, int to) {
+        Piece p = _board[from];
+        set(from, EMPTY);
+        set(to, p);
+    }
+
+    /** Return the number of legal moves of SIDE (WHITE, including the
+     *  king's, or BLACK). */
+    int mobility(Piece side) {
+        if (side == BLACK) {
+            return _moves[BLACK.ordinal()];
+        }
+        return _moves[WHITE.ordinal()] + _moves[KING.ordinal()];
+    }
+
+    /** Return the number of squares the piece on square index SQ can move
+     *  to (0 if SQ is empty). */
+    int pieceMobility(int sq) {
+        return _pieceMoves[sq];
+    }
+
+    /** Return the number of pieces of kind P (WHITE, BLACK, or KING) that
+     *  can move to square index SQ. */
+    int reach(Piece p, int sq) {
+        return _reach[p.ordinal()][sq];
+    }
+
+    /** Return true iff a piece of SIDE (WHITE, including the king, or
+     *  BLACK) can move to square index SQ. */
+    boolean canReach(Piece side, int sq) {
+        if (side == BLACK) {
+            return _reach[BLACK.ordinal()][sq] > 0;
+        }
+        return _reach[WHITE.ordinal()][sq] + _reach[KING.ordinal()][sq] > 0;
+    }
+
+    /** Change the contents of square index SQ to P. */
+    private void set(int sq, Piece p) {
+        Piece old = _board[sq];
+        if (old != EMPTY) {
+            for (int d = 0; d < 4; d += 1) {
+                sweep(sq, d, -1);
+            }
+        }
+        _board[sq] = p;
+        if ((old == EMPTY) != (p == EMPTY)) {
+            crossing(sq, p == EMPTY ? 1 : -1);
+        }
+        if (p != EMPTY) {
+            for (int d = 0; d < 4; d += 1) {
+                sweep(sq, d, 1);
+            }
+        }
+    }
+
+    /** Add DELTA times the moves through square index SQ of the nearest
+     *  piece in each direction from SQ: those to SQ and beyond it, up to
+     *  the next occupied square.  These are the moves gained by the
+     *  pieces when SQ is vacated (DELTA = 1) or lost when it is filled
+     *  (DELTA = -1). */
+    private void crossing(int sq, int delta) {
+        for (int d = 0; d < 4; d += 1) {
+            int q = blocker(sq, d);
+            if (q < 0) {
+                continue;
+            }
+            Piece p = _board[q];
+            int[] reach = _reach[p.ordinal()];
+            int count = 0;
+            if (!_restricted[sq] || p == KING) {
+                reach[sq] += delta;
+                count += 1;
+            }
+            for (int to : _ray[sq][(d + 2) % 4]) {
+                if (_board[to] != EMPTY) {
+                    break;
+                } else if (!_restricted[to] || p == KING) {
+                    reach[to] += delta;
+                    count += 1;
+                }
+            }
+            _pieceMoves[q] += delta * count;
+            _moves[p.ordinal()] += delta * count;
+        }
+    }
+
+    /** Return the index of the first occupied square in direction D from
+     *  square index SQ, or -1 if there is none. */
+    private int blocker(int sq, int d) {
+        for (int q : _ray[sq][d]) {
+            if (_board[q] != EMPTY) {
+                return q;
+            }
+        }
+        return -1;
+    }
+
+    /** Add DELTA times the moves of the piece on square index SQ in
+     *  direction D. */
+    private void sweep(int sq, int d, int delta) {
+        Piece p = _board[sq];
+        int[] reach = _reach[p.ordinal()];
+        int count = 0;
+        for (int to : _ray[sq][d]) {
+            if (_board[to] != EMPTY) {
+                break;
+            } else if (!_restricted[to] || p == KING) {
+                reach[to] += delta;
+                count += 1;
+            }
+        }
+        _pieceMoves[sq] += delta * count;
+        _moves[p.ordinal()] += delta * count;
+    }
+
+    /** The rays of my geometry (see Geometry.ray). */
+    private final int[][][] _ray;
+    /** The squares on which only the king may stop. */
+    private final boolean[] _restricted;
+    /** The contents of the board. */
+    private final Piece[] _board;
+    /** _reach[p.ordinal()][i] is the number of pieces of kind p that can
+     *  move to square index i. */
+    private final int[][] _reach;
+    /** The number of moves of the piece on each square. */
+    private final int[] _pieceMoves;
+    /** The number of moves of each kind of piece. */
+    private final int[] _moves;
+}
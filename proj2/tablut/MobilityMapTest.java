@@ -0,0 +1,146 @@
+package tablut;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of MobilityMap against brute-force move generation.
+ *  @author Jennifer Tran
+ */
+public class MobilityMapTest {
+
+    /** The variants tested. */
+    static final Variant[] VARIANTS = {
+        Variant.TABLUT, Variant.BRANDUBH, Variant.HNEFATAFL
+    };
+
+    /** Number of random games of each variant played. */
+    static final int GAMES = 20;
+
+    /** Throughout random games of each variant, with moves undone now and
+     *  then, the mobility kept by the board agrees with its legal moves,
+     *  as do a copy of the board's map and a map computed from
+     *  scratch. */
+    @Test
+    public void agreesWithLegalMoves() {
+        SplittableRandom random = new SplittableRandom(5);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Variant variant : VARIANTS) {
+            Board board = new Board(variant);
+            board.trackMobility(true);
+            for (int g = 0; g < GAMES; g += 1) {
+                board.init();
+                for (int ply = 0; ply < 150 && board.winner() == null;
+                     ply += 1) {
+                    int k = board.legalMoves(board.turn(), moves);
+                    if (k == 0) {
+                        break;
+                    }
+                    check(board);
+                    if (random.nextInt(5) == 0 && board.moveCount() > 0) {
+                        board.undo();
+                    } else {
+                        board.makeMove(moves[random.nextInt(k)]);
+                    }
+                }
+                check(board);
+                while (board.moveCount() > 0) {
+                    board.undo();
+                    check(board);
+                }
+            }
+        }
+    }
+
+    /** At every third ply of random games of each variant, the side to
+     *  move threatens a capture on an empty square exactly when moving a
+     *  soldier there captures a soldier. */
+    @Test
+    public void threatsAgreeWithCaptures() {
+        SplittableRandom random = new SplittableRandom(6);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Variant variant : VARIANTS) {
+            Board board = new Board(variant);
+            board.trackMobility(true);
+            for (int g = 0; g < GAMES / 4; g += 1) {
+                board.init();
+                for (int ply = 0; ply < 150 && board.winner() == null;
+                     ply += 1) {
+                    int k = board.legalMoves(board.turn(), moves);
+                    if (k == 0) {
+                        break;
+                    }
+                    if (ply % 3 == 0) {
+                        boolean[] captures = captures(board, moves, k);
+                        for (int i = 0; i < captures.length; i += 1) {
+                            if (board.get(i) == Piece.EMPTY) {
+                                assertEquals(board.toString(), captures[i],
+                                             board.threatensCapture(
+                                                 board.turn(), i));
+                            }
+                        }
+                    }
+                    board.makeMove(moves[random.nextInt(k)]);
+                }
+            }
+        }
+    }
+
+    /** Assert that the mobility kept by BOARD, the map of a copy of
+     *  BOARD, and a map computed from scratch agree with the legal moves
+     *  of each side on BOARD. */
+    private static void check(Board board) {
+        MobilityMap kept = board.mobility();
+        MobilityMap copied = new Board(board).mobility();
+        MobilityMap fresh = new MobilityMap(board.variant());
+        fresh.refresh(board);
+        int n = board.geometry().numSquares();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            int k = board.legalMoves(side, moves);
+            int[] reach = new int[n], pieceMoves = new int[n];
+            for (int i = 0; i < k; i += 1) {
+                reach[Move.to(moves[i])] += 1;
+                pieceMoves[Move.from(moves[i])] += 1;
+            }
+            for (MobilityMap map : new MobilityMap[] {
+                    kept, copied, fresh }) {
+                assertEquals(k, map.mobility(side));
+                for (int i = 0; i < n; i += 1) {
+                    int r = side == Piece.BLACK ? map.reach(Piece.BLACK, i)
+                        : map.reach(Piece.WHITE, i) + map.reach(Piece.KING, i);
+                    assertEquals(reach[i], r);
+                    assertEquals(reach[i] > 0, map.canReach(side, i));
+                    if (board.get(i).side() == side
+                        || board.get(i) == Piece.EMPTY) {
+                        assertEquals(pieceMoves[i], map.pieceMobility(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return an array whose Ith element is true iff one of the first K
+     *  MOVES (legal moves on BOARD) moves a soldier to square index I and
+     *  captures a soldier.  BOARD is restored on return. */
+    private static boolean[] captures(Board board, int[] moves, int k) {
+        boolean[] result = new boolean[board.geometry().numSquares()];
+        Piece enemy = board.turn().opponent();
+        for (int i = 0; i < k; i += 1) {
+            int move = moves[i];
+            if (board.get(Move.from(move)) != Piece.KING) {
+                int before = board.countSide(enemy);
+                boolean king = board.kingIndex() >= 0;
+                board.makeMove(move);
+                int lost = before - board.countSide(enemy);
+                if (lost > 1 || lost == 1
+                    && (!king || board.kingIndex() >= 0)) {
+                    result[Move.to(move)] = true;
+                }
+                board.undo();
+            }
+        }
+        return result;
+    }
+}
@@ -2,10 +2,9 @@ package tablut;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static tablut.Square.sq;
+import static tablut.Square.BOARD_SIZE;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
@@ -19,12 +18,6 @@ import static tablut.Utils.*;
  */
 final class Move {
 
-    /** The syntax for a move, using either forms CR-C (horizontal moves)
-     *  or CR-R (vertical moves), where C is a column letter (a-i or A-I) and
-     *  R is a row number (1-9). */
-    static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
-
     /** Return the square moved from. */
     Square from() {
         return _from;
@@ -36,39 +29,117 @@ final class Move {
     }
 
     /** Return the unique Move FROM-TO, or null if this is not a valid
-     *  move. */
+     *  move.  All valid moves are created when this class is initialized,
+     *  and MOVES is never modified afterwards, so this is safe to call from
+     *  concurrent threads. */
     static Move mv(Square from, Square to) {
-        if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
+        return MOVES[from.index()][to.index()];
+    }
+
+    /** Return the Move denoted by STR, if STR denotes a move with
+     *  valid syntax, and null otherwise.  This may be called from
+     *  concurrent threads. */
+    static Move mv(CharSequence str) {
+        return mv(decode(str, 0, str.length()));
+    }
+
+    /** Return the Move denoted by the characters START..END-1 of STR, if
+     *  they denote a move with valid syntax, and null otherwise. */
+    static Move mv(CharSequence str, int start, int end) {
+        return mv(decode(str, start, end));
+    }
+
+    /** Return the Move denoted by the ASCII bytes BUF[START..END-1], if
+     *  they denote a move with valid syntax, and null otherwise. */
+    static Move mv(byte[] buf, int start, int end) {
+        if (end - start != 4) {
             return null;
         }
+        return mv(decode(buf[start], buf[start + 1], buf[start + 2],
+                         buf[start + 3]));
+    }
+
+    /** Return true iff STR has the right format for a Move: either CR-C
+     *  (horizontal moves) or CR-R (vertical moves), where C is a column
+     *  letter (a-i) and R is a row number (1-9). */
+    static boolean isGrammaticalMove(CharSequence str) {
+        return decode(str, 0, str.length()) >= 0;
+    }
 
-        if (MOVES[from.index()][to.index()] == null) {
-            MOVES[from.index()][to.index()] = new Move(from, to);
+    /** Return the Move whose code (see code()) on the standard board is
+     *  CODE, or null if CODE is negative or does not denote a move.  For
+     *  the codes of moves on other boards, use Board.move. */
+    static Move mv(int code) {
+        if (code < 0 || from(code) >= NUM_SQUARES
+            || to(code) >= NUM_SQUARES) {
+            return null;
         }
-        return MOVES[from.index()][to.index()];
+        return MOVES[from(code)][to(code)];
     }
 
-    /** Return the Move denoted by STR, if STR denotes a move with
-     *  valid syntax, and null otherwise. */
-    static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
+    /** Return the code of the move from square index FROM to square index
+     *  TO: a non-negative integer less than 2**16.  Codes are defined for
+     *  boards of all sizes (see Geometry). */
+    static int code(int from, int to) {
+        return (from << 8) | to;
+    }
+
+    /** Return the index of the from-square of the move with code CODE. */
+    static int from(int code) {
+        return code >> 8;
+    }
+
+    /** Return the index of the to-square of the move with code CODE. */
+    static int to(int code) {
+        return code & 0xff;
+    }
+
+    /** Return my code, which identifies me uniquely and may be used to
+     *  represent me where Move objects are not wanted. */
+    int code() {
+        return _code;
+    }
+
+    /** Return the code (as for code(int, int)) of the move denoted by
+     *  characters START..END-1 of STR, or -1 if they do not have the syntax
+     *  of a move.  The result may denote a null move (FROM == TO). */
+    private static int decode(CharSequence str, int start, int end) {
+        if (end - start != 4) {
+            return -1;
         }
-        return null;
+        return decode(str.charAt(start), str.charAt(start + 1),
+                      str.charAt(start + 2), str.charAt(start + 3));
     }
 
-    /** Return true iff STR has the right format for a Move. */
-    static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+    /** Return the code, as for decode(CharSequence, int, int), of the move
+     *  whose text is COL ROW DASH DEST. */
+    private static int decode(int col, int row, int dash, int dest) {
+        int c0 = col - 'a', r0 = row - '1';
+        if (c0 < 0 || c0 >= BOARD_SIZE || r0 < 0 || r0 >= BOARD_SIZE
+            || dash != '-') {
+            return -1;
+        }
+        int from = r0 * BOARD_SIZE + c0;
+        if (dest >= 'a' && dest < 'a' + BOARD_SIZE) {
+            return code(from, r0 * BOARD_SIZE + dest - 'a');
+        } else if (dest >= '1' && dest < '1' + BOARD_SIZE) {
+            return code(from, (dest - '1') * BOARD_SIZE + c0);
+        }
+        return -1;
+    }
+
+    /** Append my printed form to OUT, without creating new objects. */
+    void appendTo(StringBuilder out) {
+        out.append(_str);
+    }
+
+    /** Store my printed form as ASCII bytes in BUF, starting at POS, and
+     *  return the position following it. */
+    int writeTo(byte[] buf, int pos) {
+        for (int i = 0; i < _str.length(); i += 1) {
+            buf[pos + i] = (byte) _str.charAt(i);
+        }
+        return pos + _str.length();
     }
 
     @Override
@@ -92,11 +163,12 @@ final class Move {
     /** Construct the Move FROM-TO. */
     private Move(Square from, Square to) {
         _from = from; _to = to;
-        if (_from.col() == _to.col()) {
-            _str = String.format("%s-%c", from, (char) to.row() + '1');
-        } else {
-            _str = String.format("%s-%c", from, (char) to.col() + 'a');
-        }
+        _code = code(from.index(), to.index());
+        char dest = _from.col() == _to.col() ? (char) ('1' + to.row())
+            : (char) ('a' + to.col());
+        _str = new String(new char[] {
+            (char) ('a' + from.col()), (char) ('1' + from.row()), '-', dest
+        });
     }
 
     @Override
@@ -106,10 +178,11 @@ final class Move {
 
     @Override
     public int hashCode() {
-        return (_from.index() << 6) + _to.index();
+        return _code;
     }
 
-    /** The cache of all Moves created. */
+    /** The cache of all Moves: MOVES[i][j] is the move from the square
+     *  with index i to the one with index j, or null if there is none. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
     /** ROOK_MOVES[i][d] is a list of all rook moves in direction
@@ -124,7 +197,9 @@ final class Move {
             for (int d = 0; d < 4; d += 1) {
                 MoveList L = ROOK_MOVES[i0][d] = new MoveList();
                 for (Square sq1 : ROOK_SQUARES[i0][d]) {
-                    L.add(mv(sq0, sq1));
+                    Move move = new Move(sq0, sq1);
+                    MOVES[i0][sq1.index()] = move;
+                    L.add(move);
                 }
             }
         }
@@ -132,8 +207,8 @@ final class Move {
 
     /** The components of this Move. */
     private final Square _from, _to;
+    /** My code. */
+    private final int _code;
     /** The printed form of this Move. */
-    private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private final String _str;
 }
@@ -0,0 +1,165 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of parsing moves and squares.
+ *  @author Jennifer Tran
+ */
+public class MoveTest {
+
+    /** The syntax of a move on the standard board, as a regular
+     *  expression. */
+    static final Pattern MOVE_SYNTAX =
+        Pattern.compile("([a-i][1-9])-(?:[a-i]|[1-9])");
+
+    /** Characters from which the strings tried are made: those that may
+     *  appear in a move, and their neighbors in ASCII. */
+    static final String ALPHABET = "`abcdefghij0123456789:-A";
+
+    /** The variants whose boards are tested. */
+    static final Variant[] VARIANTS = {
+        Variant.TABLUT, Variant.BRANDUBH, Variant.HNEFATAFL
+    };
+
+    /** isGrammaticalMove accepts exactly the strings that match
+     *  MOVE_SYNTAX, and mv parses each of them the same way from text,
+     *  from part of a longer text, and from bytes, even when called from
+     *  several threads at once. */
+    @Test
+    public void parserMatchesSyntax() {
+        List<String> strings = new ArrayList<>();
+        for (char c0 : ALPHABET.toCharArray()) {
+            for (char c1 : ALPHABET.toCharArray()) {
+                for (char c2 : ALPHABET.toCharArray()) {
+                    for (char c3 : ALPHABET.toCharArray()) {
+                        strings.add(new String(new char[] {
+                            c0, c1, c2, c3 }));
+                    }
+                }
+            }
+        }
+        long grammatical = strings.parallelStream().filter(s -> {
+            boolean ok = MOVE_SYNTAX.matcher(s).matches();
+            assertEquals(s, ok, Move.isGrammaticalMove(s));
+            Move move = Move.mv(s);
+            assertSame(s, move, Move.mv("x" + s + "yz", 1, 5));
+            assertSame(s, move, Move.mv(("  " + s).getBytes(), 2, 6));
+            if (move == null) {
+                assertFalse(s, ok && s.charAt(0) != s.charAt(3)
+                            && s.charAt(1) != s.charAt(3));
+            } else {
+                assertTrue(s, ok);
+                assertEquals(s, move.toString());
+            }
+            return ok;
+        }).count();
+        assertEquals(9 * 9 * 18, grammatical);
+        for (String s : new String[] { "", "a1-", "a1-23", "a1--2",
+                                       "a1-2 ", " a1-2" }) {
+            assertFalse(s, Move.isGrammaticalMove(s));
+            assertNull(s, Move.mv(s));
+        }
+    }
+
+    /** Every move prints as text that parses back to it, and its code
+     *  denotes it. */
+    @Test
+    public void allMovesRoundTrip() {
+        int count = 0;
+        for (int from = 0; from < Square.NUM_SQUARES; from += 1) {
+            for (int to = 0; to < Square.NUM_SQUARES; to += 1) {
+                Move move = Move.mv(Square.sq(from), Square.sq(to));
+                assertEquals(Square.sq(from).isRookMove(Square.sq(to)),
+                             move != null);
+                if (move != null) {
+                    count += 1;
+                    assertSame(move, Move.mv(move.toString()));
+                    assertSame(move, Move.mv(move.code()));
+                    assertEquals(Move.code(from, to), move.code());
+                    StringBuilder text = new StringBuilder();
+                    move.appendTo(text);
+                    assertEquals(move.toString(), text.toString());
+                }
+            }
+        }
+        assertEquals(Square.NUM_SQUARES * 2 * (Square.BOARD_SIZE - 1),
+                     count);
+    }
+
+    /** On the board of each variant, every square name and every move
+     *  name parses back to the square or move it names, and malformed
+     *  names are rejected. */
+    @Test
+    public void geometryRoundTrip() {
+        for (Variant variant : VARIANTS) {
+            Geometry geom = variant.geometry();
+            int n = geom.numSquares();
+            for (int from = 0; from < n; from += 1) {
+                String name = geom.squareName(from);
+                assertEquals(from,
+                             geom.parseSquare(name, 0, name.length()));
+                for (int to = 0; to < n; to += 1) {
+                    if (to != from && (geom.col(to) == geom.col(from)
+                                       || geom.row(to) == geom.row(from))) {
+                        int code = Move.code(from, to);
+                        assertEquals(code,
+                                     geom.parseMove(geom.moveName(code)));
+                    }
+                }
+            }
+            String last = String.valueOf((char) ('a' + geom.size()));
+            String big = Integer.toString(geom.size() + 1);
+            for (String bad : new String[] {
+                    "", "a1", "a1-", "-a", "a0-c", "a01-c", "a1-01",
+                    "a1-0", "a1-bc", "a1-c1", last + "1-a", "a" + big + "-a",
+                    "a1-" + last, "a1-" + big, "a123-4" }) {
+                assertEquals(variant + " " + bad, -1, geom.parseMove(bad));
+            }
+        }
+    }
+
+    /** The Square and Move facade of Board names the same squares and
+     *  moves as the Geometry of each variant, and rejects the squares
+     *  that the board or the standard board lacks. */
+    @Test
+    public void boardFacade() {
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Variant variant : VARIANTS) {
+            Board board = new Board(variant);
+            Geometry geom = board.geometry();
+            assertEquals(geom.squareName(board.kingIndex()),
+                         board.kingPosition().toString());
+            int n = board.legalMoves(board.turn(), moves);
+            for (int i = 0; i < n; i += 1) {
+                int from = Move.from(moves[i]), to = Move.to(moves[i]);
+                if (Math.max(geom.col(from), geom.row(from)) < Board.SIZE
+                    && Math.max(geom.col(to), geom.row(to)) < Board.SIZE) {
+                    Move move = board.move(moves[i]);
+                    assertEquals(geom.moveName(moves[i]), move.toString());
+                    assertTrue(board.isLegal(move));
+                    assertEquals(board.get(from), board.get(move.from()));
+                } else {
+                    try {
+                        board.move(moves[i]);
+                        fail(variant + " " + geom.moveName(moves[i]));
+                    } catch (IllegalArgumentException excp) {
+                        /* Expected. */
+                    }
+                }
+            }
+            if (geom.size() < Board.SIZE) {
+                try {
+                    board.get(Square.sq("i9"));
+                    fail(variant + " i9");
+                } catch (IllegalArgumentException excp) {
+                    /* Expected. */
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static tablut.Piece.*;
+
+/** The weights of an efficiently updatable neural network (NNUE) that
+ *  evaluates positions.  The network has one input feature for each kind
+ *  of piece (white, black, king) on each square, a hidden layer, and a
+ *  single output:
+ *  <pre>
+ *      hidden[j] = bias[j] + sum of inputWeight[f][j] over the pieces f
+ *      output = (sum over j of clamp(hidden[j], 0, QA) * outputWeight[j]
+ *                + outputBias) >> outputShift
+ *  </pre>
+ *  The hidden layer is kept in an Accumulator that a Board updates as
+ *  pieces move, so evaluating a position takes only the output layer.
+ *  Weights are quantized: the input weights and biases are 16-bit
+ *  integers, the output weights 8-bit.  The output is a score in the
+ *  same sense as the AI's (positive favors white).
+ *
+ *  Weight files are little-endian: the ints MAGIC, VERSION, number of
+ *  squares, and number of hidden units H; then H shorts of bias; then the
+ *  input weights as shorts, H for each feature in order (white on squares
+ *  0, 1, ..., then black, then the king); then H bytes of output weights;
+ *  then the ints outputBias and outputShift.
+ *  @author Jennifer Tran
+ */
+class Network {
+
+    /** Identifies a weight file. */
+    static final int MAGIC = 0x45554e54;
+
+    /** Version of the weight file format. */
+    static final int VERSION = 1;
+
+    /** Upper clamp of the hidden units (the lower is 0). */
+    static final int QA = 127;
+
+    /** Number of input features per square. */
+    static final int PIECE_KINDS = 3;
+
+    /** A network for boards of NUMSQUARES squares, with the given
+     *  weights, as described above, evaluated with KERNEL. */
+    private Network(int numSquares, short[] bias, short[] inputWeights,
+                    short[] outputWeights, int outputBias, int outputShift,
+                    NetworkKernel kernel) {
+        _numSquares = numSquares;
+        _bias = bias;
+        _inputWeights = inputWeights;
+        _outputWeights = outputWeights;
+        _outputBias = outputBias;
+        _outputShift = outputShift;
+        _kernel = kernel;
+    }
+
+    /** Return the network whose weights are in FILE, evaluated with the
+     *  fastest available kernel. */
+    static Network load(Path file) throws IOException {
+        ByteBuffer in =
+            ByteBuffer.wrap(Files.readAllBytes(file))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("not a network file: " + file);
+            }
+            int numSquares = in.getInt(), hidden = in.getInt();
+            if (numSquares <= 0 || numSquares > Geometry.MAX_SQUARES
+                || hidden <= 0 || hidden > MAX_HIDDEN) {
+                throw new IOException("bad network dimensions: " + file);
+            }
+            short[] bias = new short[hidden];
+            short[] inputWeights =
+                new short[PIECE_KINDS * numSquares * hidden];
+            short[] outputWeights = new short[hidden];
+            in.asShortBuffer().get(bias);
+            in.position(in.position() + 2 * hidden);
+            in.asShortBuffer().get(inputWeights);
+            in.position(in.position() + 2 * inputWeights.length);
+            for (int j = 0; j < hidden; j += 1) {
+                outputWeights[j] = in.get();
+            }
+            int outputBias = in.getInt(), outputShift = in.getInt();
+            if (in.hasRemaining() || outputShift < 0 || outputShift > 31) {
+                throw new IOException("bad network file: " + file);
+            }
+            return new Network(numSquares, bias, inputWeights, outputWeights,
+                               outputBias, outputShift,
+                               NetworkKernel.fastest());
+        } catch (BufferUnderflowException excp) {
+            throw new IOException("truncated network file: " + file);
+        }
+    }
+
+    /** Write my weights to FILE in the format read by load. */
+    void save(Path file) throws IOException {
+        int hidden = hidden();
+        ByteBuffer out =
+            ByteBuffer.allocate(16 + 3 * hidden + 2 * _inputWeights.length
+                                + 8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(_numSquares).putInt(hidden);
+        for (short b : _bias) {
+            out.putShort(b);
+        }
+        for (short w : _inputWeights) {
+            out.putShort(w);
+        }
+        for (short w : _outputWeights) {
+            out.put((byte) w);
+        }
+        out.putInt(_outputBias).putInt(_outputShift);
+        Files.write(file, out.array());
+    }
+
+    /** Return a network for boards of NUMSQUARES squares with HIDDEN
+     *  hidden units and small random weights generated from SEED.  Useful
+     *  for testing and benchmarking. */
+    static Network random(int numSquares, int hidden, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        short[] bias = new short[hidden];
+        short[] inputWeights = new short[PIECE_KINDS * numSquares * hidden];
+        short[] outputWeights = new short[hidden];
+        for (int j = 0; j < hidden; j += 1) {
+            bias[j] = (short) random.nextInt(-QA, QA + 1);
+            outputWeights[j] = (short) random.nextInt(-QA, QA + 1);
+        }
+        for (int k = 0; k < inputWeights.length; k += 1) {
+            inputWeights[k] = (short) random.nextInt(-QA / 2, QA / 2 + 1);
+        }
+        return new Network(numSquares, bias, inputWeights, outputWeights, 0,
+                           6, NetworkKernel.fastest());
+    }
+
+    /** Return a network with my weights that is evaluated with KERNEL. */
+    Network withKernel(NetworkKernel kernel) {
+        return new Network(_numSquares, _bias, _inputWeights, _outputWeights,
+                           _outputBias, _outputShift, kernel);
+    }
+
+    /** Return the number of squares of the boards I evaluate. */
+    int numSquares() {
+        return _numSquares;
+    }
+
+    /** Return the number of hidden units. */
+    int hidden() {
+        return _bias.length;
+    }
+
+    /** Return my kernel. */
+    NetworkKernel kernel() {
+        return _kernel;
+    }
+
+    /** Set the hidden units ACC to my biases. */
+    void reset(short[] acc) {
+        System.arraycopy(_bias, 0, acc, 0, acc.length);
+    }
+
+    /** Add the input weights of piece P on square index SQ to ACC. */
+    void add(short[] acc, Piece p, int sq) {
+        _kernel.add(acc, _inputWeights, offset(p, sq));
+    }
+
+    /** Subtract the input weights of piece P on square index SQ from
+     *  ACC. */
+    void remove(short[] acc, Piece p, int sq) {
+        _kernel.subtract(acc, _inputWeights, offset(p, sq));
+    }
+
+    /** Update ACC for a move of piece P from square index FROM to square
+     *  index TO. */
+    void move(short[] acc, Piece p, int from, int to) {
+        _kernel.move(acc, _inputWeights, offset(p, from), offset(p, to));
+    }
+
+    /** Return the output of the network whose hidden units are ACC. */
+    int evaluate(short[] acc) {
+        return (_kernel.output(acc, _outputWeights) + _outputBias)
+            >> _outputShift;
+    }
+
+    /** Return the index in _inputWeights of the weights for piece P on
+     *  square index SQ. */
+    private int offset(Piece p, int sq) {
+        int kind = p == WHITE ? 0 : p == BLACK ? 1 : 2;
+        return (kind * _numSquares + sq) * _bias.length;
+    }
+
+    /** The largest number of hidden units in a network. */
+    private static final int MAX_HIDDEN = 4096;
+
+    /** Number of squares of the boards I evaluate. */
+    private final int _numSquares;
+    /** Biases of the hidden units. */
+    private final short[] _bias;
+    /** Input weights, hidden() per feature. */
+    private final short[] _inputWeights;
+    /** Output weights (8-bit values, widened for the kernels). */
+    private final short[] _outputWeights;
+    /** Output bias and right shift. */
+    private final int _outputBias, _outputShift;
+    /** The arithmetic used to evaluate me. */
+    private final NetworkKernel _kernel;
+}
@@ -0,0 +1,73 @@
+package tablut;
+
+/** The arithmetic of a Network: updates of its hidden units and
+ *  evaluation of its output layer.  This class does it one element at a
+ *  time; VectorNetworkKernel (in the separate source tree vector, built
+ *  by "make vector") overrides it with SIMD operations, when it has been
+ *  compiled and the jdk.incubator.vector module is available.
+ *  @author Jennifer Tran
+ */
+class NetworkKernel {
+
+    /** The scalar kernel. */
+    static final NetworkKernel SCALAR = new NetworkKernel();
+
+    /** Return the fastest kernel available: the vector kernel if it has
+     *  been compiled, the program runs with --add-modules
+     *  jdk.incubator.vector, and the property tablut.scalar is not set;
+     *  else SCALAR. */
+    static NetworkKernel fastest() {
+        if (_fastest == null) {
+            _fastest = SCALAR;
+            if (!Boolean.getBoolean("tablut.scalar")) {
+                try {
+                    _fastest = (NetworkKernel)
+                        Class.forName("tablut.VectorNetworkKernel")
+                        .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError excp) {
+                    /* Vector kernel or API not present: use SCALAR. */
+                }
+            }
+        }
+        return _fastest;
+    }
+
+    /** Return a short description of this kernel. */
+    String description() {
+        return "scalar";
+    }
+
+    /** Add W[OFFSET .. OFFSET+ACC.length-1] to ACC, elementwise. */
+    void add(short[] acc, short[] w, int offset) {
+        for (int j = 0; j < acc.length; j += 1) {
+            acc[j] += w[offset + j];
+        }
+    }
+
+    /** Subtract W[OFFSET .. OFFSET+ACC.length-1] from ACC, elementwise. */
+    void subtract(short[] acc, short[] w, int offset) {
+        for (int j = 0; j < acc.length; j += 1) {
+            acc[j] -= w[offset + j];
+        }
+    }
+
+    /** Add W[TO .. TO+ACC.length-1] and subtract W[FROM ..
+     *  FROM+ACC.length-1] to ACC, elementwise. */
+    void move(short[] acc, short[] w, int from, int to) {
+        for (int j = 0; j < acc.length; j += 1) {
+            acc[j] += w[to + j] - w[from + j];
+        }
+    }
+
+    /** Return the sum over j of clamp(ACC[j], 0, Network.QA) * W[j]. */
+    int output(short[] acc, short[] w) {
+        int sum = 0;
+        for (int j = 0; j < acc.length; j += 1) {
+            sum += Math.min(Math.max(acc[j], 0), Network.QA) * w[j];
+        }
+        return sum;
+    }
+
+    /** The fastest kernel, once determined. */
+    private static NetworkKernel _fastest;
+}
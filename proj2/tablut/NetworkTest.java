@@ -0,0 +1,110 @@
+package tablut;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the network kernels.  The vector kernel is compared with the
+ *  scalar one only when it is available (built with make vector, and run
+ *  with --add-modules jdk.incubator.vector); otherwise NetworkKernel.fastest
+ *  is SCALAR, and the comparisons are trivially true.
+ *  @author Jennifer Tran
+ */
+public class NetworkTest {
+
+    /** Hidden-layer sizes tried: multiples of every vector length, and
+     *  sizes that leave a partial vector at the end. */
+    static final int[] SIZES = { 1, 7, 16, 37, 64, 100, 256, 259 };
+
+    /** Number of random trials of each operation and size. */
+    static final int TRIALS = 200;
+
+    /** Each kernel operation gives the same result with the fastest
+     *  kernel as with the scalar one, on random data. */
+    @Test
+    public void kernelsAgree() {
+        NetworkKernel fast = NetworkKernel.fastest();
+        NetworkKernel slow = NetworkKernel.SCALAR;
+        SplittableRandom random = new SplittableRandom(42);
+        for (int n : SIZES) {
+            for (int t = 0; t < TRIALS; t += 1) {
+                short[] acc = randomShorts(random, n, Short.MIN_VALUE,
+                                           Short.MAX_VALUE);
+                short[] w = randomShorts(random, 3 * n, -Network.QA,
+                                         Network.QA);
+                int from = random.nextInt(2 * n + 1),
+                    to = random.nextInt(2 * n + 1);
+                short[] a = acc.clone(), b = acc.clone();
+                fast.add(a, w, from);
+                slow.add(b, w, from);
+                assertArrayEquals("add", b, a);
+                fast.subtract(a, w, to);
+                slow.subtract(b, w, to);
+                assertArrayEquals("subtract", b, a);
+                fast.move(a, w, from, to);
+                slow.move(b, w, from, to);
+                assertArrayEquals("move", b, a);
+                assertEquals("output", slow.output(acc, w),
+                             fast.output(acc, w));
+            }
+        }
+    }
+
+    /** Random networks evaluate the positions of random games the same
+     *  with the fastest kernel as with the scalar one, and the same when
+     *  their hidden units are kept up to date incrementally as when they
+     *  are recomputed. */
+    @Test
+    public void networksAgree() {
+        for (int hidden : new int[] { 37, 256 }) {
+            Network network =
+                Network.random(Board.SIZE * Board.SIZE, hidden, hidden);
+            Board fast = new Board(), slow = new Board();
+            fast.setNetwork(network.withKernel(NetworkKernel.fastest()));
+            slow.setNetwork(network.withKernel(NetworkKernel.SCALAR));
+            SplittableRandom random = new SplittableRandom(hidden);
+            int[] moves = new int[Board.MAX_MOVES];
+            for (int ply = 0; ply < 400; ply += 1) {
+                int k = fast.legalMoves(fast.turn(), moves);
+                if (fast.winner() != null || k == 0) {
+                    fast.init();
+                    slow.init();
+                    continue;
+                }
+                int move = moves[random.nextInt(k)];
+                fast.makeMove(move);
+                slow.makeMove(move);
+                if (ply % 7 == 3) {
+                    fast.undo();
+                    slow.undo();
+                }
+                assertEquals("kernels differ", slow.networkScore(),
+                             fast.networkScore());
+                Board fresh = new Board(slow);
+                fresh.setNetwork(slow.network());
+                assertEquals("incremental update differs",
+                             fresh.networkScore(), slow.networkScore());
+            }
+        }
+    }
+
+    /** Return an array of N random shorts in the range LO .. HI. */
+    private static short[] randomShorts(SplittableRandom random, int n,
+                                        int lo, int hi) {
+        short[] result = new short[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (short) random.nextInt(lo, hi + 1);
+        }
+        return result;
+    }
+
+    /** Assert that arrays EXPECTED and ACTUAL are equal, with MESSAGE. */
+    private static void assertArrayEquals(String message, short[] expected,
+                                          short[] actual) {
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i += 1) {
+            assertEquals(message + " at " + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,767 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static tablut.Utils.*;
+
+/** An index, kept in a directory, of the positions reached in archives of
+ *  games of standard Tablut, which answers "which games reached this
+ *  position, and what became of them" without replaying the games.  It
+ *  maps the hash of each position (see Board.hash) to a posting list of
+ *  the games that reached it, with the ply at which they did and the move
+ *  they made next.  Archived games of other variants are counted, but
+ *  their positions are not indexed.
+ *  <p>
+ *  Postings are kept in segment files, each sorted by hash and then by
+ *  game and ply, and mapped into memory for lookup by binary search.  A
+ *  segment file has a header of SEGMENT_MAGIC, a version byte, three
+ *  bytes of padding and the number of postings (8 bytes), followed by the
+ *  postings, each of ENTRY_SIZE bytes:
+ *  <pre>
+ *      hash          8 bytes
+ *      game          4 bytes: the game's number in the index
+ *      ply           2 bytes: the number of moves made to reach the position
+ *      next move     2 bytes: its code (see Move.code), or NO_MOVE
+ *  </pre>
+ *  all big-endian.  Adding games replays them in parallel, one task per
+ *  game file, each writing new segments as its buffer of postings fills.
+ *  When there are more than MAX_SEGMENTS segments, the smallest are
+ *  merged into one (compaction), so lookups probe only a few.  The file
+ *  "manifest" lists the live segments, and is replaced only once
+ *  everything it lists has been written.  The file "files" lists the game
+ *  files indexed, and "games" holds, for each game, the number of its
+ *  file in that list, its number within the file and its result (4, 4
+ *  and 1 bytes).
+ *  @author Jennifer Tran
+ */
+class PositionIndex implements Closeable {
+
+    /** The four bytes that begin a segment file. */
+    static final byte[] SEGMENT_MAGIC = { 'T', 'B', 'L', 'X' };
+
+    /** The version of the segment format. */
+    static final int VERSION = 1;
+
+    /** Size of a segment file's header, in bytes. */
+    static final int HEADER_SIZE = 16;
+
+    /** Size of a posting, in bytes. */
+    static final int ENTRY_SIZE = 16;
+
+    /** The next-move field of the final position of a game. */
+    static final int NO_MOVE = 0xffff;
+
+    /** The largest number of segments kept without compaction. */
+    static final int MAX_SEGMENTS = 8;
+
+    /** The largest number of postings in a segment, so that each can be
+     *  mapped as a single buffer. */
+    static final long MAX_SEGMENT_ENTRIES =
+        (Integer.MAX_VALUE - HEADER_SIZE) / ENTRY_SIZE;
+
+    /** Default number of postings buffered by each indexing task before it
+     *  writes a segment. */
+    static final int DEFAULT_BUFFER_ENTRIES = 1 << 20;
+
+    /** The outcomes of the games that reached a position by the move they
+     *  made next. */
+    static final class Continuation {
+
+        /** A continuation by the move with code MOVE (-1 for games that
+         *  ended in the position), as yet with no games. */
+        Continuation(int move) {
+            _move = move;
+        }
+
+        /** Return the code of my move (see Move.code), or -1 if my games
+         *  ended in the position. */
+        int move() {
+            return _move;
+        }
+
+        /** Return the number of games. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the number of games won by SIDE (WHITE or BLACK). */
+        int wins(Piece side) {
+            return side == Piece.WHITE ? _whiteWins : _blackWins;
+        }
+
+        /** Return the number of games that did not finish. */
+        int unfinished() {
+            return _games - _whiteWins - _blackWins;
+        }
+
+        /** Count a game whose result was RESULT (null if unfinished). */
+        void count(Piece result) {
+            _games += 1;
+            if (result == Piece.WHITE) {
+                _whiteWins += 1;
+            } else if (result == Piece.BLACK) {
+                _blackWins += 1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String move = _move < 0 ? "(end)"
+                : Variant.TABLUT.geometry().moveName(_move);
+            return String.format("%-8s %8d games  white %5.1f%%"
+                                 + "  black %5.1f%%", move, _games,
+                                 100.0 * _whiteWins / _games,
+                                 100.0 * _blackWins / _games);
+        }
+
+        /** My move. */
+        private final int _move;
+        /** Numbers of games, and of wins by each side. */
+        private int _games, _whiteWins, _blackWins;
+    }
+
+    /** The index in directory DIR, which is created if needed. */
+    PositionIndex(Path dir) throws IOException {
+        this(dir, DEFAULT_BUFFER_ENTRIES);
+    }
+
+    /** The index in directory DIR, which is created if needed, whose
+     *  indexing tasks buffer BUFFERENTRIES postings each. */
+    PositionIndex(Path dir, int bufferEntries) throws IOException {
+        _dir = dir;
+        _bufferEntries = bufferEntries;
+        Files.createDirectories(dir);
+        if (Files.exists(dir.resolve(FILES))) {
+            for (String name : Files.readAllLines(dir.resolve(FILES))) {
+                _files.add(Paths.get(name));
+            }
+        }
+        if (Files.exists(dir.resolve(GAMES))) {
+            ByteBuffer games =
+                ByteBuffer.wrap(Files.readAllBytes(dir.resolve(GAMES)));
+            while (games.remaining() >= GAME_SIZE) {
+                addGame(games.getInt(), games.getInt(),
+                        GameRecord.resultPiece(games.get()));
+            }
+        }
+        if (Files.exists(dir.resolve(MANIFEST))) {
+            for (String name : Files.readAllLines(dir.resolve(MANIFEST))) {
+                _segments.add(new Segment(dir.resolve(name)));
+                _nextSegment = Math.max(_nextSegment,
+                                        segmentNumber(name) + 1);
+            }
+        }
+    }
+
+    /** Add the games in the game files in directory ARCHIVE (see
+     *  GameReplay), using THREADS indexing tasks at a time. */
+    void add(Path archive, int threads) throws IOException {
+        add(GameReplay.gameFiles(archive), threads);
+    }
+
+    /** Add the games in FILES (text logs or binary game records), using
+     *  THREADS indexing tasks at a time, and compact the index if it then
+     *  has too many segments.  The files and their games are added only
+     *  if every file is indexed and the catalog is written.  If this
+     *  fails, the files, games, and segments added so far are dropped
+     *  again, so that both this object and the index on disk are as they
+     *  were (apart from unused segment files). */
+    synchronized void add(List<Path> files, int threads) throws IOException {
+        if (threads <= 0) {
+            throw error("need at least one indexing thread");
+        }
+        int firstFile = _files.size(), firstGame = _numGames;
+        List<Segment> old = new ArrayList<>(_segments);
+        for (Path file : files) {
+            _files.add(file.toAbsolutePath().normalize());
+        }
+        ExecutorService tasks = Executors.newFixedThreadPool(threads);
+        try {
+            try {
+                List<Future<Object>> done = new ArrayList<>();
+                for (int f = firstFile; f < _files.size(); f += 1) {
+                    int fileNum = f;
+                    done.add(tasks.submit(() -> {
+                        indexFile(fileNum);
+                        return null;
+                    }));
+                }
+                for (Future<Object> task : done) {
+                    GameReplay.await(task);
+                }
+            } finally {
+                stop(tasks);
+            }
+            writeCatalog();
+        } catch (IOException | RuntimeException excp) {
+            _files.subList(firstFile, _files.size()).clear();
+            _numGames = firstGame;
+            _segments.clear();
+            _segments.addAll(old);
+            throw excp;
+        }
+        if (_segments.size() > MAX_SEGMENTS) {
+            compact();
+        }
+    }
+
+    /** Cancel TASKS, and wait until none of them is running, so that they
+     *  no longer add games or segments. */
+    private static void stop(ExecutorService tasks) {
+        tasks.shutdownNow();
+        boolean interrupted = false;
+        while (!tasks.isTerminated()) {
+            try {
+                tasks.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Merge the smallest segments into one, as many as fit in a segment,
+     *  leaving at most MAX_SEGMENTS (if possible). */
+    synchronized void compact() throws IOException {
+        List<Segment> bySize = new ArrayList<>(_segments);
+        bySize.sort(Comparator.comparingLong(Segment::size));
+        List<Segment> merged = new ArrayList<>();
+        long total = 0;
+        for (Segment seg : bySize) {
+            if (total + seg.size() > MAX_SEGMENT_ENTRIES) {
+                break;
+            }
+            merged.add(seg);
+            total += seg.size();
+        }
+        if (merged.size() < 2) {
+            return;
+        }
+        Path file = newSegmentFile();
+        try (SegmentWriter out = new SegmentWriter(file, total)) {
+            long[] next = new long[merged.size()];
+            for (long k = 0; k < total; k += 1) {
+                int best = -1;
+                for (int s = 0; s < next.length; s += 1) {
+                    if (next[s] < merged.get(s).size()
+                        && (best < 0
+                            || merged.get(s).compare(next[s], merged.get(best),
+                                                     next[best]) < 0)) {
+                        best = s;
+                    }
+                }
+                Segment seg = merged.get(best);
+                out.put(seg.key(next[best]), seg.value(next[best]));
+                next[best] += 1;
+            }
+        }
+        List<Segment> old = new ArrayList<>(_segments);
+        _segments.removeAll(merged);
+        _segments.add(new Segment(file));
+        try {
+            writeManifest();
+        } catch (IOException excp) {
+            _segments.clear();
+            _segments.addAll(old);
+            throw excp;
+        }
+        for (Segment seg : merged) {
+            Files.delete(seg.file());
+        }
+    }
+
+    /** Return the number of games indexed. */
+    synchronized int games() {
+        return _numGames;
+    }
+
+    /** Return the number of postings in the index. */
+    synchronized long postings() {
+        long n = 0;
+        for (Segment seg : _segments) {
+            n += seg.size();
+        }
+        return n;
+    }
+
+    /** Return the number of segments. */
+    synchronized int segments() {
+        return _segments.size();
+    }
+
+    /** Return the file containing the game numbered GAME. */
+    synchronized Path gameFile(int game) {
+        return _files.get(_gameFiles[game]);
+    }
+
+    /** Return the number of the game numbered GAME within its file, from
+     *  0 (see GameReplay.Position.game). */
+    synchronized int gameNumber(int game) {
+        return _gameNumbers[game];
+    }
+
+    /** Return the winner of the game numbered GAME, or null if it did not
+     *  finish. */
+    synchronized Piece result(int game) {
+        return GameRecord.resultPiece(_results[game]);
+    }
+
+    /** Return the postings for positions with hash KEY, in increasing
+     *  order of game number and ply.  Each is packed as by posting: its
+     *  game, ply and next move are recovered by gameOf, plyOf and moveOf.
+     *  A game appears once for each time it reached the position. */
+    synchronized long[] lookup(long key) {
+        long[] result = new long[0];
+        int n = 0;
+        for (Segment seg : _segments) {
+            for (long i = seg.lowerBound(key);
+                 i < seg.size() && seg.key(i) == key; i += 1) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, 2 * n + 8);
+                }
+                result[n] = seg.value(i);
+                n += 1;
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the continuations from the current position of BOARD in the
+     *  indexed games, the most often played first. */
+    List<Continuation> continuations(Board board) {
+        if (board.variant() != Variant.TABLUT) {
+            throw error("only standard Tablut games are indexed");
+        }
+        long[] postings = lookup(board.hash());
+        Map<Integer, Continuation> byMove = new TreeMap<>();
+        synchronized (this) {
+            for (long posting : postings) {
+                int move = moveOf(posting);
+                Continuation cont = byMove.get(move);
+                if (cont == null) {
+                    cont = new Continuation(move);
+                    byMove.put(move, cont);
+                }
+                cont.count(GameRecord.resultPiece(_results[gameOf(posting)]));
+            }
+        }
+        List<Continuation> result = new ArrayList<>(byMove.values());
+        result.sort((a, b) -> b.games() - a.games());
+        return result;
+    }
+
+    /** Return the posting of the position reached by game number GAME
+     *  after PLY moves, whose next move has code MOVE (-1 if none). */
+    static long posting(int game, int ply, int move) {
+        return (long) game << 32 | (long) ply << 16 | (move & NO_MOVE);
+    }
+
+    /** Return the game number of POSTING. */
+    static int gameOf(long posting) {
+        return (int) (posting >>> 32);
+    }
+
+    /** Return the ply of POSTING. */
+    static int plyOf(long posting) {
+        return (int) (posting >> 16) & 0xffff;
+    }
+
+    /** Return the code of the next move of POSTING, or -1 if none. */
+    static int moveOf(long posting) {
+        int move = (int) posting & NO_MOVE;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    @Override
+    public synchronized void close() {
+        _segments.clear();
+    }
+
+    /** Replay the games of the file numbered FILENUM, writing their
+     *  postings to new segments. */
+    private void indexFile(int fileNum) throws IOException {
+        List<GameRecord> games = GameReplay.readGames(_files.get(fileNum));
+        int first;
+        synchronized (_tasks) {
+            first = _numGames;
+            for (int g = 0; g < games.size(); g += 1) {
+                addGame(fileNum, g, games.get(g).result());
+            }
+        }
+        long[] keys = new long[_bufferEntries];
+        long[] values = new long[_bufferEntries];
+        int n = 0;
+        Board board = new Board();
+        for (int g = 0; g < games.size(); g += 1) {
+            GameRecord game = games.get(g);
+            if (game.variant() != Variant.TABLUT) {
+                continue;
+            }
+            board.init();
+            int plies = Math.min(game.moveCount(), MAX_PLY);
+            for (int ply = 0; ply <= plies; ply += 1) {
+                if (n == keys.length) {
+                    writeSegment(keys, values, n);
+                    n = 0;
+                }
+                int move = ply < game.moveCount() ? game.move(ply) : NO_MOVE;
+                keys[n] = board.hash();
+                values[n] = posting(first + g, ply, move);
+                n += 1;
+                if (move != NO_MOVE) {
+                    board.makeMove(move);
+                }
+            }
+        }
+        if (n > 0) {
+            writeSegment(keys, values, n);
+        }
+    }
+
+    /** Sort the first N postings in KEYS and VALUES, and write them to a
+     *  new segment. */
+    private void writeSegment(long[] keys, long[] values, int n)
+        throws IOException {
+        sort(keys, values, n);
+        Path file = newSegmentFile();
+        try (SegmentWriter out = new SegmentWriter(file, n)) {
+            for (int i = 0; i < n; i += 1) {
+                out.put(keys[i], values[i]);
+            }
+        }
+        Segment seg = new Segment(file);
+        synchronized (_tasks) {
+            _segments.add(seg);
+        }
+    }
+
+    /** Sort the first N elements of KEYS into unsigned order, permuting
+     *  VALUES in the same way.  The sort is stable, so postings with equal
+     *  keys stay in order of game and ply.  It is a radix sort, one byte
+     *  of the keys per pass. */
+    private static void sort(long[] keys, long[] values, int n) {
+        long[] keys2 = new long[n], values2 = new long[n];
+        int[] start = new int[257];
+        for (int shift = 0; shift < Long.SIZE; shift += 8) {
+            Arrays.fill(start, 0);
+            for (int i = 0; i < n; i += 1) {
+                start[((int) (keys[i] >>> shift) & 0xff) + 1] += 1;
+            }
+            for (int b = 0; b < 256; b += 1) {
+                start[b + 1] += start[b];
+            }
+            for (int i = 0; i < n; i += 1) {
+                int b = (int) (keys[i] >>> shift) & 0xff;
+                keys2[start[b]] = keys[i];
+                values2[start[b]] = values[i];
+                start[b] += 1;
+            }
+            long[] t = keys;
+            keys = keys2;
+            keys2 = t;
+            t = values;
+            values = values2;
+            values2 = t;
+        }
+    }
+
+    /** Record a game of the file numbered FILE, in which it is game
+     *  number NUM, with result RESULT. */
+    private void addGame(int file, int num, Piece result) {
+        if (_numGames == _results.length) {
+            int size = Math.max(2 * _numGames, 1024);
+            _gameFiles = Arrays.copyOf(_gameFiles, size);
+            _gameNumbers = Arrays.copyOf(_gameNumbers, size);
+            _results = Arrays.copyOf(_results, size);
+        }
+        _gameFiles[_numGames] = file;
+        _gameNumbers[_numGames] = num;
+        _results[_numGames] = (byte) GameRecord.resultCode(result);
+        _numGames += 1;
+    }
+
+    /** Write the lists of files and games, and then the manifest. */
+    private void writeCatalog() throws IOException {
+        StringBuilder files = new StringBuilder();
+        for (Path file : _files) {
+            files.append(file).append('\n');
+        }
+        replace(FILES, files.toString().getBytes(StandardCharsets.UTF_8));
+        ByteBuffer games = ByteBuffer.allocate(_numGames * GAME_SIZE);
+        for (int g = 0; g < _numGames; g += 1) {
+            games.putInt(_gameFiles[g]).putInt(_gameNumbers[g])
+                .put(_results[g]);
+        }
+        replace(GAMES, games.array());
+        writeManifest();
+    }
+
+    /** Write the list of live segments. */
+    private void writeManifest() throws IOException {
+        StringBuilder names = new StringBuilder();
+        for (Segment seg : _segments) {
+            names.append(seg.file().getFileName()).append('\n');
+        }
+        replace(MANIFEST, names.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Replace the file called NAME in my directory by one containing
+     *  CONTENTS, so that readers see either all of the old or all of the
+     *  new contents. */
+    private void replace(String name, byte[] contents) throws IOException {
+        Path temp = _dir.resolve(name + ".new");
+        try (FileChannel out =
+                 FileChannel.open(temp, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(contents));
+            out.force(true);
+        }
+        Files.move(temp, _dir.resolve(name), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /** Return the name of a new segment file. */
+    private Path newSegmentFile() {
+        synchronized (_tasks) {
+            Path file =
+                _dir.resolve(String.format("segment-%06d", _nextSegment));
+            _nextSegment += 1;
+            return file;
+        }
+    }
+
+    /** Return the number of the segment file called NAME. */
+    private static int segmentNumber(String name) {
+        try {
+            return Integer.parseInt(name.substring(name.indexOf('-') + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error("bad segment name in manifest: %s", name);
+        }
+    }
+
+    /** A segment file, mapped into memory. */
+    private static final class Segment {
+
+        /** The segment in FILE. */
+        Segment(Path file) throws IOException {
+            _file = file;
+            try (FileChannel in = FileChannel.open(file, READ)) {
+                _map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            }
+            for (int i = 0; i < SEGMENT_MAGIC.length; i += 1) {
+                if (_map.get(i) != SEGMENT_MAGIC[i]) {
+                    throw new IOException(file + " is not an index segment");
+                }
+            }
+            if (_map.get(SEGMENT_MAGIC.length) != VERSION) {
+                throw new IOException(file + " has an unknown version");
+            }
+            _size = _map.getLong(8);
+            if (HEADER_SIZE + _size * ENTRY_SIZE != _map.capacity()) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+
+        /** Return my file. */
+        Path file() {
+            return _file;
+        }
+
+        /** Return my number of postings. */
+        long size() {
+            return _size;
+        }
+
+        /** Return the key of posting number I. */
+        long key(long i) {
+            return _map.getLong((int) (HEADER_SIZE + i * ENTRY_SIZE));
+        }
+
+        /** Return posting number I, packed as by PositionIndex.posting. */
+        long value(long i) {
+            return _map.getLong((int) (HEADER_SIZE + i * ENTRY_SIZE + 8));
+        }
+
+        /** Return the number of the first posting whose key is not less
+         *  than KEY, or size() if there is none. */
+        long lowerBound(long key) {
+            long lo = 0, hi = _size;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (Long.compareUnsigned(key(mid), key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /** Compare my posting number I with posting J of OTHER, by key and
+         *  then by game, ply and move, returning a negative, zero, or
+         *  positive value as for Comparator. */
+        int compare(long i, Segment other, long j) {
+            int c = Long.compareUnsigned(key(i), other.key(j));
+            return c != 0 ? c : Long.compare(value(i), other.value(j));
+        }
+
+        /** My file. */
+        private final Path _file;
+        /** The contents of my file. */
+        private final MappedByteBuffer _map;
+        /** My number of postings. */
+        private final long _size;
+    }
+
+    /** A writer of a new segment file. */
+    private static final class SegmentWriter implements Closeable {
+
+        /** A writer of the segment FILE, which will contain SIZE
+         *  postings. */
+        SegmentWriter(Path file, long size) throws IOException {
+            _channel = FileChannel.open(file, WRITE, CREATE,
+                                        TRUNCATE_EXISTING);
+            _buffer.put(SEGMENT_MAGIC).put((byte) VERSION)
+                .put(new byte[3]).putLong(size);
+        }
+
+        /** Append the posting VALUE for key KEY. */
+        void put(long key, long value) throws IOException {
+            if (_buffer.remaining() < ENTRY_SIZE) {
+                drain();
+            }
+            _buffer.putLong(key).putLong(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            _channel.force(true);
+            _channel.close();
+        }
+
+        /** Write out the contents of my buffer. */
+        private void drain() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** My file. */
+        private final FileChannel _channel;
+        /** Output not yet written. */
+        private final ByteBuffer _buffer = ByteBuffer.allocateDirect(1 << 16);
+    }
+
+    /** Build, query, or compact the index in directory ARGS[1]:
+     *  <pre>
+     *      build INDEX ARCHIVE [THREADS]   add the games in ARCHIVE
+     *      query INDEX [MOVE ...]          continuations after the MOVEs
+     *      compact INDEX                   merge segments
+     *  </pre> */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            usage();
+        }
+        try (PositionIndex index = new PositionIndex(Paths.get(args[1]))) {
+            switch (args[0]) {
+            case "build":
+                if (args.length < 3 || args.length > 4) {
+                    usage();
+                }
+                int threads = args.length > 3 ? Integer.parseInt(args[3])
+                    : Runtime.getRuntime().availableProcessors();
+                long start = System.nanoTime();
+                index.add(Paths.get(args[2]), threads);
+                System.out.printf("%d games, %d postings in %d segments "
+                                  + "(%.3f s)%n", index.games(),
+                                  index.postings(), index.segments(),
+                                  (System.nanoTime() - start) * 1e-9);
+                break;
+            case "query":
+                Board board = new Board();
+                for (int i = 2; i < args.length; i += 1) {
+                    Move move = Move.mv(args[i]);
+                    if (move == null || !board.isLegal(move)) {
+                        fatal("Illegal move: %s%n", args[i]);
+                    }
+                    board.makeMove(move);
+                }
+                for (Continuation cont : index.continuations(board)) {
+                    System.out.println(cont);
+                }
+                break;
+            case "compact":
+                index.compact();
+                System.out.printf("%d segments%n", index.segments());
+                break;
+            default:
+                usage();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            fatal("Index failed: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        fatal("Usage: java tablut.PositionIndex build INDEX ARCHIVE [THREADS]"
+              + "%n       java tablut.PositionIndex query INDEX [MOVE ...]"
+              + "%n       java tablut.PositionIndex compact INDEX%n");
+    }
+
+    /** Names of the manifest, and of the lists of files and games. */
+    private static final String MANIFEST = "manifest", FILES = "files",
+        GAMES = "games";
+    /** Size of the entry for a game in the list of games, in bytes. */
+    private static final int GAME_SIZE = 9;
+    /** The largest ply indexed. */
+    private static final int MAX_PLY = 0xffff;
+
+    /** My directory. */
+    private final Path _dir;
+    /** Number of postings buffered by each indexing task. */
+    private final int _bufferEntries;
+    /** The game files indexed, by number. */
+    private final List<Path> _files = new ArrayList<>();
+    /** The number of games indexed. */
+    private int _numGames;
+    /** For each game, the number of its file, its number in that file, and
+     *  its result code (see GameRecord.resultCode). */
+    private int[] _gameFiles = new int[0], _gameNumbers = new int[0];
+    /** See _gameFiles. */
+    private byte[] _results = new byte[0];
+    /** The live segments. */
+    private final List<Segment> _segments = new ArrayList<>();
+    /** The number of the next segment file. */
+    private int _nextSegment;
+    /** Lock held by the indexing tasks of add, which run while add holds
+     *  the lock on this index, to change the lists of games and
+     *  segments. */
+    private final Object _tasks = new Object();
+}
@@ -0,0 +1,202 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of PositionIndex against replaying the indexed games.
+ *  @author Jennifer Tran
+ */
+public class PositionIndexTest {
+
+    /** Postings buffered by each indexing task: small, so that indexing
+     *  the test archive writes many segments and compacts them. */
+    static final int BUFFER = 2000;
+
+    /** An index of an archive of games of several variants, built by
+     *  several tasks, finds exactly the Tablut positions that replaying
+     *  the games reaches, with their games, plies and next moves, both
+     *  when it is built and when it is opened again. */
+    @Test
+    public void matchesReplay() throws IOException {
+        Path archive = GameReplayTest.archive();
+        Path dir = Files.createTempDirectory("index");
+        try {
+            Map<Long, List<String>> expected = new HashMap<>();
+            int games = replay(archive, expected);
+            long postings = 0;
+            for (List<String> list : expected.values()) {
+                postings += list.size();
+            }
+            try (PositionIndex index = new PositionIndex(dir, BUFFER)) {
+                index.add(archive, 3);
+                assertEquals(games, index.games());
+                assertEquals(postings, index.postings());
+                assertTrue(index.segments() <= PositionIndex.MAX_SEGMENTS);
+                checkLookups(index, expected);
+            }
+            try (PositionIndex index = new PositionIndex(dir)) {
+                assertEquals(games, index.games());
+                checkLookups(index, expected);
+                assertEquals(0, index.lookup(12345).length);
+            }
+        } finally {
+            GameReplayTest.delete(archive);
+            GameReplayTest.delete(dir);
+        }
+    }
+
+    /** An add that fails, here on a missing file, adds nothing: the index
+     *  keeps its games and postings, and can still be added to and
+     *  opened again. */
+    @Test
+    public void failedAddAddsNothing() throws IOException {
+        Path archive = GameReplayTest.archive();
+        Path dir = Files.createTempDirectory("index");
+        try {
+            Map<Long, List<String>> expected = new HashMap<>();
+            int games = replay(archive, expected);
+            List<Path> files = GameReplay.gameFiles(archive);
+            List<Path> bad = new ArrayList<>(files);
+            bad.add(archive.resolve("missing"));
+            try (PositionIndex index = new PositionIndex(dir, BUFFER)) {
+                try {
+                    index.add(bad, 3);
+                    fail("indexed a missing file");
+                } catch (IOException excp) {
+                    /* Expected. */
+                }
+                assertEquals(0, index.games());
+                assertEquals(0, index.postings());
+                index.add(files, 3);
+                assertEquals(games, index.games());
+                checkLookups(index, expected);
+            }
+            try (PositionIndex index = new PositionIndex(dir)) {
+                assertEquals(games, index.games());
+                checkLookups(index, expected);
+            }
+        } finally {
+            GameReplayTest.delete(archive);
+            GameReplayTest.delete(dir);
+        }
+    }
+
+    /** The continuations from the initial position count every indexed
+     *  Tablut game once, by its first move and result, most frequent
+     *  first. */
+    @Test
+    public void continuationsFromStart() throws IOException {
+        Path archive = GameReplayTest.archive();
+        Path dir = Files.createTempDirectory("index");
+        try (PositionIndex index = new PositionIndex(dir, BUFFER)) {
+            index.add(archive, 2);
+            Map<Integer, int[]> expected = new HashMap<>();
+            int tablut = 0;
+            for (Path file : GameReplay.gameFiles(archive)) {
+                for (GameRecord game : GameReplay.readGames(file)) {
+                    if (game.variant() == Variant.TABLUT) {
+                        tablut += 1;
+                        int move = game.moveCount() == 0 ? -1 : game.move(0);
+                        int[] counts = expected.computeIfAbsent(
+                            move, m -> new int[3]);
+                        counts[0] += 1;
+                        counts[1] += game.result() == Piece.WHITE ? 1 : 0;
+                        counts[2] += game.result() == Piece.BLACK ? 1 : 0;
+                    }
+                }
+            }
+            List<PositionIndex.Continuation> conts =
+                index.continuations(new Board());
+            assertEquals(expected.size(), conts.size());
+            int total = 0;
+            for (int i = 0; i < conts.size(); i += 1) {
+                PositionIndex.Continuation cont = conts.get(i);
+                int[] counts = expected.get(cont.move());
+                assertNotNull(counts);
+                assertEquals(counts[0], cont.games());
+                assertEquals(counts[1], cont.wins(Piece.WHITE));
+                assertEquals(counts[2], cont.wins(Piece.BLACK));
+                if (i > 0) {
+                    assertTrue(conts.get(i - 1).games() >= cont.games());
+                }
+                total += cont.games();
+            }
+            assertEquals(tablut, total);
+        } finally {
+            GameReplayTest.delete(archive);
+            GameReplayTest.delete(dir);
+        }
+    }
+
+    /** Replay the games in the game files in ARCHIVE, adding to EXPECTED,
+     *  for each position reached in a Tablut game, the description (see
+     *  describe) of that game, the ply, and the next move, under the
+     *  position's hash.  Return the number of games of all variants. */
+    private static int replay(Path archive, Map<Long, List<String>> expected)
+        throws IOException {
+        int games = 0;
+        for (Path file : GameReplay.gameFiles(archive)) {
+            List<GameRecord> records = GameReplay.readGames(file);
+            games += records.size();
+            for (int g = 0; g < records.size(); g += 1) {
+                GameRecord game = records.get(g);
+                if (game.variant() != Variant.TABLUT) {
+                    continue;
+                }
+                Board board = new Board();
+                for (int ply = 0; ply <= game.moveCount(); ply += 1) {
+                    int move = ply < game.moveCount() ? game.move(ply) : -1;
+                    expected.computeIfAbsent(board.hash(),
+                                             h -> new ArrayList<>())
+                        .add(describe(file, g, ply, move));
+                    if (move >= 0) {
+                        board.makeMove(move);
+                    }
+                }
+            }
+        }
+        return games;
+    }
+
+    /** Assert that looking up each hash in EXPECTED in INDEX gives
+     *  postings in order of game and ply, whose descriptions are those
+     *  listed in EXPECTED. */
+    private static void checkLookups(PositionIndex index,
+                                     Map<Long, List<String>> expected) {
+        for (Map.Entry<Long, List<String>> entry : expected.entrySet()) {
+            long[] postings = index.lookup(entry.getKey());
+            List<String> found = new ArrayList<>();
+            for (int i = 0; i < postings.length; i += 1) {
+                long p = postings[i];
+                if (i > 0) {
+                    assertTrue(postings[i - 1] < p);
+                }
+                int game = PositionIndex.gameOf(p);
+                found.add(describe(index.gameFile(game),
+                                   index.gameNumber(game),
+                                   PositionIndex.plyOf(p),
+                                   PositionIndex.moveOf(p)));
+            }
+            List<String> wanted = new ArrayList<>(entry.getValue());
+            wanted.sort(null);
+            found.sort(null);
+            assertEquals(wanted, found);
+        }
+    }
+
+    /** Return a description of the position reached after PLY moves of
+     *  game number GAME in FILE, whose next move has code MOVE. */
+    private static String describe(Path file, int game, int ply, int move) {
+        return String.format("%s:%d:%d:%d",
+                             file.toAbsolutePath().normalize(),
+                             game, ply, move);
+    }
+}
@@ -0,0 +1,80 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/** A reader of the lines of a command script, for batch runs.  It reads
+ *  the file through a FileChannel in large blocks and splits the lines
+ *  itself, with none of the per-line pattern matching of a Scanner.
+ *  Commands are ASCII, so bytes are taken as ISO-8859-1 characters
+ *  (anything else can appear only in comments, which are ignored).  Lines
+ *  may end in LF or CRLF.
+ *  @author Jennifer Tran
+ */
+class ScriptReader implements Closeable {
+
+    /** Size of the input blocks, in bytes. */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /** A reader of the lines of FILE. */
+    ScriptReader(Path file) throws IOException {
+        _channel = FileChannel.open(file, READ);
+        _block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        _block.flip();
+    }
+
+    /** Return the next line, without its terminator, or null if there
+     *  are no more. */
+    String readLine() throws IOException {
+        int n = 0;
+        while (true) {
+            if (!_block.hasRemaining()) {
+                _block.clear();
+                int k = _channel.read(_block);
+                _block.flip();
+                if (k < 0) {
+                    return n == 0 ? null : line(n);
+                }
+            }
+            while (_block.hasRemaining()) {
+                byte b = _block.get();
+                if (b == '\n') {
+                    return line(n);
+                }
+                if (n == _chars.length) {
+                    char[] chars = new char[2 * n];
+                    System.arraycopy(_chars, 0, chars, 0, n);
+                    _chars = chars;
+                }
+                _chars[n] = (char) (b & 0xff);
+                n += 1;
+            }
+        }
+    }
+
+    /** Return the line consisting of the first N characters of _chars,
+     *  less any trailing carriage return. */
+    private String line(int n) {
+        if (n > 0 && _chars[n - 1] == '\r') {
+            n -= 1;
+        }
+        return new String(_chars, 0, n);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** The script. */
+    private final FileChannel _channel;
+    /** The block of the script being read. */
+    private final ByteBuffer _block;
+    /** The characters of the line being read. */
+    private char[] _chars = new char[128];
+}
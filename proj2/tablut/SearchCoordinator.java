@@ -0,0 +1,575 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static tablut.Utils.*;
+
+/** Distributes deep searches among SearchWorker processes connected over
+ *  TCP.  The root move list is split into jobs, one for each root move,
+ *  which idle workers take from a queue.  When the queue is empty and a
+ *  worker is idle while others are still busy, the idle worker steals part
+ *  of the unfinished job nearest the root: that job is split into jobs
+ *  for each of its replies, which idle workers take in turn.  The job
+ *  then finishes with whichever comes first: its original worker's result,
+ *  or the combination of all its children's results.  Work that becomes
+ *  unnecessary is cancelled.
+ *
+ *  When a worker's connection fails, its unfinished job goes back to the
+ *  front of the queue.  If every worker is lost, the coordinator finishes
+ *  the search itself.
+ *
+ *  The protocol consists of lines of text.  The coordinator sends
+ *  <pre>
+ *      search ID VARIANT POSITION DEPTH
+ *      cancel ID
+ *      quit
+ *  </pre>
+ *  where POSITION is as for Board.encodedBoard and DEPTH is the number of
+ *  plies to search.  A worker answers each search with one of
+ *  <pre>
+ *      result ID SCORE NODES
+ *      cancelled ID
+ *      error ID MESSAGE
+ *  </pre>
+ *  where SCORE is the position's value, positive favoring white.  Jobs
+ *  carry positions, not the moves leading to them, so repetitions of
+ *  positions before a job's position are not detected.
+ *  @author Jennifer Tran
+ */
+class SearchCoordinator implements Closeable {
+
+    /** A coordinator that accepts workers on PORT (any free port if 0). */
+    SearchCoordinator(int port) throws IOException {
+        _server = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptWorkers, "coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Return the port on which I accept workers. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Start N worker processes on this host, running the same Java and
+     *  class path as this program, and wait (up to a limit) until they
+     *  have connected. */
+    void startLocalWorkers(int n) throws IOException {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        int expected;
+        synchronized (this) {
+            expected = _handlers.size() + n;
+        }
+        for (int i = 0; i < n; i += 1) {
+            ProcessBuilder builder =
+                new ProcessBuilder(java, "-cp",
+                                   System.getProperty("java.class.path"),
+                                   "tablut.SearchWorker", "localhost",
+                                   Integer.toString(port()));
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            synchronized (this) {
+                _processes.add(builder.start());
+            }
+        }
+        long deadline = System.currentTimeMillis() + CONNECT_MILLIS;
+        synchronized (this) {
+            while (_handlers.size() < expected
+                   && System.currentTimeMillis() < deadline) {
+                waitQuietly(POLL_MILLIS);
+            }
+        }
+    }
+
+    /** Return the number of connected workers. */
+    synchronized int workers() {
+        return _handlers.size();
+    }
+
+    /** Return the number of nodes searched by the workers (and by me) in
+     *  the last search. */
+    synchronized long nodes() {
+        return _nodes;
+    }
+
+    /** Return the best move for the side to move on BOARD and its score,
+     *  as found by a search of DEPTH plies, or null if there are no
+     *  moves.  If TOKEN is cancelled first, returns the best of the root
+     *  moves searched so far (null if none).  BOARD is not modified. */
+    AI.Line search(Board board, int depth, CancellationToken token) {
+        if (depth < 1) {
+            throw error("search depth must be positive");
+        }
+        Job root;
+        synchronized (this) {
+            if (_search != null) {
+                throw error("a search is already in progress");
+            }
+            _variant = board.variant();
+            _nodes = 0;
+            root = new Job(null, -1, board.encodedBoard(), board.turn(),
+                           depth);
+            if (board.winner() != null || !split(root, board)) {
+                return null;
+            }
+            _search = root;
+            notifyAll();
+        }
+        try {
+            while (true) {
+                List<Job> orphans;
+                synchronized (this) {
+                    while (!root.done && !token.isCancelled()
+                           && !_handlers.isEmpty()) {
+                        waitQuietly(POLL_MILLIS);
+                    }
+                    if (root.done || token.isCancelled()) {
+                        break;
+                    }
+                    orphans = new ArrayList<>();
+                    for (Job job : root.children) {
+                        if (!job.done) {
+                            orphans.add(job);
+                        }
+                    }
+                }
+                searchLocally(orphans, token);
+            }
+        } finally {
+            synchronized (this) {
+                _search = null;
+                _queue.clear();
+                for (Handler handler : _handlers) {
+                    if (handler.job != null) {
+                        handler.send("cancel %d", handler.job.id);
+                    }
+                }
+            }
+        }
+        return result(root);
+    }
+
+    /** Search the root jobs JOBS myself, stopping if TOKEN is cancelled or
+     *  a worker connects. */
+    private void searchLocally(List<Job> jobs, CancellationToken token) {
+        if (_local == null) {
+            _local = new AI();
+        }
+        Board board = new Board(_variant);
+        for (Job job : jobs) {
+            synchronized (this) {
+                if (token.isCancelled() || !_handlers.isEmpty()) {
+                    return;
+                }
+            }
+            board.setPosition(job.position);
+            int score = _local.score(board, job.depth, token);
+            synchronized (this) {
+                _nodes += _local.nodes();
+                if (!token.isCancelled() && !moot(job)) {
+                    resolve(job, score);
+                }
+            }
+        }
+    }
+
+    /** Return the result of the search whose root job is ROOT, as for
+     *  search. */
+    private synchronized AI.Line result(Job root) {
+        if (root.done) {
+            return new AI.Line(root.score, new int[] { root.bestMove });
+        }
+        Job best = null;
+        for (Job job : root.children) {
+            if (job.done && (best == null || better(root, job.score,
+                                                    best.score))) {
+                best = job;
+            }
+        }
+        return best == null ? null
+            : new AI.Line(best.score, new int[] { best.move });
+    }
+
+    /** Stop all workers, and stop accepting them. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            _closed = true;
+            for (Handler handler : _handlers) {
+                handler.send("quit");
+            }
+            notifyAll();
+        }
+        _server.close();
+        for (Process process : _processes) {
+            process.destroy();
+        }
+    }
+
+    /** A unit of work: searching the position after a move. */
+    private final class Job {
+        /** The job of searching POSITION, in which TURN is to move, to
+         *  DEPTH plies.  It is the position after MOVE in the position of
+         *  PARENT (null for the root). */
+        Job(Job parent, int move, String position, Piece turn, int depth) {
+            _lastId += 1;
+            id = _lastId;
+            this.parent = parent;
+            this.move = move;
+            this.position = position;
+            this.turn = turn;
+            this.depth = depth;
+            root = parent == null ? this : parent.root;
+            bestMove = -1;
+        }
+
+        /** My number, used in messages. */
+        final int id;
+        /** The job whose position precedes mine, or null. */
+        final Job parent;
+        /** The root job of my search. */
+        final Job root;
+        /** The move from my parent's position to mine. */
+        final int move;
+        /** My position, encoded. */
+        final String position;
+        /** The side to move in my position. */
+        final Piece turn;
+        /** Number of plies to search. */
+        final int depth;
+        /** True iff my score is known. */
+        boolean done;
+        /** My score, once known. */
+        int score;
+        /** Jobs for the positions after each of my moves, if I have been
+         *  split; else null. */
+        Job[] children;
+        /** Number of my children whose scores are not known. */
+        int unresolved;
+        /** Best score of my children so far. */
+        int best;
+        /** Move leading to my best child. */
+        int bestMove;
+        /** Worker running me, or null. */
+        Handler worker;
+    }
+
+    /** A connection to one worker, and the thread that feeds it jobs. */
+    private final class Handler implements Runnable {
+        /** A handler for the worker connected through SOCKET. */
+        Handler(Socket socket) throws IOException {
+            _socket = socket;
+            socket.setTcpNoDelay(true);
+            _in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(),
+                                      StandardCharsets.UTF_8));
+            _out = new PrintWriter(socket.getOutputStream(), true,
+                                   StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Job current;
+                while ((current = nextJob(this)) != null) {
+                    send("search %d %s %s %d", current.id, _variant.name(),
+                         current.position, current.depth);
+                    String line = _in.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    String[] words = line.trim().split("\\s+");
+                    if (words.length < 2
+                        || Integer.parseInt(words[1]) != current.id
+                        || words[0].equals("error")) {
+                        break;
+                    } else if (words[0].equals("result")) {
+                        finished(current, Integer.parseInt(words[2]),
+                                 Long.parseLong(words[3]));
+                    } else {
+                        abandoned(current);
+                    }
+                }
+            } catch (IOException | RuntimeException excp) {
+                /* Treat as a lost worker. */
+            }
+            lost(this);
+            try {
+                _socket.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+        }
+
+        /** Send String.format(FORMAT, ARGS) to my worker. */
+        void send(String format, Object... args) {
+            synchronized (_out) {
+                _out.printf(format + "%n", args);
+            }
+        }
+
+        /** The job my worker is running, or null. */
+        Job job;
+        /** The connection. */
+        private final Socket _socket;
+        /** Replies from the worker. */
+        private final BufferedReader _in;
+        /** Commands to the worker. */
+        private final PrintWriter _out;
+    }
+
+    /** Accept connections from workers until closed. */
+    private void acceptWorkers() {
+        while (true) {
+            try {
+                Handler handler = new Handler(_server.accept());
+                synchronized (this) {
+                    if (_closed) {
+                        handler.send("quit");
+                        return;
+                    }
+                    _handlers.add(handler);
+                    notifyAll();
+                }
+                Thread thread = new Thread(handler, "worker connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Wait for and return the next job for HANDLER's worker, or null if I
+     *  have been closed. */
+    private synchronized Job nextJob(Handler handler) {
+        while (!_closed) {
+            if (_search != null) {
+                Job job = poll();
+                if (job == null) {
+                    job = steal();
+                }
+                if (job != null) {
+                    job.worker = handler;
+                    handler.job = job;
+                    return job;
+                }
+            }
+            waitQuietly(0);
+        }
+        return null;
+    }
+
+    /** Remove and return the next job in the queue that is still needed,
+     *  or null if there is none. */
+    private Job poll() {
+        while (!_queue.isEmpty()) {
+            Job job = _queue.poll();
+            if (!moot(job) && job.worker == null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /** Split the running job nearest the root that can be split, queue
+     *  its children, and return the first of them, or return null if
+     *  there is no such job. */
+    private Job steal() {
+        Job victim = null;
+        for (Handler handler : _handlers) {
+            Job job = handler.job;
+            if (job != null && job.children == null && job.depth > 1
+                && !moot(job)
+                && (victim == null || level(job) < level(victim))) {
+                victim = job;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        Board board = new Board(_variant);
+        board.setPosition(victim.position);
+        split(victim, board);
+        return poll();
+    }
+
+    /** Create and queue the jobs for the positions after each move from
+     *  JOB's position, which is the current position of BOARD.  Return
+     *  false if there are none (in which case JOB is not split). */
+    private boolean split(Job job, Board board) {
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.winner() == null
+            ? board.legalMoves(board.turn(), moves) : 0;
+        job.children = new Job[n];
+        if (n == 0) {
+            return false;
+        }
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            job.children[i] = new Job(job, moves[i], board.encodedBoard(),
+                                      board.turn(), job.depth - 1);
+            board.undo();
+            _queue.add(job.children[i]);
+        }
+        job.unresolved = n;
+        return true;
+    }
+
+    /** Record that JOB's worker has found its score to be SCORE, after
+     *  searching NODES nodes. */
+    private synchronized void finished(Job job, int score, long nodes) {
+        release(job);
+        if (job.root == _search) {
+            _nodes += nodes;
+        }
+        if (!moot(job)) {
+            resolve(job, score);
+        }
+    }
+
+    /** Record that JOB's worker stopped searching it without a result. */
+    private synchronized void abandoned(Job job) {
+        release(job);
+        if (!moot(job) && job.children == null) {
+            _queue.addFirst(job);
+            notifyAll();
+        }
+    }
+
+    /** Record that HANDLER's worker is gone, returning its job to the
+     *  queue. */
+    private synchronized void lost(Handler handler) {
+        _handlers.remove(handler);
+        if (handler.job != null) {
+            abandoned(handler.job);
+        }
+        notifyAll();
+    }
+
+    /** Record that JOB is no longer being run by a worker. */
+    private void release(Job job) {
+        if (job.worker != null) {
+            job.worker.job = null;
+            job.worker = null;
+        }
+    }
+
+    /** Record that the score of JOB is SCORE, and propagate the result
+     *  toward the root.  Cancels the workers running JOB or any of its
+     *  descendants. */
+    private void resolve(Job job, int score) {
+        job.done = true;
+        job.score = score;
+        for (Handler handler : _handlers) {
+            Job running = handler.job;
+            if (running != null && descends(running, job)) {
+                handler.send("cancel %d", running.id);
+            }
+        }
+        Job parent = job.parent;
+        if (parent != null && !parent.done) {
+            if (parent.bestMove < 0 || better(parent, score, parent.best)) {
+                parent.best = score;
+                parent.bestMove = job.move;
+            }
+            parent.unresolved -= 1;
+            if (parent.unresolved == 0) {
+                resolve(parent, parent.best);
+            }
+        }
+        notifyAll();
+    }
+
+    /** Return true iff SCORE is better than OTHER for the side to move in
+     *  JOB's position. */
+    private static boolean better(Job job, int score, int other) {
+        return job.turn == Piece.WHITE ? score > other : score < other;
+    }
+
+    /** Return true iff JOB is not needed: it belongs to a search other
+     *  than the current one, or its score or that of one of its ancestors
+     *  is known. */
+    private boolean moot(Job job) {
+        if (job.root != _search) {
+            return true;
+        }
+        for (Job j = job; j != null; j = j.parent) {
+            if (j.done) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff JOB is ANCESTOR or one of its descendants. */
+    private static boolean descends(Job job, Job ancestor) {
+        for (Job j = job; j != null; j = j.parent) {
+            if (j == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of moves from the root to JOB's position. */
+    private static int level(Job job) {
+        int result = 0;
+        for (Job j = job.parent; j != null; j = j.parent) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Wait on this object for up to MILLIS milliseconds (indefinitely if
+     *  0), preserving interrupts.  Must be called while holding its
+     *  lock. */
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Interval at which a waiting search checks for cancellation, in
+     *  milliseconds. */
+    private static final long POLL_MILLIS = 50;
+
+    /** Time allowed for local workers to connect, in milliseconds. */
+    private static final long CONNECT_MILLIS = 10_000;
+
+    /** Accepts connections from workers. */
+    private final ServerSocket _server;
+    /** Connected workers. */
+    private final List<Handler> _handlers = new ArrayList<>();
+    /** Worker processes I started. */
+    private final List<Process> _processes = new ArrayList<>();
+    /** Jobs waiting for workers. */
+    private final Deque<Job> _queue = new ArrayDeque<>();
+    /** Root job of the current search, or null. */
+    private Job _search;
+    /** Variant of the current search. */
+    private Variant _variant;
+    /** Number of the last job created. */
+    private int _lastId;
+    /** Nodes searched in the current or last search. */
+    private long _nodes;
+    /** True iff I have been closed. */
+    private boolean _closed;
+    /** Searcher used when no workers remain. */
+    private AI _local;
+}
@@ -0,0 +1,138 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static tablut.Utils.*;
+
+/** A process that searches positions on behalf of a SearchCoordinator.
+ *  It connects to the coordinator and then obeys the commands it sends
+ *  (see SearchCoordinator for the protocol), one search at a time, with
+ *  its own AI, whose transposition table it keeps from one search to the
+ *  next.  Searches run on a separate thread, so that cancellations are
+ *  seen while they run.
+ *  @author Jennifer Tran
+ */
+class SearchWorker {
+
+    /** Connect to the coordinator at host ARGS[0], port ARGS[1], and work
+     *  for it until it disconnects. */
+    public static void main(String... args) {
+        if (args.length != 2) {
+            fatal("Usage: java tablut.SearchWorker HOST PORT%n");
+        }
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            new SearchWorker(socket).run();
+        } catch (IOException | NumberFormatException excp) {
+            fatal("search worker: %s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** A worker that communicates with its coordinator through SOCKET. */
+    SearchWorker(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        _in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(),
+                                  StandardCharsets.UTF_8));
+        _out = new PrintWriter(socket.getOutputStream(), true,
+                               StandardCharsets.UTF_8);
+    }
+
+    /** Obey commands until "quit" or the end of the connection. */
+    void run() throws IOException {
+        try {
+            String line;
+            while ((line = _in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                switch (words[0]) {
+                case "search":
+                    startSearch(words);
+                    break;
+                case "cancel":
+                    CancellationToken token =
+                        _tokens.get(Integer.parseInt(words[1]));
+                    if (token != null) {
+                        token.cancel();
+                    }
+                    break;
+                case "quit":
+                    return;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            for (CancellationToken token : _tokens.values()) {
+                token.cancel();
+            }
+            _searcher.shutdownNow();
+        }
+    }
+
+    /** Queue the search described by WORDS: "search ID VARIANT POSITION
+     *  DEPTH". */
+    private void startSearch(String[] words) {
+        int id = Integer.parseInt(words[1]);
+        Variant variant = Variant.named(words[2]);
+        String position = words[3];
+        int depth = Integer.parseInt(words[4]);
+        CancellationToken token = new CancellationToken();
+        _tokens.put(id, token);
+        _searcher.execute(() -> search(id, variant, position, depth, token));
+    }
+
+    /** Search POSITION, an encoded board of VARIANT, to DEPTH plies for
+     *  the job with number ID, stopping early if TOKEN is cancelled, and
+     *  report the result. */
+    private void search(int id, Variant variant, String position, int depth,
+                        CancellationToken token) {
+        try {
+            if (variant == null) {
+                throw error("unknown variant");
+            }
+            if (!token.isCancelled()) {
+                Board board = new Board(variant);
+                board.setPosition(position);
+                int score = _ai.score(board, depth, token);
+                if (!token.isCancelled()) {
+                    send("result %d %d %d", id, score, _ai.nodes());
+                    return;
+                }
+            }
+            send("cancelled %d", id);
+        } catch (IllegalArgumentException excp) {
+            send("error %d %s", id, excp.getMessage());
+        } finally {
+            _tokens.remove(id);
+        }
+    }
+
+    /** Send the reply String.format(FORMAT, ARGS) to the coordinator. */
+    private void send(String format, Object... args) {
+        synchronized (_out) {
+            _out.printf(format + "%n", args);
+        }
+    }
+
+    /** Commands from the coordinator. */
+    private final BufferedReader _in;
+    /** Replies to the coordinator. */
+    private final PrintWriter _out;
+    /** Runs the searches, one at a time. */
+    private final ExecutorService _searcher =
+        Executors.newSingleThreadExecutor();
+    /** Tokens of the searches not yet finished, by job number. */
+    private final Map<Integer, CancellationToken> _tokens =
+        new ConcurrentHashMap<>();
+    /** The searcher. */
+    private final AI _ai = new AI();
+}
@@ -0,0 +1,314 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/** A proof-number solver, which determines whether the side to move can
+ *  force a win (a king escape for white, a king capture for black) within
+ *  a given number of plies.  It uses depth-first proof-number search: each
+ *  node has a proof number (the least number of leaf nodes that must be
+ *  shown to be wins to prove it) and a disproof number, and the search
+ *  descends to the most-proving child until the node's numbers exceed
+ *  thresholds passed down from its parent.
+ *
+ *  The numbers of the nodes searched are kept in a node table of fixed
+ *  size, so memory use does not grow with the search.  The table is
+ *  4-way set associative; when a set is full, its entry with the least
+ *  work (nodes searched beneath it) is replaced.  When a node is solved,
+ *  the entries of its children are discarded, since only its own value is
+ *  needed from then on.  Entries are keyed by the canonical hash of the
+ *  position (see Board.canonicalHash) combined with the number of plies
+ *  remaining, so that a result is never applied at a different horizon.
+ *  As usual for such tables, results may be slightly off in positions
+ *  whose outcome depends on the path to them (repetitions).
+ *  @author Jennifer Tran
+ */
+class Solver {
+
+    /** Outcomes of solve. */
+    static final int PROVEN = 1, DISPROVEN = -1, UNKNOWN = 0;
+
+    /** The largest number of plies a solver will search. */
+    static final int MAX_PLIES = 31;
+
+    /** A proof or disproof number denoting a node that cannot be proven
+     *  (respectively, disproven).  Sums of numbers are capped at INF, so
+     *  they never overflow. */
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    /** Number of entries in each set of the node table. */
+    private static final int WAYS = 4;
+
+    /** The token is polled once every CHECK_INTERVAL nodes (a power of
+     *  2). */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** A token that is never cancelled. */
+    private static final CancellationToken NEVER = new CancellationToken();
+
+    /** PLY_KEYS[k] is combined with the hash of a position searched with
+     *  k plies remaining. */
+    private static final long[] PLY_KEYS = new long[MAX_PLIES + 1];
+
+    static {
+        SplittableRandom keys = new SplittableRandom(0x501e5L);
+        for (int k = 0; k <= MAX_PLIES; k += 1) {
+            PLY_KEYS[k] = keys.nextLong();
+        }
+    }
+
+    /** A solver whose node table has 2**LOGSIZE entries.  The board and
+     *  move tables a search needs are allocated here, once, for the
+     *  deepest search allowed, rather than on each call to solve. */
+    Solver(int logSize) {
+        int n = 1 << logSize;
+        _keys = new long[n];
+        _pn = new int[n];
+        _dn = new int[n];
+        _work = new int[n];
+        _mask = n - 1;
+        _board = new Board();
+        _moves = new int[MAX_PLIES + 1][Board.MAX_MOVES];
+        _childKeys = new long[MAX_PLIES + 1][Board.MAX_MOVES];
+        _childPn = new int[MAX_PLIES + 1][Board.MAX_MOVES];
+        _childDn = new int[MAX_PLIES + 1][Board.MAX_MOVES];
+    }
+
+    /** Determine whether the side to move on BOARD can force a win within
+     *  PLIES plies, searching at most MAXNODES nodes.  Return PROVEN,
+     *  DISPROVEN, or UNKNOWN (if the node limit was reached).  BOARD is
+     *  not modified. */
+    int solve(Board board, int plies, long maxNodes) {
+        return solve(board, plies, maxNodes, NEVER);
+    }
+
+    /** Return the result of solve(BOARD, PLIES, MAXNODES), but giving up
+     *  (with UNKNOWN) as soon as possible after TOKEN is cancelled. */
+    int solve(Board board, int plies, long maxNodes,
+              CancellationToken token) {
+        if (plies < 1 || plies > MAX_PLIES) {
+            throw Utils.error("solver depth must be between 1 and %d",
+                              MAX_PLIES);
+        }
+        _board.copy(board);
+        _side = board.turn();
+        _maxNodes = maxNodes;
+        _token = token;
+        _stopped = false;
+        _nodes = 0;
+        _bestMove = -1;
+        clear();
+        if (_board.winner() != null) {
+            return _board.winner() == _side ? PROVEN : DISPROVEN;
+        }
+        search(plies, INF, INF);
+        _token = NEVER;
+        if (_pnOut != 0 && _dnOut != 0) {
+            return UNKNOWN;
+        } else if (_pnOut == 0) {
+            _bestMove = _moveOut;
+            return PROVEN;
+        } else {
+            return DISPROVEN;
+        }
+    }
+
+    /** Return the code of the first move of the win found by the last
+     *  call to solve, or -1 if it did not prove a win. */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the number of nodes searched by the last call to solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Search the current position of _board, which has REMAINING plies
+     *  left, until its proof number reaches THPN or its disproof number
+     *  reaches THDN, the node limit is reached, or the token is cancelled.
+     *  Records the result in the node table, and sets _pnOut, _dnOut, and
+     *  _moveOut to it.  The numbers of the children are kept in _childPn
+     *  and _childDn as well as in the table, so that the search progresses
+     *  even when the table is too small to hold them all. */
+    private void search(int remaining, int thpn, int thdn) {
+        long key = key(remaining);
+        long work0 = _nodes;
+        _nodes += 1;
+        if ((_nodes & (CHECK_INTERVAL - 1)) == 0 && _token.isCancelled()) {
+            _stopped = true;
+        }
+        Piece winner = _board.winner();
+        boolean or = _board.turn() == _side;
+        int[] moves = _moves[remaining];
+        int n = 0;
+        if (winner == null && remaining > 0) {
+            n = _board.legalMoves(_board.turn(), moves);
+        }
+        if (n == 0) {
+            boolean won = winner == null ? !or : winner == _side;
+            setResult(won ? 0 : INF, won ? INF : 0, -1);
+            store(key, _pnOut, _dnOut, 0);
+            return;
+        }
+        long[] childKeys = _childKeys[remaining];
+        int[] childPn = _childPn[remaining], childDn = _childDn[remaining];
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            childKeys[i] = key(remaining - 1);
+            winner = _board.winner();
+            if (winner != null || remaining == 1) {
+                boolean won = winner == _side;
+                childPn[i] = won ? 0 : INF;
+                childDn[i] = won ? INF : 0;
+            } else {
+                int slot = find(childKeys[i]);
+                childPn[i] = slot < 0 ? 1 : _pn[slot];
+                childDn[i] = slot < 0 ? 1 : _dn[slot];
+            }
+            _board.undo();
+        }
+        while (true) {
+            int pn = or ? INF : 0, dn = or ? 0 : INF;
+            int best = -1, bestValue = INF, second = INF, bestPn = 0,
+                bestDn = 0;
+            for (int i = 0; i < n; i += 1) {
+                int cpn = childPn[i], cdn = childDn[i];
+                int c = or ? cpn : cdn;
+                if (best < 0 || c < bestValue) {
+                    second = bestValue;
+                    best = i;
+                    bestValue = c;
+                    bestPn = cpn;
+                    bestDn = cdn;
+                } else if (c < second) {
+                    second = c;
+                }
+                if (or) {
+                    pn = Math.min(pn, cpn);
+                    dn = Math.min(INF, dn + cdn);
+                } else {
+                    pn = Math.min(INF, pn + cpn);
+                    dn = Math.min(dn, cdn);
+                }
+            }
+            int move = moves[best];
+            if (pn >= thpn || dn >= thdn || _nodes >= _maxNodes
+                || _stopped) {
+                if (pn == 0 || dn == 0) {
+                    for (int i = 0; i < n; i += 1) {
+                        remove(childKeys[i]);
+                    }
+                }
+                setResult(pn, dn, move);
+                store(key, pn, dn, _nodes - work0);
+                return;
+            }
+            int childThpn, childThdn;
+            if (or) {
+                childThpn = Math.min(thpn, second + 1);
+                childThdn = Math.min(INF, thdn - dn + bestDn);
+            } else {
+                childThpn = Math.min(INF, thpn - pn + bestPn);
+                childThdn = Math.min(thdn, second + 1);
+            }
+            _board.makeMove(move);
+            search(remaining - 1, childThpn, childThdn);
+            _board.undo();
+            childPn[best] = _pnOut;
+            childDn[best] = _dnOut;
+        }
+    }
+
+    /** Set the result of the last search to proof number PN, disproof
+     *  number DN, and best move MOVE. */
+    private void setResult(int pn, int dn, int move) {
+        _pnOut = pn;
+        _dnOut = dn;
+        _moveOut = move;
+    }
+
+    /** Return the table key of the current position of _board with
+     *  REMAINING plies left. */
+    private long key(int remaining) {
+        return _board.canonicalHash() ^ PLY_KEYS[remaining];
+    }
+
+    /** Return the slot of the node table holding the entry for KEY, or -1
+     *  if there is none. */
+    private int find(long key) {
+        int base = (int) (key ^ key >>> 32) & _mask & ~(WAYS - 1);
+        for (int i = base; i < base + WAYS; i += 1) {
+            if (_keys[i] == key && _work[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Record proof number PN and disproof number DN for KEY, whose
+     *  subtree took WORK nodes to search. */
+    private void store(long key, int pn, int dn, long work) {
+        int slot = find(key);
+        if (slot < 0) {
+            int base = (int) (key ^ key >>> 32) & _mask & ~(WAYS - 1);
+            slot = base;
+            for (int i = base; i < base + WAYS; i += 1) {
+                if (_work[i] < _work[slot]) {
+                    slot = i;
+                }
+            }
+            _keys[slot] = key;
+            _work[slot] = 0;
+        }
+        _pn[slot] = pn;
+        _dn[slot] = dn;
+        _work[slot] = (int) Math.min(Integer.MAX_VALUE,
+                                     _work[slot] + Math.max(1, work));
+    }
+
+    /** Discard the entry for KEY, if any. */
+    private void remove(long key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            _work[slot] = 0;
+        }
+    }
+
+    /** Discard all entries. */
+    private void clear() {
+        Arrays.fill(_work, 0);
+    }
+
+    /** The board being searched. */
+    private final Board _board;
+    /** The side trying to prove a win. */
+    private Piece _side;
+    /** Node limit and count for the current search. */
+    private long _maxNodes, _nodes;
+    /** The token of the current search. */
+    private CancellationToken _token = NEVER;
+    /** True iff the current search has been cancelled. */
+    private boolean _stopped;
+    /** The winning move found by the last search, or -1. */
+    private int _bestMove;
+    /** _moves[k] holds the moves generated with k plies remaining. */
+    private final int[][] _moves;
+    /** _childKeys[k][i] is the key of the position after _moves[k][i]. */
+    private final long[][] _childKeys;
+    /** _childPn[k][i] and _childDn[k][i] are the proof and disproof
+     *  numbers of the position after _moves[k][i]. */
+    private final int[][] _childPn, _childDn;
+    /** The proof and disproof numbers and best move found by the last
+     *  call to search. */
+    private int _pnOut, _dnOut, _moveOut;
+
+    /** Keys of the node table entries. */
+    private final long[] _keys;
+    /** Proof and disproof numbers of the entries. */
+    private final int[] _pn, _dn;
+    /** Work (nodes searched) for each entry; 0 denotes an empty slot. */
+    private final int[] _work;
+    /** Mask selecting a slot from a key. */
+    private final int _mask;
+}
@@ -0,0 +1,99 @@
+package tablut;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the proof-number Solver against a brute-force search.
+ *  @author Jennifer Tran
+ */
+public class SolverTest {
+
+    /** Depth of the solves compared with brute force. */
+    static final int PLIES = 3;
+
+    /** Number of random games of each variant from which positions are
+     *  taken. */
+    static final int GAMES = 10;
+
+    /** The solver proves a win exactly when brute force finds one, and the
+     *  move it reports wins, in positions from random games of Tablut and
+     *  Brandubh. */
+    @Test
+    public void agreesWithBruteForce() {
+        Solver solver = new Solver(16);
+        SplittableRandom random = new SplittableRandom(11);
+        int[] moves = new int[Board.MAX_MOVES];
+        int proven = 0;
+        for (Variant variant
+                 : new Variant[] { Variant.TABLUT, Variant.BRANDUBH }) {
+            for (int g = 0; g < GAMES; g += 1) {
+                Board board = new Board(variant);
+                for (int ply = 0; ply < 120 && board.winner() == null;
+                     ply += 1) {
+                    if (ply % 5 == 4) {
+                        Piece side = board.turn();
+                        int result = solver.solve(board, PLIES, 10_000_000);
+                        assertNotEquals(Solver.UNKNOWN, result);
+                        assertEquals(wins(board, side, PLIES),
+                                     result == Solver.PROVEN);
+                        if (result == Solver.PROVEN) {
+                            proven += 1;
+                            int move = solver.bestMove();
+                            Board after = new Board(board);
+                            assertTrue(after.isLegal(Move.from(move),
+                                                     Move.to(move)));
+                            after.makeMove(move);
+                            assertTrue(wins(after, side, PLIES - 1));
+                        }
+                    }
+                    int k = board.legalMoves(board.turn(), moves);
+                    board.makeMove(moves[random.nextInt(k)]);
+                }
+            }
+        }
+        assertTrue("no wins were found", proven > 0);
+    }
+
+    /** A solve whose token is cancelled gives up promptly with UNKNOWN,
+     *  and the solver can be used again afterwards. */
+    @Test
+    public void stopsWhenCancelled() {
+        Solver solver = new Solver(16);
+        Board board = new Board();
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertEquals(Solver.UNKNOWN, solver.solve(board, 5, 1_000_000, token));
+        long cancelled = solver.nodes();
+        assertTrue("searched " + cancelled + " nodes", cancelled <= 1024);
+        assertEquals(Solver.DISPROVEN, solver.solve(board, 5, 1_000_000));
+        assertTrue(solver.nodes() > cancelled);
+    }
+
+    /** Return true iff SIDE can force a win within PLIES plies from the
+     *  position on BOARD, by brute force.  BOARD is restored on return. */
+    private static boolean wins(Board board, Piece side, int plies) {
+        if (board.winner() != null) {
+            return board.winner() == side;
+        }
+        if (plies == 0) {
+            return false;
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(board.turn(), moves);
+        boolean or = board.turn() == side;
+        if (n == 0) {
+            return !or;
+        }
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            boolean won = wins(board, side, plies - 1);
+            board.undo();
+            if (won == or) {
+                return or;
+            }
+        }
+        return !or;
+    }
+}
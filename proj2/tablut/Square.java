@@ -126,6 +126,11 @@ final class Square {
         return _str;
     }
 
+    /** Return the index of the square at COL ROW, which must exist. */
+    static int index(int col, int row) {
+        return row * BOARD_SIZE + col;
+    }
+
     /** Return true iff COL ROW is a legal square. */
     static boolean exists(int col, int row) {
         return row >= 0 && col >= 0 && row < BOARD_SIZE && col < BOARD_SIZE;
@@ -157,8 +162,10 @@ final class Square {
     /** Return the (unique) Square denoting the position in POSN, in the
      *  standard text format for a square (e.g. a4). POSN must be a
      *  valid square designation. */
-    static Square sq(String posn) {
-        assert posn.matches(SQ);
+    static Square sq(CharSequence posn) {
+        if (posn.length() != 2) {
+            throw error("bad square designation: %s", posn);
+        }
         return sq(posn.charAt(0) - 'a', posn.charAt(1) - '1');
     }
 
@@ -167,7 +174,9 @@ final class Square {
         _index = index;
         _row = index / BOARD_SIZE;
         _col = index % BOARD_SIZE;
-        _str = String.format("%c%d", (char) ('a' + _col), 1 + _row);
+        _str = new String(new char[] {
+            (char) ('a' + _col), (char) ('1' + _row)
+        });
     }
 
     /** A convenience class to represent mutable lists of squares.  This
@@ -0,0 +1,46 @@
+package tablut;
+
+import java.lang.management.ManagementFactory;
+
+/** Measures how long a fresh JVM takes to become useful: the times from
+ *  the start of the process to the start of main, to the first legal move
+ *  (generated, converted to a Move, and printed), and to the first move
+ *  found by the AI.  The time a second, fresh AI takes to search the same
+ *  position shows how much of the first search went to class loading and
+ *  JIT warm-up.
+ *  Meaningful only as the first thing a JVM does, e.g.
+ *  <pre>
+ *      java tablut.StartupBenchmark
+ *      java -XX:SharedArchiveFile=tablut.jsa tablut.StartupBenchmark
+ *  </pre>
+ *  @author Jennifer Tran
+ */
+class StartupBenchmark {
+
+    /** Run the benchmark, ignoring ARGS. */
+    public static void main(String... args) {
+        long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+        report("main", System.currentTimeMillis() - start);
+
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        board.legalMoves(board.turn(), moves);
+        String first = Move.mv(moves[0]).toString();
+        report("first legal move " + first,
+               System.currentTimeMillis() - start);
+
+        AI ai = new AI();
+        int move = ai.findMove(board, new CancellationToken());
+        long firstAI = System.currentTimeMillis();
+        report("first AI move " + board.geometry().moveName(move),
+               firstAI - start);
+
+        new AI().findMove(board, new CancellationToken());
+        report("second AI move", System.currentTimeMillis() - firstAI);
+    }
+
+    /** Print the time MILLIS under the heading WHAT. */
+    private static void report(String what, long millis) {
+        System.out.println(what + ": " + millis + " ms");
+    }
+}
@@ -1,8 +1,5 @@
 package tablut;
 
-import static tablut.Move.mv;
-
-
 /** A Player that takes input as text commands from its Controller.
  *  @author Jennifer Tran
  */
@@ -35,20 +32,18 @@ class TextPlayer extends Player {
             String line = _controller.readLine(true);
             if (line == null) {
                 return "quit";
-            } else if (Move.isGrammaticalMove(line)) {
+            }
+            int move = board().geometry().parseMove(line);
+            if (move >= 0) {
                 if (board().winner() != null || board().turn() != myPiece()) {
-                    Piece x = board().winner();
-                    Piece y = board().turn();
                     _controller.reportError("misplaced move");
                     continue;
-                } else {
-                    Move move = mv(line);
-                    if (move == null || !board().isLegal(move)) {
-                        boolean no = board().isLegal(move);
-                        _controller.reportError("Invalid move. "
-                                                + "Please try again.");
-                        continue;
-                    }
+                } else if (Move.from(move) == Move.to(move)
+                           || !board().isLegal(Move.from(move),
+                                               Move.to(move))) {
+                    _controller.reportError("Invalid move. "
+                                            + "Please try again.");
+                    continue;
                 }
             }
             return line;
@@ -0,0 +1,200 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** A fixed-size cache of search results, indexed by position hash.  The
+ *  entries live in two parallel arrays of longs, so that storing and
+ *  probing create no objects: _keys holds the hash of each entry's
+ *  position, and _data packs its search depth, the kind of bound its value
+ *  is, its value, and the code of the best move found.  Each hash maps to
+ *  a single slot, and a new entry replaces the old one unless the old one
+ *  is for a different position searched more deeply during the current
+ *  search.  The table is meant to be kept from one search to the next:
+ *  each search starts a new age (see nextAge), and entries left by
+ *  earlier searches are replaced regardless of depth.  It may also be
+ *  saved to and loaded from a file, so that it survives restarts.
+ *  @author Jennifer Tran
+ */
+class TranspositionTable {
+
+    /** Kinds of bound: the stored value is exact, a lower bound on the
+     *  true value, or an upper bound on it. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Layout of a data word: the value in the low 32 bits, then the move
+     *  code, the depth, the bound kind, and the age. */
+    private static final int
+        MOVE_SHIFT = 32, DEPTH_SHIFT = 48, BOUND_SHIFT = 56, AGE_SHIFT = 58,
+        MOVE_MASK = 0xffff, DEPTH_MASK = 0xff, BOUND_MASK = 3,
+        AGE_MASK = 0x3f;
+
+    /** Identifies a saved table file. */
+    private static final int MAGIC = 0x54425454;
+
+    /** Version of the saved table format. */
+    private static final int VERSION = 1;
+
+    /** Size of the header of a saved table, in bytes: MAGIC, VERSION,
+     *  number of entries, and age, as ints. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Move code denoting no move. */
+    private static final int NO_MOVE = MOVE_MASK;
+
+    /** A table with 2**LOGSIZE entries. */
+    TranspositionTable(int logSize) {
+        _keys = new long[1 << logSize];
+        _data = new long[1 << logSize];
+        _mask = (1 << logSize) - 1;
+    }
+
+    /** Return the number of entries in this table. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_data, 0);
+        Arrays.fill(_keys, 0);
+    }
+
+    /** Start a new age: entries stored from now on replace those stored
+     *  before regardless of their depth. */
+    void nextAge() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Write my entries to the file FILE, replacing its contents. */
+    void save(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            long size = HEADER_SIZE + 16L * _keys.length;
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(MAGIC).putInt(VERSION).putInt(_keys.length)
+                .putInt(_age);
+            LongBuffer longs = map.asLongBuffer();
+            longs.put(_keys).put(_data);
+            map.force();
+        }
+    }
+
+    /** Replace my entries with those in the file FILE, written by save.
+     *  If the saved table has a different capacity, its entries are
+     *  stored one by one (so some may be lost to collisions). */
+    void load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_SIZE || map.getInt() != MAGIC
+                || map.getInt() != VERSION) {
+                throw new IOException("not a saved table: " + file);
+            }
+            int n = map.getInt();
+            int age = map.getInt();
+            if (n <= 0 || channel.size() != HEADER_SIZE + 16L * n) {
+                throw new IOException("truncated table: " + file);
+            }
+            LongBuffer longs = map.asLongBuffer();
+            clear();
+            _age = age & AGE_MASK;
+            if (n == _keys.length) {
+                longs.get(_keys).get(_data);
+                return;
+            }
+            for (int i = 0; i < n; i += 1) {
+                long data = longs.get(n + i);
+                if (data != 0) {
+                    int slot = slot(longs.get(i));
+                    if (_data[slot] == 0 || depth(data) > depth(_data[slot])) {
+                        _keys[slot] = longs.get(i);
+                        _data[slot] = data;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the slot holding the entry for the position with hash KEY,
+     *  or -1 if there is none.  The result is valid until the next call
+     *  to store. */
+    int probe(long key) {
+        int slot = slot(key);
+        if (_keys[slot] == key && _data[slot] != 0) {
+            return slot;
+        }
+        return -1;
+    }
+
+    /** Record that the position with hash KEY, searched to DEPTH, has
+     *  VALUE, which is a bound of kind BOUND, and that MOVE (a move code,
+     *  or -1 if none) is its best move. */
+    void store(long key, int depth, int value, int bound, int move) {
+        int slot = slot(key);
+        long old = _data[slot];
+        if (_keys[slot] != key && old != 0 && depth(old) > depth
+            && (int) (old >>> AGE_SHIFT) == _age) {
+            return;
+        }
+        _keys[slot] = key;
+        _data[slot] = (long) _age << AGE_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) (depth + 1) << DEPTH_SHIFT
+            | (long) (move < 0 ? NO_MOVE : move) << MOVE_SHIFT
+            | (value & 0xffffffffL);
+    }
+
+    /** Return the depth of the entry in SLOT. */
+    int depth(int slot) {
+        return depth(_data[slot]);
+    }
+
+    /** Return the depth recorded in the data word DATA. */
+    private static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT & DEPTH_MASK) - 1;
+    }
+
+    /** Return the slot for KEY. */
+    private int slot(long key) {
+        return (int) (key ^ key >>> 32) & _mask;
+    }
+
+    /** Return the value of the entry in SLOT. */
+    int value(int slot) {
+        return (int) _data[slot];
+    }
+
+    /** Return the kind of bound (EXACT, LOWER, or UPPER) that is the value
+     *  of the entry in SLOT. */
+    int bound(int slot) {
+        return (int) (_data[slot] >>> BOUND_SHIFT & BOUND_MASK);
+    }
+
+    /** Return the best move code recorded in SLOT, or -1 if none. */
+    int move(int slot) {
+        int move = (int) (_data[slot] >>> MOVE_SHIFT & MOVE_MASK);
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /** Position hashes of the entries. */
+    private final long[] _keys;
+    /** Packed contents of the entries; 0 denotes an empty slot (stored
+     *  depths are offset by one so that no entry is 0). */
+    private final long[] _data;
+    /** Mask selecting a slot from a hash. */
+    private final int _mask;
+    /** The current age. */
+    private int _age;
+}
@@ -0,0 +1,133 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of saving and loading TranspositionTables.
+ *  @author Jennifer Tran
+ */
+public class TranspositionTableTest {
+
+    /** Size of the tables saved, as a power of 2. */
+    static final int LOG_SIZE = 10;
+
+    /** A table loaded from a file saved by a table of the same size has
+     *  exactly the entries of the original. */
+    @Test
+    public void sameSizeRoundTrip() throws IOException {
+        TranspositionTable table = randomTable(new SplittableRandom(1));
+        TranspositionTable copy = new TranspositionTable(LOG_SIZE);
+        Path file = Files.createTempFile("table", ".tt");
+        try {
+            table.save(file);
+            copy.load(file);
+        } finally {
+            Files.delete(file);
+        }
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 4 * table.capacity(); i += 1) {
+            long key = random.nextLong();
+            random.nextInt();
+            assertEquals(table.probe(key), copy.probe(key));
+            if (table.probe(key) >= 0) {
+                assertEntriesEqual(table, table.probe(key),
+                                   copy, copy.probe(key));
+            }
+        }
+    }
+
+    /** A table of a different size loaded from a saved table has only
+     *  entries of the original, and keeps at least some of them. */
+    @Test
+    public void resizedRoundTrip() throws IOException {
+        TranspositionTable table = randomTable(new SplittableRandom(2));
+        Path file = Files.createTempFile("table", ".tt");
+        try {
+            table.save(file);
+            for (int logSize : new int[] { LOG_SIZE - 2, LOG_SIZE + 1 }) {
+                TranspositionTable copy = new TranspositionTable(logSize);
+                copy.load(file);
+                SplittableRandom random = new SplittableRandom(2);
+                int found = 0;
+                for (int i = 0; i < 4 * table.capacity(); i += 1) {
+                    long key = random.nextLong();
+                    random.nextInt();
+                    int slot = copy.probe(key);
+                    if (slot >= 0) {
+                        found += 1;
+                        assertTrue(table.probe(key) >= 0);
+                        assertEntriesEqual(table, table.probe(key),
+                                           copy, slot);
+                    }
+                }
+                assertTrue("found only " + found,
+                           found >= copy.capacity() / 4);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Loading a file that was not written by save, or that has been
+     *  truncated, throws an IOException. */
+    @Test
+    public void rejectsBadFiles() throws IOException {
+        TranspositionTable table = new TranspositionTable(LOG_SIZE);
+        Path file = Files.createTempFile("table", ".tt");
+        try {
+            Files.write(file, "not a table".getBytes());
+            assertLoadFails(table, file);
+            table.save(file);
+            byte[] saved = Files.readAllBytes(file);
+            Files.write(file,
+                        Arrays.copyOf(saved, saved.length - 8));
+            assertLoadFails(table, file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return a table of size 2**LOG_SIZE filled with 4 times as many
+     *  random entries as it has room for.  The key of each is the first
+     *  of a nextLong, nextInt pair drawn from RANDOM. */
+    static TranspositionTable randomTable(SplittableRandom random) {
+        TranspositionTable table = new TranspositionTable(LOG_SIZE);
+        for (int i = 0; i < 4 * table.capacity(); i += 1) {
+            long key = random.nextLong();
+            int r = random.nextInt();
+            table.store(key, r & 31, r >> 8, (r >>> 5 & 0xff) % 3,
+                        (r & 64) == 0 ? -1 : r >>> 16);
+            if (i % 1000 == 999) {
+                table.nextAge();
+            }
+        }
+        return table;
+    }
+
+    /** Assert that the entry in SLOT0 of TABLE0 is the same as that in
+     *  SLOT1 of TABLE1. */
+    static void assertEntriesEqual(TranspositionTable table0, int slot0,
+                                   TranspositionTable table1, int slot1) {
+        assertEquals(table0.depth(slot0), table1.depth(slot1));
+        assertEquals(table0.value(slot0), table1.value(slot1));
+        assertEquals(table0.bound(slot0), table1.bound(slot1));
+        assertEquals(table0.move(slot0), table1.move(slot1));
+    }
+
+    /** Assert that TABLE.load(FILE) throws an IOException. */
+    private static void assertLoadFails(TranspositionTable table,
+                                        Path file) {
+        try {
+            table.load(file);
+            fail("loaded " + file);
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package tablut;
 
-import org.junit.Test;
-import static org.junit.Assert.*;
 import ucb.junit.textui;
 
 /** The suite of all JUnit tests for the enigma package.
@@ -12,13 +10,14 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
-    }
-
-    /** A dummy test as a placeholder for real ones. */
-    @Test
-    public void dummyTest() {
-        assertTrue("There are no unit tests!", false);
+        textui.runClasses(MoveTest.class, CanonicalHashTest.class,
+                          AnalyzeTest.class, LatencyHistogramTest.class,
+                          AllocationTest.class, NetworkTest.class,
+                          MobilityMapTest.class, PositionIndexTest.class,
+                          GameHistoryTest.class, EngineTest.class,
+                          BroadcasterTest.class, GameRecordTest.class,
+                          SolverTest.class, GameReplayTest.class,
+                          TranspositionTableTest.class);
     }
 
 }
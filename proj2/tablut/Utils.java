@@ -32,4 +32,35 @@ class Utils {
         return result;
     }
 
+    /** Return the index of the first whitespace character in LINE at or
+     *  after START, or the length of LINE if there is none. */
+    static int wordEnd(String line, int start) {
+        while (start < line.length()
+               && !Character.isWhitespace(line.charAt(start))) {
+            start += 1;
+        }
+        return start;
+    }
+
+    /** Return the index of the first character of LINE at or after START
+     *  that is not whitespace, or the length of LINE if there is none. */
+    static int wordStart(String line, int start) {
+        while (start < line.length()
+               && Character.isWhitespace(line.charAt(start))) {
+            start += 1;
+        }
+        return start;
+    }
+
+    /** Return true iff TEXT is a nonempty string of decimal digits. */
+    static boolean isNumeral(String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return !text.isEmpty();
+    }
+
 }
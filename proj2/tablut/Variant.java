@@ -0,0 +1,261 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Utils.*;
+
+/** A variant of tafl: the board size, initial position, and rule set.  The
+ *  king starts on the throne, which is the center square.  The rules that
+ *  vary are
+ *  <ul>
+ *  <li> whether the king escapes by reaching any edge square or only a
+ *       corner (in which case the corners are hostile, like the throne,
+ *       and only the king may stop on them);
+ *  <li> whether the king is armed (can take part in captures);
+ *  <li> whether the king must be surrounded on all four sides to be
+ *       captured, or only when it is on or next to the throne;
+ *  <li> when the throne is hostile (acts as a capturing partner): when
+ *       empty, and when occupied but besieged by three attackers.
+ *  </ul>
+ *  Each variant also precomputes the tables its Boards use, so that boards
+ *  of every size run the same table-driven code.
+ *  @author Jennifer Tran
+ */
+final class Variant {
+
+    /** Standard 9x9 Tablut, as played by Board originally. */
+    static final Variant TABLUT =
+        new Variant("tablut", 9,
+                    "a4 a5 a6 b5 i4 i5 i6 h5 d1 e1 f1 e2 d9 e9 f9 e8",
+                    "e6 f5 e4 d5 e7 e3 c5 g5",
+                    false, true, false, true, true);
+
+    /** 7x7 Brandubh. */
+    static final Variant BRANDUBH =
+        new Variant("brandubh", 7,
+                    "a4 b4 f4 g4 d1 d2 d6 d7",
+                    "c4 e4 d3 d5",
+                    true, true, false, true, false);
+
+    /** 11x11 Hnefatafl, with the Copenhagen starting position. */
+    static final Variant HNEFATAFL =
+        new Variant("hnefatafl", 11,
+                    "a4 a5 a6 a7 a8 b6 k4 k5 k6 k7 k8 j6 "
+                    + "d1 e1 f1 g1 h1 f2 d11 e11 f11 g11 h11 f10",
+                    "e5 f5 g5 d6 e6 g6 h6 e7 f7 g7 f4 f8",
+                    true, true, true, true, false);
+
+    /** All predefined variants. */
+    private static final Variant[] VARIANTS = {
+        TABLUT, BRANDUBH, HNEFATAFL
+    };
+
+    /** Return the predefined variant called NAME, or null if there is
+     *  none. */
+    static Variant named(String name) {
+        for (Variant v : VARIANTS) {
+            if (v._name.equals(name)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /** A variant called NAME played on a SIZE x SIZE board, with attackers
+     *  initially on the squares named in ATTACKERS and defenders on those
+     *  named in DEFENDERS (separated by blanks).  The king escapes to the
+     *  corners iff CORNERESCAPE, is armed iff ARMEDKING, and always needs
+     *  four captors iff STRONGKING.  The empty throne is hostile iff
+     *  HOSTILETHRONE, and the occupied throne is hostile when three of its
+     *  neighbors hold attackers iff BESIEGEDTHRONE. */
+    Variant(String name, int size, String attackers, String defenders,
+            boolean cornerEscape, boolean armedKing, boolean strongKing,
+            boolean hostileThrone, boolean besiegedThrone) {
+        _name = name;
+        _geometry = Geometry.of(size);
+        _attackers = squares(attackers);
+        _defenders = squares(defenders);
+        _cornerEscape = cornerEscape;
+        _armedKing = armedKing;
+        _strongKing = strongKing;
+        _hostileThrone = hostileThrone;
+        _besiegedThrone = besiegedThrone;
+
+        int n = _geometry.numSquares();
+        int[][] neighbor = _geometry.neighbor(), anvil = _geometry.anvil();
+        _throne = _geometry.center();
+        _escape = cornerEscape ? _geometry.corner() : _geometry.edge();
+        _restricted = cornerEscape ? _geometry.corner().clone()
+            : new boolean[n];
+        _restricted[_throne] = true;
+        _hostileCorner = cornerEscape ? _geometry.corner() : new boolean[n];
+        _nearThrone = new boolean[n];
+        _nearThrone[_throne] = true;
+        for (int d = 0; d < 4; d += 1) {
+            _nearThrone[neighbor[_throne][d]] = true;
+        }
+        int[][][] ray = _geometry.ray();
+        _escapeEnd = new int[n][4];
+        for (int i = 0; i < n; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                int len = ray[i][d].length;
+                _escapeEnd[i][d] = len > 0 && _escape[ray[i][d][len - 1]]
+                    ? ray[i][d][len - 1] : -1;
+            }
+        }
+        _captures = new int[n][];
+        for (int i = 0; i < n; i += 1) {
+            int k = 0;
+            int[] patterns = new int[4];
+            for (int d = 0; d < 4; d += 1) {
+                if (anvil[i][d] >= 0) {
+                    patterns[k] = d << 16 | neighbor[i][d] << 8 | anvil[i][d];
+                    k += 1;
+                }
+            }
+            _captures[i] = Arrays.copyOf(patterns, k);
+        }
+    }
+
+    /** Return the indices of the squares named in NAMES, which are
+     *  separated by blanks. */
+    private int[] squares(String names) {
+        int[] result = new int[names.length()];
+        int n = 0;
+        for (int start = 0; start < names.length();) {
+            int end = names.indexOf(' ', start);
+            end = end < 0 ? names.length() : end;
+            if (end > start) {
+                result[n] = _geometry.parseSquare(names, start, end);
+                if (result[n] < 0) {
+                    throw error("bad square in variant %s: %s", _name,
+                                names.substring(start, end));
+                }
+                n += 1;
+            }
+            start = end + 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the number of squares on a side of my board. */
+    int size() {
+        return _geometry.size();
+    }
+
+    /** Return the geometry of my board. */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /** Return the index of the throne. */
+    int throne() {
+        return _throne;
+    }
+
+    /** Return the initial squares of the attackers (black). */
+    int[] attackers() {
+        return _attackers;
+    }
+
+    /** Return the initial squares of the defenders (white), other than the
+     *  king. */
+    int[] defenders() {
+        return _defenders;
+    }
+
+    /** Return true iff the king is armed. */
+    boolean armedKing() {
+        return _armedKing;
+    }
+
+    /** Return true iff the king always needs four captors. */
+    boolean strongKing() {
+        return _strongKing;
+    }
+
+    /** Return true iff the empty throne is hostile. */
+    boolean hostileThrone() {
+        return _hostileThrone;
+    }
+
+    /** Return true iff the throne is hostile when besieged. */
+    boolean besiegedThrone() {
+        return _besiegedThrone;
+    }
+
+    /** Return true iff the king escapes only at the corners. */
+    boolean cornerEscape() {
+        return _cornerEscape;
+    }
+
+    /** Return the table of escape squares: escape()[i] is true iff the king
+     *  wins by reaching square i. */
+    boolean[] escape() {
+        return _escape;
+    }
+
+    /** Return the table of escape rays: escapeEnd()[i][d] is the square
+     *  at the end of the ray from square i in direction d if it is an
+     *  escape square, and otherwise -1.  A king on an escape square has
+     *  already won, so these are the only escape squares it can reach in
+     *  one move. */
+    int[][] escapeEnd() {
+        return _escapeEnd;
+    }
+
+    /** Return the table of restricted squares, on which only the king may
+     *  stop (although others may pass over them when empty). */
+    boolean[] restricted() {
+        return _restricted;
+    }
+
+    /** Return the table of squares other than the throne that are always
+     *  hostile. */
+    boolean[] hostileCorner() {
+        return _hostileCorner;
+    }
+
+    /** Return the table of squares on which the king needs four captors:
+     *  the throne and its neighbors. */
+    boolean[] nearThrone() {
+        return _nearThrone;
+    }
+
+    /** Return the capture patterns: captures()[i] lists the possible
+     *  captures by a piece that moves to square i, each packed as
+     *  D << 16 | MID << 8 | ANVIL, where D is the direction toward the
+     *  captured piece, MID is its square, and ANVIL is the square of its
+     *  other captor. */
+    int[][] captures() {
+        return _captures;
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+    /** My name. */
+    private final String _name;
+    /** My board's geometry. */
+    private final Geometry _geometry;
+    /** Initial squares. */
+    private final int[] _attackers, _defenders;
+    /** Rule settings. */
+    private final boolean _cornerEscape, _armedKing, _strongKing,
+        _hostileThrone, _besiegedThrone;
+    /** Index of the throne. */
+    private final int _throne;
+    /** Precomputed square tables. */
+    private final boolean[] _escape, _restricted, _hostileCorner, _nearThrone;
+    /** Precomputed escape rays. */
+    private final int[][] _escapeEnd;
+    /** Precomputed capture patterns. */
+    private final int[][] _captures;
+}
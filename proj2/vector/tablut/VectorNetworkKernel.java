@@ -0,0 +1,95 @@
+package tablut;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A NetworkKernel that uses the SIMD operations of the Vector API.
+ *  Compiling and running it requires --add-modules jdk.incubator.vector,
+ *  so it lives in a source tree of its own, compiled only by "make
+ *  vector", into the same package as the rest of the program.
+ *  NetworkKernel.fastest loads it reflectively, so that the rest of the
+ *  program neither depends on the module nor needs this class.  Elements
+ *  beyond the last full vector are done one at a time.
+ *  @author Jennifer Tran
+ */
+class VectorNetworkKernel extends NetworkKernel {
+
+    /** Shape of the short vectors used. */
+    private static final VectorSpecies<Short> SHORTS =
+        ShortVector.SPECIES_PREFERRED;
+
+    /** Int vectors of the same size as SHORTS, each holding half of a
+     *  short vector's lanes. */
+    private static final VectorSpecies<Integer> INTS =
+        SHORTS.withLanes(int.class);
+
+    /** Largest value of a clamped hidden unit. */
+    private static final short QA = (short) Network.QA;
+
+    @Override
+    String description() {
+        return "vector" + SHORTS.vectorBitSize();
+    }
+
+    @Override
+    void add(short[] acc, short[] w, int offset) {
+        int n = SHORTS.loopBound(acc.length), j;
+        for (j = 0; j < n; j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, j)
+                .add(ShortVector.fromArray(SHORTS, w, offset + j))
+                .intoArray(acc, j);
+        }
+        for (; j < acc.length; j += 1) {
+            acc[j] += w[offset + j];
+        }
+    }
+
+    @Override
+    void subtract(short[] acc, short[] w, int offset) {
+        int n = SHORTS.loopBound(acc.length), j;
+        for (j = 0; j < n; j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, j)
+                .sub(ShortVector.fromArray(SHORTS, w, offset + j))
+                .intoArray(acc, j);
+        }
+        for (; j < acc.length; j += 1) {
+            acc[j] -= w[offset + j];
+        }
+    }
+
+    @Override
+    void move(short[] acc, short[] w, int from, int to) {
+        int n = SHORTS.loopBound(acc.length), j;
+        for (j = 0; j < n; j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, j)
+                .add(ShortVector.fromArray(SHORTS, w, to + j))
+                .sub(ShortVector.fromArray(SHORTS, w, from + j))
+                .intoArray(acc, j);
+        }
+        for (; j < acc.length; j += 1) {
+            acc[j] += w[to + j] - w[from + j];
+        }
+    }
+
+    @Override
+    int output(short[] acc, short[] w) {
+        int n = SHORTS.loopBound(acc.length), j;
+        IntVector sum = IntVector.zero(INTS);
+        for (j = 0; j < n; j += SHORTS.length()) {
+            ShortVector products =
+                ShortVector.fromArray(SHORTS, acc, j)
+                .max((short) 0).min(QA)
+                .mul(ShortVector.fromArray(SHORTS, w, j));
+            sum = sum
+                .add(products.convertShape(VectorOperators.S2I, INTS, 0))
+                .add(products.convertShape(VectorOperators.S2I, INTS, 1));
+        }
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; j < acc.length; j += 1) {
+            result += Math.min(Math.max(acc[j], 0), Network.QA) * w[j];
+        }
+        return result;
+    }
+}